@@ -34,12 +34,28 @@ import hudson.Functions;
 import hudson.model.AbstractDescribableImpl;
 import hudson.model.Descriptor;
 import hudson.util.FormValidation;
+import hudson.util.ListBoxModel;
 import net.sf.json.JSONObject;
 
 public class DependenciesProperty extends AbstractDescribableImpl<DependenciesProperty> {
 
 	@Extension
 	public static class DescriptorImpl extends Descriptor<DependenciesProperty> {
+
+		/**
+		 * Graphs are laid out by the dot executable of GraphViz
+		 */
+		public static final String DOT_BACKEND = "dot";
+
+		/**
+		 * Graphs of jobs are laid out in process and drawn as SVG, all other output is rendered by dot
+		 */
+		public static final String LAYERED_BACKEND = "layered";
+
+		/**
+		 * Graphs are drawn by the browser from graph.json, images which are requested directly are rendered by dot
+		 */
+		public static final String BROWSER_BACKEND = "browser";
 		
 		private String dotExe = Functions.isWindows() ? "dot.exe" : "dot";
 		private String imagePath;
@@ -49,6 +65,9 @@ public class DependenciesProperty extends AbstractDescribableImpl<DependenciesPr
 		private boolean countTriggersTransitively = false;
 		private boolean linearUpstreamOfProject = false;
 		private int selectedEdgeWidth = 1;
+		private int maxConcurrentRenders = 2;
+		private int renderTimeout = 60;
+		private String renderBackend = DOT_BACKEND;
 
 		public DescriptorImpl() {
 			load();
@@ -62,6 +81,9 @@ public class DependenciesProperty extends AbstractDescribableImpl<DependenciesPr
 			setSelectedEdgeWidth(json.getInt("selectedEdgeWidth"));
 			setCountTriggersTransitively(json.getBoolean("countTriggersTransitively"));
 			setLinearUpstreamOfProject(json.getBoolean("linearUpstreamOfProject"));
+			setMaxConcurrentRenders(json.getInt("maxConcurrentRenders"));
+			setRenderTimeout(json.getInt("renderTimeout"));
+			setRenderBackend(json.getString("renderBackend"));
 			return true;
 		}
 
@@ -137,6 +159,71 @@ public class DependenciesProperty extends AbstractDescribableImpl<DependenciesPr
 			save();
 		}
 
+		/**
+		 * @return the number of dot processes which may run at the same time
+		 */
+		public int getMaxConcurrentRenders() {
+			return maxConcurrentRenders;
+		}
+
+		public void setMaxConcurrentRenders(int maxConcurrentRenders) {
+			this.maxConcurrentRenders = maxConcurrentRenders;
+			save();
+		}
+
+		/**
+		 * @return the seconds after which a dot process is killed
+		 */
+		public int getRenderTimeout() {
+			return renderTimeout;
+		}
+
+		public void setRenderTimeout(int renderTimeout) {
+			this.renderTimeout = renderTimeout;
+			save();
+		}
+
+		/**
+		 * @return {@link #DOT_BACKEND}, {@link #LAYERED_BACKEND} or {@link #BROWSER_BACKEND}
+		 */
+		public String getRenderBackend() {
+			return renderBackend;
+		}
+
+		public void setRenderBackend(String renderBackend) {
+			this.renderBackend = LAYERED_BACKEND.equals(renderBackend) || BROWSER_BACKEND.equals(renderBackend) ? renderBackend : DOT_BACKEND;
+			save();
+		}
+
+		/**
+		 * @return true if graphs of jobs are laid out in process instead of by dot
+		 */
+		public boolean isLayeredLayout() {
+			return LAYERED_BACKEND.equals(renderBackend);
+		}
+
+		/**
+		 * @return true if the graph pages are drawn by the browser instead of showing an image
+		 */
+		public boolean isDrawnInBrowser() {
+			return BROWSER_BACKEND.equals(renderBackend);
+		}
+
+		/**
+		 * @return the type of the image of the graph pages, which is SVG if the graph is laid out in process
+		 */
+		public String getImageType() {
+			return isLayeredLayout() ? "svg" : "png";
+		}
+
+		public ListBoxModel doFillRenderBackendItems() {
+			ListBoxModel items = new ListBoxModel();
+			items.add("GraphViz dot", DOT_BACKEND);
+			items.add("Built-in layered layout (SVG)", LAYERED_BACKEND);
+			items.add("Drawn by the browser", BROWSER_BACKEND);
+			return items;
+		}
+
 		public FormValidation doCheckDotExe(@QueryParameter final String value) {
             return FormValidation.validateExecutable(value);
 		}
@@ -152,5 +239,13 @@ public class DependenciesProperty extends AbstractDescribableImpl<DependenciesPr
 		public FormValidation doCheckSelectedEdgeWidth(@QueryParameter final String value) {
 			return FormValidation.validatePositiveInteger(value);
 		}
+
+		public FormValidation doCheckMaxConcurrentRenders(@QueryParameter final String value) {
+			return FormValidation.validatePositiveInteger(value);
+		}
+
+		public FormValidation doCheckRenderTimeout(@QueryParameter final String value) {
+			return FormValidation.validatePositiveInteger(value);
+		}
 	}
 }
@@ -0,0 +1,355 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, Bachmann electronics GmbH, Ole Siemers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import hudson.model.BallColor;
+import io.jenkins.plugins.model.graph.Graph;
+import io.jenkins.plugins.model.graph.SubgraphView;
+import io.jenkins.plugins.model.node.JobNode;
+import jenkins.util.SystemProperties;
+
+/**
+ * Keeps the DOT output of the most recently shown graphs, so the image and the image map of a page are generated from the same text.
+ * The output is cached by the version of the snapshot, the selected job and the render settings, 
+ * so an entry is never returned after the graph or the settings have changed. 
+ * Entries of older versions are dropped as soon as the output of a newer version is cached.
+ * Output which shows the build status of jobs is not cached, since the status is not part of the graph.
+ * @author OLSI
+ */
+class DotCache {
+
+	/**
+	 * The number of DOT strings which are kept
+	 */
+	static final int DEFAULT_SIZE = SystemProperties.getInteger(DotCache.class.getName() + ".size", 32);
+
+	private final Map<Key, String> entries;
+	private long latestVersion;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	// the components of the latest overview
+	private long componentsVersion = -1;
+	private RenderSettings componentsSettings;
+	private Components components;
+
+	DotCache(int size) {
+		this.entries = new LinkedHashMap<Key, String>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, String> eldest) {
+				return size() > size;
+			}
+		};
+	}
+
+	/**
+	 * @param snapshot the snapshot to render
+	 * @return the DOT output of all jobs of the snapshot
+	 */
+	String getDot(JobGraphSnapshot snapshot) {
+		return getDot(snapshot, null, false);
+	}
+
+	/**
+	 * @param snapshot the snapshot to render
+	 * @param selected the job whose triggers are shown
+	 * @return the DOT output of the jobs which are connected to the selected job
+	 */
+	String getDot(JobGraphSnapshot snapshot, JobNode selected) {
+		return getDot(snapshot, selected, true);
+	}
+
+	/**
+	 * @param snapshot the snapshot to render
+	 * @return the DOT source of all jobs of the snapshot
+	 */
+	DotSource getSource(JobGraphSnapshot snapshot) {
+		return getSource(snapshot, null, false);
+	}
+
+	/**
+	 * @param snapshot the snapshot to render
+	 * @param selected the job whose triggers are shown
+	 * @return the DOT source of the jobs which are connected to the selected job
+	 */
+	DotSource getSource(JobGraphSnapshot snapshot, JobNode selected) {
+		return getSource(snapshot, selected, true);
+	}
+
+	/**
+	 * Output which shows the build status is generated for every request, all other output is written from this cache.
+	 */
+	private DotSource getSource(JobGraphSnapshot snapshot, JobNode selected, boolean connectedOnly) {
+		RenderSettings settings = RenderSettings.current();
+		if (settings.isDrawBalls()) {
+			return getSourceWithBuildStatus(snapshot, getPart(snapshot, selected, connectedOnly, settings), selected, settings);
+		}
+		DotSource dot = DotSource.of(getDot(snapshot, selected, connectedOnly));
+		return withLayout(dot, snapshot, () -> getPart(snapshot, selected, connectedOnly, settings), selected, job -> JobGraphService.get().getIconColor(job), settings);
+	}
+
+	/**
+	 * The components are laid out separately, so the DOT output of each component is cached on its own, 
+	 * together with its hash, which is the key of the rendered component
+	 * @param snapshot the snapshot to render
+	 * @return the components of all jobs which are shown, ordered like {@link JobGraphSnapshot#getComponents()}
+	 * @throws IOException if the DOT output of a component could not be hashed
+	 */
+	Components getComponents(JobGraphSnapshot snapshot) throws IOException {
+		RenderSettings settings = RenderSettings.current();
+		if (!settings.isDrawBalls()) {
+			return getCachedComponents(snapshot, settings);
+		}
+		List<SubgraphView<JobNode>> shown = getShownComponents(snapshot, settings);
+		List<DotSource> sources = new ArrayList<>(shown.size());
+		for (SubgraphView<JobNode> component : shown) {
+			sources.add(getSourceWithBuildStatus(snapshot, component, null, settings));
+		}
+		return new Components(sources, countShownJobs(shown, settings));
+	}
+
+	private synchronized Components getCachedComponents(JobGraphSnapshot snapshot, RenderSettings settings) throws IOException {
+		if (componentsVersion != snapshot.getVersion() || !settings.equals(componentsSettings)) {
+			List<SubgraphView<JobNode>> shown = getShownComponents(snapshot, settings);
+			List<DotSource> sources = new ArrayList<>(shown.size());
+			for (SubgraphView<JobNode> component : shown) {
+				DotSource dot = DotSource.of(snapshot.getDotString(component, null, settings));
+				sources.add(withLayout(dot, snapshot, () -> component, null, job -> JobGraphService.get().getIconColor(job), settings));
+			}
+			components = new Components(sources, countShownJobs(shown, settings));
+			componentsVersion = snapshot.getVersion();
+			componentsSettings = settings;
+		}
+		return components;
+	}
+
+	private static List<SubgraphView<JobNode>> getShownComponents(JobGraphSnapshot snapshot, RenderSettings settings) {
+		List<SubgraphView<JobNode>> shown = new ArrayList<>();
+		for (SubgraphView<JobNode> component : snapshot.getComponents()) {
+			if (!settings.isHideDisabled() || hasEnabledJob(component)) {
+				shown.add(component);
+			}
+		}
+		return shown;
+	}
+
+	private static int countShownJobs(List<SubgraphView<JobNode>> components, RenderSettings settings) {
+		int count = 0;
+		for (SubgraphView<JobNode> component : components) {
+			for (JobNode job : component.getVertices()) {
+				if (!settings.isHideDisabled() || !job.isDisabled()) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * The build status is resolved once on the thread of the request, which has its permissions. 
+	 * The DOT output is streamed with this status, so every time it is written for the cache key or for dot, 
+	 * it is the same, and the drawing shows the same status.
+	 */
+	private static DotSource getSourceWithBuildStatus(JobGraphSnapshot snapshot, Graph<JobNode> part, JobNode selected, RenderSettings settings) {
+		JobGraphService service = JobGraphService.get();
+		Map<JobNode, BallColor> iconColors = new HashMap<>();
+		for (JobNode job : part.getVertices()) {
+			iconColors.put(job, service.getIconColor(job));
+		}
+		DotSource dot = out -> snapshot.writeDot(out, part, selected, settings, iconColors::get);
+		return withLayout(dot, snapshot, () -> part, selected, iconColors::get, settings);
+	}
+
+	private static boolean hasEnabledJob(Graph<JobNode> component) {
+		for (JobNode job : component.getVertices()) {
+			if (!job.isDisabled()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * If graphs are laid out in process, the source can also draw the graph
+	 */
+	private static DotSource withLayout(DotSource dot, JobGraphSnapshot snapshot, Supplier<Graph<JobNode>> part, JobNode selected, Function<JobNode, BallColor> iconColors, RenderSettings settings) {
+		if (!settings.isLayeredLayout()) {
+			return dot;
+		}
+		return new LayoutSource() {
+
+			@Override
+			public void writeTo(Writer out) throws IOException {
+				dot.writeTo(out);
+			}
+
+			@Override
+			public Map<String, byte[]> layout(List<String> types) {
+				return snapshot.layout(part.get(), selected, settings, iconColors, types);
+			}
+		};
+	}
+
+	private String getDot(JobGraphSnapshot snapshot, JobNode selected, boolean connectedOnly) {
+		RenderSettings settings = RenderSettings.current();
+		if (settings.isDrawBalls()) {
+			return render(snapshot, selected, connectedOnly, settings);
+		}
+		Key key = new Key(snapshot.getVersion(), selected, connectedOnly, settings);
+		synchronized (this) {
+			String dot = entries.get(key);
+			if (dot != null) {
+				hits.incrementAndGet();
+				return dot;
+			}
+		}
+		misses.incrementAndGet();
+		String dot = render(snapshot, selected, connectedOnly, settings);
+		synchronized (this) {
+			if (key.version > latestVersion) {
+				latestVersion = key.version;
+				entries.keySet().removeIf(k -> k.version < latestVersion);
+			}
+			// the output of an outdated snapshot is not requested again
+			if (key.version == latestVersion) {
+				entries.put(key, dot);
+			}
+		}
+		return dot;
+	}
+
+	private static String render(JobGraphSnapshot snapshot, JobNode selected, boolean connectedOnly, RenderSettings settings) {
+		return snapshot.getDotString(getPart(snapshot, selected, connectedOnly, settings), selected, settings);
+	}
+
+	private static Graph<JobNode> getPart(JobGraphSnapshot snapshot, JobNode selected, boolean connectedOnly, RenderSettings settings) {
+		return connectedOnly ? snapshot.getGraph().getConnectedSubgraph(selected, !settings.isLinearUpstreamOfProject()) : snapshot.getGraph();
+	}
+
+	/**
+	 * @return the number of requests which were answered from this cache
+	 */
+	long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of requests whose output had to be generated, without the requests which are never cached
+	 */
+	long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * @return the number of cached DOT strings
+	 */
+	synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * The DOT sources of the components of an overview with their hashes, and the number of jobs which they show
+	 */
+	static final class Components {
+
+		private final List<DotSource> sources;
+		private final List<String> hashes;
+		private final int jobCount;
+
+		Components(List<DotSource> sources, int jobCount) throws IOException {
+			List<String> hashes = new ArrayList<>(sources.size());
+			for (DotSource source : sources) {
+				hashes.add(RenderCache.getHash(source));
+			}
+			this.sources = Collections.unmodifiableList(sources);
+			this.hashes = Collections.unmodifiableList(hashes);
+			this.jobCount = jobCount;
+		}
+
+		List<DotSource> getSources() {
+			return sources;
+		}
+
+		/**
+		 * @return the hashes of the DOT output of the components, see {@link RenderCache#getHash(DotSource)}
+		 */
+		List<String> getHashes() {
+			return hashes;
+		}
+
+		int getJobCount() {
+			return jobCount;
+		}
+	}
+
+	private static final class Key {
+
+		private final long version;
+		private final JobNode selected;
+		private final boolean connectedOnly;
+		private final RenderSettings settings;
+
+		Key(long version, JobNode selected, boolean connectedOnly, RenderSettings settings) {
+			this.version = version;
+			this.selected = selected;
+			this.connectedOnly = connectedOnly;
+			this.settings = settings;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(version, selected, connectedOnly, settings);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			Key other = (Key) obj;
+			return version == other.version
+					&& connectedOnly == other.connectedOnly
+					&& Objects.equals(selected, other.selected)
+					&& settings.equals(other.settings);
+		}
+	}
+}
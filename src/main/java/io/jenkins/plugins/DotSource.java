@@ -0,0 +1,50 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, Bachmann electronics GmbH, Ole Siemers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A graph in the dot language which is written on demand, so it can be sent to GraphViz or a client without building it as a whole in memory
+ * @author OLSI
+ */
+@FunctionalInterface
+interface DotSource {
+
+	/**
+	 * Writes the graph, which must be the same text every time
+	 * @param out the writer of the dot language
+	 * @throws IOException if the writer failed
+	 */
+	void writeTo(Writer out) throws IOException;
+
+	/**
+	 * @param dot a graph in the dot language
+	 * @return the source which writes the given text
+	 */
+	static DotSource of(String dot) {
+		return out -> out.write(dot);
+	}
+}
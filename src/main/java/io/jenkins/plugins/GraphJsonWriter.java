@@ -0,0 +1,192 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, Bachmann electronics GmbH, Ole Siemers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import io.jenkins.plugins.model.graph.Graph;
+
+/**
+ * Writes the part of a graph which is selected by a {@link GraphQuery} as the nodes and edges of a JSON object.
+ * Edges point from the triggering to the triggered node and are listed with the page of their target.
+ * @author OLSI
+ * @param <V> the type of the vertices
+ */
+final class GraphJsonWriter<V> {
+
+	/**
+	 * Writes the attributes of a node which are specific to the type of the vertices
+	 */
+	@FunctionalInterface
+	interface NodeWriter<V> {
+		void write(JsonWriter json, V vertex) throws IOException;
+	}
+
+	/**
+	 * Writes a JSON object which is requested by a query
+	 */
+	@FunctionalInterface
+	interface JsonSource {
+		void writeTo(JsonWriter json, GraphQuery query) throws IOException;
+	}
+
+	private final Graph<V> graph;
+	private final boolean reversed;
+	private final Function<V, String> ids;
+	private final NodeWriter<V> nodeWriter;
+	private final GraphQuery.Roots<V> roots;
+
+	/**
+	 * @param graph the graph to write
+	 * @param reversed true if the edges of the graph point from the triggered to the triggering vertex
+	 * @param ids the unique id of a vertex
+	 * @param nodeWriter the attributes of a node
+	 */
+	GraphJsonWriter(Graph<V> graph, boolean reversed, Function<V, String> ids, NodeWriter<V> nodeWriter) {
+		this(graph, reversed, ids, nodeWriter, downstream -> GraphQuery.getRoots(graph, downstream));
+	}
+
+	/**
+	 * @param graph the graph to write
+	 * @param reversed true if the edges of the graph point from the triggered to the triggering vertex
+	 * @param ids the unique id of a vertex
+	 * @param nodeWriter the attributes of a node
+	 * @param roots the roots of the graph if they are known already
+	 */
+	GraphJsonWriter(Graph<V> graph, boolean reversed, Function<V, String> ids, NodeWriter<V> nodeWriter, GraphQuery.Roots<V> roots) {
+		this.graph = graph;
+		this.reversed = reversed;
+		this.ids = ids;
+		this.nodeWriter = nodeWriter;
+		this.roots = roots;
+	}
+
+	/**
+	 * Writes the members total, offset, nodes and edges into the current object.
+	 * Every node has the number of its upstream and downstream nodes in the whole graph.
+	 * @param json the writer of the object
+	 * @param start the selected vertices, or an empty collection for the whole graph
+	 * @param query the requested part of the graph
+	 * @throws IOException if the writer failed
+	 */
+	void write(JsonWriter json, Collection<V> start, GraphQuery query) throws IOException {
+		Map<V, Integer> distances = (reversed ? query.reversed() : query).select(graph, start, roots);
+		List<V> page = getPage(distances.keySet(), query);
+		json.name("total").value(distances.size());
+		json.name("offset").value(query.getOffset());
+		json.name("nodes").beginArray();
+		for (V vertex : page) {
+			json.beginObject();
+			json.name("id").value(ids.apply(vertex));
+			json.name("distance").value(distances.get(vertex));
+			json.name("selected").value(start.contains(vertex));
+			// lets a client show which nodes have neighbours it has not loaded yet
+			json.name("upstream").value(getUpstream(vertex).size());
+			json.name("downstream").value(getDownstream(vertex).size());
+			nodeWriter.write(json, vertex);
+			json.endObject();
+		}
+		json.endArray();
+		json.name("edges").beginArray();
+		for (V target : page) {
+			for (V source : getUpstream(target)) {
+				if (distances.containsKey(source)) {
+					json.beginObject();
+					json.name("source").value(ids.apply(source));
+					json.name("target").value(ids.apply(target));
+					json.endObject();
+				}
+			}
+		}
+		json.endArray();
+	}
+
+	/**
+	 * Streams a JSON object for the query of a request into the response
+	 * @param req the request with the parameters of a {@link GraphQuery}
+	 * @param res the response
+	 * @param source the JSON object
+	 * @throws IOException if the response could not be written
+	 */
+	static void serve(StaplerRequest req, StaplerResponse res, JsonSource source) throws IOException {
+		serve(req, res, GraphQuery.UNLIMITED, source);
+	}
+
+	/**
+	 * Streams a JSON object for the query of a request into the response
+	 * @param req the request with the parameters of a {@link GraphQuery}
+	 * @param res the response
+	 * @param defaultDepth the depth of the query if the request has none
+	 * @param source the JSON object
+	 * @throws IOException if the response could not be written
+	 */
+	static void serve(StaplerRequest req, StaplerResponse res, int defaultDepth, JsonSource source) throws IOException {
+		GraphQuery query;
+		try {
+			query = GraphQuery.of(req, defaultDepth);
+		} catch (IllegalArgumentException e) {
+			res.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+			return;
+		}
+		res.setContentType("application/json;charset=UTF-8");
+		try (Writer out = new BufferedWriter(new OutputStreamWriter(res.getCompressedOutputStream(req), StandardCharsets.UTF_8))) {
+			source.writeTo(new JsonWriter(out), query);
+		}
+	}
+
+	private Set<V> getUpstream(V vertex) {
+		return reversed ? graph.getSuccessors(vertex) : graph.getPredecessors(vertex);
+	}
+
+	private Set<V> getDownstream(V vertex) {
+		return reversed ? graph.getPredecessors(vertex) : graph.getSuccessors(vertex);
+	}
+
+	private static <V> List<V> getPage(Collection<V> selection, GraphQuery query) {
+		List<V> page = new ArrayList<>();
+		int index = 0;
+		for (V vertex : selection) {
+			if (index >= query.getOffset() && page.size() < query.getLimit()) {
+				page.add(vertex);
+			}
+			index++;
+		}
+		return page;
+	}
+}
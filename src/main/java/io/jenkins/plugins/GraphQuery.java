@@ -0,0 +1,235 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, Bachmann electronics GmbH, Ole Siemers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.kohsuke.stapler.StaplerRequest;
+
+import io.jenkins.plugins.model.graph.Graph;
+
+/**
+ * The part of a graph which is requested from a JSON endpoint by the parameters
+ * {@code depth}, {@code direction}, {@code offset} and {@code limit}.
+ * Vertices are selected by a breadth first search from the selected vertex, or from the vertices without upstream if none is selected.
+ * @author OLSI
+ */
+final class GraphQuery {
+
+	enum Direction {
+		UPSTREAM, DOWNSTREAM, BOTH
+	}
+
+	static final int UNLIMITED = Integer.MAX_VALUE;
+
+	/**
+	 * The vertices from which a graph is searched if no vertex is selected
+	 */
+	@FunctionalInterface
+	interface Roots<V> {
+		Collection<V> get(boolean downstream);
+	}
+
+	private final int depth;
+	private final Direction direction;
+	private final int offset;
+	private final int limit;
+
+	GraphQuery(int depth, Direction direction, int offset, int limit) {
+		this.depth = depth;
+		this.direction = direction;
+		this.offset = offset;
+		this.limit = limit;
+	}
+
+	/**
+	 * @param req a request with optional parameters
+	 * @return the query of the request
+	 * @throws IllegalArgumentException if a parameter is invalid
+	 */
+	static GraphQuery of(StaplerRequest req) {
+		return of(req, UNLIMITED);
+	}
+
+	/**
+	 * @param req a request with optional parameters
+	 * @param defaultDepth the depth if the request has none
+	 * @return the query of the request
+	 * @throws IllegalArgumentException if a parameter is invalid
+	 */
+	static GraphQuery of(StaplerRequest req, int defaultDepth) {
+		String direction = req.getParameter("direction");
+		Direction parsed;
+		try {
+			parsed = direction == null ? Direction.BOTH : Direction.valueOf(direction.toUpperCase());
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("direction must be upstream, downstream or both", e);
+		}
+		return new GraphQuery(getParameter(req, "depth", defaultDepth), parsed, getParameter(req, "offset", 0), getParameter(req, "limit", UNLIMITED));
+	}
+
+	private static int getParameter(StaplerRequest req, String name, int defaultValue) {
+		String value = req.getParameter(name);
+		if (value == null || value.isEmpty()) {
+			return defaultValue;
+		}
+		try {
+			int parsed = Integer.parseInt(value);
+			if (parsed >= 0) {
+				return parsed;
+			}
+		} catch (NumberFormatException e) {
+			// reported below
+		}
+		throw new IllegalArgumentException(name + " must be a non-negative integer");
+	}
+
+	/**
+	 * @return this query for a graph whose edges point from the triggered to the triggering vertex
+	 */
+	GraphQuery reversed() {
+		Direction opposite = direction == Direction.UPSTREAM ? Direction.DOWNSTREAM : direction == Direction.DOWNSTREAM ? Direction.UPSTREAM : direction;
+		return new GraphQuery(depth, opposite, offset, limit);
+	}
+
+	int getDepth() {
+		return depth;
+	}
+
+	Direction getDirection() {
+		return direction;
+	}
+
+	int getOffset() {
+		return offset;
+	}
+
+	int getLimit() {
+		return limit;
+	}
+
+	/**
+	 * Selects the vertices of a graph
+	 * @param graph the graph
+	 * @param start the selected vertices, or an empty collection to select from the vertices without upstream
+	 * @param <V> the type of the vertices
+	 * @return the selected vertices in the order of the search with their distance from the start
+	 */
+	<V> Map<V, Integer> select(Graph<V> graph, Collection<V> start) {
+		return select(graph, start, downstream -> getRoots(graph, downstream));
+	}
+
+	/**
+	 * Selects the vertices of a graph
+	 * @param graph the graph
+	 * @param start the selected vertices, or an empty collection to select from the roots
+	 * @param roots the roots of the graph, which are only requested if no vertex is selected
+	 * @param <V> the type of the vertices
+	 * @return the selected vertices in the order of the search with their distance from the start
+	 */
+	<V> Map<V, Integer> select(Graph<V> graph, Collection<V> start, Roots<V> roots) {
+		Map<V, Integer> distances = new LinkedHashMap<>();
+		if (start.isEmpty()) {
+			boolean downstream = direction != Direction.UPSTREAM;
+			search(graph, roots.get(downstream), downstream, !downstream, distances);
+		} else {
+			if (direction != Direction.UPSTREAM) {
+				search(graph, start, true, false, distances);
+			}
+			if (direction != Direction.DOWNSTREAM) {
+				search(graph, start, false, true, distances);
+			}
+		}
+		return distances;
+	}
+
+	/**
+	 * The vertices without upstream, or without downstream if the search follows the upstream. 
+	 * A cycle which cannot be reached from any of them is entered at its first vertex. 
+	 * @param graph the graph
+	 * @param downstream true if the graph is searched along its edges
+	 * @param <V> the type of the vertices
+	 * @return the roots of the graph
+	 */
+	static <V> List<V> getRoots(Graph<V> graph, boolean downstream) {
+		List<V> roots = new ArrayList<>(downstream ? graph.getEntries() : graph.getExits());
+		Map<V, Integer> reached = new LinkedHashMap<>();
+		search(graph, roots, downstream, !downstream, reached, UNLIMITED);
+		for (V vertex : graph.getVertices()) {
+			if (!reached.containsKey(vertex)) {
+				roots.add(vertex);
+				search(graph, Collections.singleton(vertex), downstream, !downstream, reached, UNLIMITED);
+			}
+		}
+		return roots;
+	}
+
+	private <V> void search(Graph<V> graph, Collection<V> start, boolean successors, boolean predecessors, Map<V, Integer> distances) {
+		search(graph, start, successors, predecessors, distances, depth);
+	}
+
+	/**
+	 * A breadth first search which keeps the shorter distance of vertices which were already found
+	 */
+	private static <V> void search(Graph<V> graph, Collection<V> start, boolean successors, boolean predecessors, Map<V, Integer> distances, int depth) {
+		Deque<V> queue = new ArrayDeque<>();
+		Map<V, Integer> found = new LinkedHashMap<>();
+		for (V vertex : start) {
+			if (graph.containsVertex(vertex) && found.putIfAbsent(vertex, 0) == null) {
+				queue.add(vertex);
+			}
+		}
+		while (!queue.isEmpty()) {
+			V vertex = queue.poll();
+			int distance = found.get(vertex);
+			if (distance >= depth) {
+				continue;
+			}
+			Set<V> neighbours = new LinkedHashSet<>();
+			if (successors) {
+				neighbours.addAll(graph.getSuccessors(vertex));
+			}
+			if (predecessors) {
+				neighbours.addAll(graph.getPredecessors(vertex));
+			}
+			for (V neighbour : neighbours) {
+				if (found.putIfAbsent(neighbour, distance + 1) == null) {
+					queue.add(neighbour);
+				}
+			}
+		}
+		for (Map.Entry<V, Integer> entry : found.entrySet()) {
+			distances.merge(entry.getKey(), entry.getValue(), Math::min);
+		}
+	}
+}
@@ -23,21 +23,49 @@
  */
 package io.jenkins.plugins;
 
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.servlet.http.HttpServletResponse;
+
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
 import hudson.Launcher;
+import hudson.Proc;
 import hudson.util.LogTaskListener;
 import io.jenkins.plugins.DependenciesProperty.DescriptorImpl;
 import jenkins.model.Jenkins;
+import jenkins.util.Timer;
 
 public class GraphViz {
 	
 	private static final Logger logger = Logger.getLogger(RunTriggersAction.class.getName());
 	
+	/**
+	 * The types which are requested together by the triggers pages, so they are laid out in a single run of dot
+	 */
+	private static final List<String> IMAGE_AND_MAP = Collections.unmodifiableList(Arrays.asList("png", "cmapx"));
+	
 	private GraphViz() {
 		throw new IllegalStateException("Utility class");
 	}
@@ -46,18 +74,13 @@ public class GraphViz {
      * from https://github.com/kohsuke/depgraph-view-plugin/blob/master/src/main/java/hudson/plugins/depgraph_view/AbstractDependencyGraphAction.java
      * Execute the dot commando with given input and output stream
      * @param type the parameter for the -T option of the graphviz tools
+     * @return the exit code of dot
      * @throws InterruptedException 
      */
-    static void runDot(OutputStream output, InputStream input, String type)
+    static int runDot(OutputStream output, DotSource input, String type)
             throws IOException, InterruptedException {
-    	DescriptorImpl settings = Jenkins.get().getDescriptorByType(DependenciesProperty.DescriptorImpl.class);
-        String dotPath = settings.getDotExe();
-        Launcher launcher = Jenkins.get().createLauncher(new LogTaskListener(logger, Level.CONFIG));
         try {
-        	launcher.launch()
-                    .cmds(dotPath, "-q", "-T" + type, "-Kdot")
-                    .stdin(input)
-                    .stdout(output).start().join();
+        	return launchDot(input, output, Collections.singletonList("-T" + type));
         }
         finally {
             if (output != null) {
@@ -65,4 +88,273 @@ public class GraphViz {
             }
         }
     }
+
+	/**
+	 * Starts dot and writes the graph straight into its standard input
+	 * @param input the graph in the dot language
+	 * @param output the standard output of dot
+	 * @param options the options of dot
+	 * @return the exit code of dot
+	 */
+	private static int launchDot(DotSource input, OutputStream output, List<String> options) throws IOException, InterruptedException {
+		DescriptorImpl settings = Jenkins.get().getDescriptorByType(DependenciesProperty.DescriptorImpl.class);
+		List<String> cmds = new ArrayList<>(Arrays.asList(settings.getDotExe(), "-q", "-Kdot"));
+		cmds.addAll(options);
+		LogTaskListener listener = new LogTaskListener(logger, Level.CONFIG);
+		Launcher launcher = Jenkins.get().createLauncher(listener);
+		Proc proc = launcher.launch()
+				.cmds(cmds)
+				.writeStdin()
+				.stdout(output).start();
+		long timeout = Math.max(1, settings.getRenderTimeout());
+		AtomicBoolean timedOut = new AtomicBoolean();
+		// kills dot if a large graph takes too long to lay out or if dot stops reading the graph, which would block the writer
+		ScheduledFuture<?> deadline = Timer.get().schedule(() -> {
+			timedOut.set(true);
+			kill(proc);
+		}, timeout, TimeUnit.SECONDS);
+		try {
+			try (Writer stdin = new BufferedWriter(new OutputStreamWriter(proc.getStdin(), StandardCharsets.UTF_8))) {
+				input.writeTo(stdin);
+			} catch (IOException e) {
+				proc.kill();
+				if (timedOut.get()) {
+					throw new IOException("dot timed out after " + timeout + " s", e);
+				}
+				throw e;
+			}
+			int exitCode = proc.join();
+			if (timedOut.get()) {
+				throw new IOException("dot timed out after " + timeout + " s");
+			}
+			return exitCode;
+		} finally {
+			deadline.cancel(false);
+		}
+	}
+
+	private static void kill(Proc proc) {
+		try {
+			proc.kill();
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "failed to kill dot", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Lays out a graph with dot
+	 * @param dot the graph in the dot language
+	 * @param type the output type
+	 * @return the output of dot
+	 * @throws IOException if dot failed
+	 * @throws InterruptedException if interrupted while waiting for dot
+	 */
+	static byte[] render(DotSource dot, String type) throws IOException, InterruptedException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		int exitCode = runDot(output, dot, type);
+		if (exitCode != 0) {
+			throw new IOException("dot failed with exit code " + exitCode + " for output type " + type);
+		}
+		return output.toByteArray();
+	}
+
+	/**
+	 * Lays out a graph once and writes it in several output types. Each type is written to its own file by dot.
+	 * @param dot the graph in the dot language
+	 * @param types the output types
+	 * @return the output of dot by type
+	 * @throws IOException if dot failed
+	 * @throws InterruptedException if interrupted while waiting for dot
+	 */
+	static Map<String, byte[]> render(DotSource dot, List<String> types) throws IOException, InterruptedException {
+		if (dot instanceof LayoutSource && JobGraphSvgWriter.TYPES.containsAll(types)) {
+			try {
+				return ((LayoutSource) dot).layout(types);
+			} catch (IllegalArgumentException e) {
+				logger.log(Level.FINE, "falling back to dot", e);
+			}
+		}
+		if (types.size() == 1) {
+			return Collections.singletonMap(types.get(0), render(dot, types.get(0)));
+		}
+		Path directory = Files.createTempDirectory("graphviz");
+		try {
+			List<String> options = new ArrayList<>();
+			for (String type : types) {
+				options.add("-T" + type);
+				options.add("-o" + directory.resolve("graph." + type));
+			}
+			int exitCode = launchDot(dot, new ByteArrayOutputStream(), options);
+			if (exitCode != 0) {
+				throw new IOException("dot failed with exit code " + exitCode + " for output types " + types);
+			}
+			Map<String, byte[]> outputs = new LinkedHashMap<>();
+			for (String type : types) {
+				outputs.put(type, Files.readAllBytes(directory.resolve("graph." + type)));
+			}
+			return outputs;
+		} finally {
+			for (String type : types) {
+				Files.deleteIfExists(directory.resolve("graph." + type));
+			}
+			Files.deleteIfExists(directory);
+		}
+	}
+
+	/**
+	 * @param type a requested output type
+	 * @return the types which are rendered together with the requested type, including the requested type
+	 */
+	static List<String> getTypesRenderedWith(String type) {
+		return IMAGE_AND_MAP.contains(type) ? IMAGE_AND_MAP : Collections.singletonList(type);
+	}
+
+	/**
+	 * @param dot the graph in the dot language
+	 * @param type a requested output type
+	 * @return the types which are rendered together with the requested type, including the requested type
+	 */
+	static List<String> getTypesRenderedWith(DotSource dot, String type) {
+		return isLaidOutInProcess(dot, type) ? JobGraphSvgWriter.TYPES : getTypesRenderedWith(type);
+	}
+
+	/**
+	 * @param dot the graph in the dot language
+	 * @param type a requested output type
+	 * @return true if the output is drawn by a {@link JobGraphSvgWriter} instead of dot
+	 */
+	static boolean isLaidOutInProcess(DotSource dot, String type) {
+		return dot instanceof LayoutSource && JobGraphSvgWriter.TYPES.contains(type);
+	}
+
+	/**
+	 * Sends a rendered graph from the {@link RenderCache}, or the DOT input itself for the type {@code gv}. 
+	 * The response carries a strong ETag of the DOT input, so a browser which already has the graph gets 304 Not Modified without a layout.
+	 * @param req the request of the graph
+	 * @param res the response
+	 * @param dot the graph in the dot language
+	 * @param type the output type
+	 * @throws IOException if dot failed or the response could not be written
+	 * @throws InterruptedException if interrupted while waiting for dot
+	 */
+	static void serve(StaplerRequest req, StaplerResponse res, DotSource dot, String type) throws IOException, InterruptedException {
+		// the type is part of a file name and a command line
+		if (!type.matches("[a-z0-9]+")) {
+			res.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		// the DOT input is only hashed once, the keys of its outputs are derived from its hash
+		String hash = RenderCache.getHash(dot);
+		String key = RenderCache.getKey(hash, dot, type);
+		if (type.equals("gv")) {
+			if (isNotModified(req, res, key)) {
+				return;
+			}
+			res.setContentType(getContentType(type));
+			try (Writer out = new BufferedWriter(new OutputStreamWriter(res.getCompressedOutputStream(req), StandardCharsets.UTF_8))) {
+				dot.writeTo(out);
+			}
+			return;
+		}
+		serve(req, res, key, type, () -> RenderCache.get().getOutput(hash, dot, type));
+	}
+
+	/**
+	 * Sends output which is identified by a key, which is also its strong ETag
+	 * @param req the request of the output
+	 * @param res the response
+	 * @param key the key of the output
+	 * @param type the output type
+	 * @param output the output, which is only requested if the client does not have it already
+	 * @throws IOException if dot failed or the response could not be written
+	 * @throws InterruptedException if interrupted while waiting for dot
+	 */
+	static void serve(StaplerRequest req, StaplerResponse res, String key, String type, RenderCache.OutputSupplier output) throws IOException, InterruptedException {
+		if (isNotModified(req, res, key)) {
+			return;
+		}
+		byte[] bytes;
+		try {
+			bytes = output.get();
+		} catch (TimeoutException e) {
+			logger.log(Level.FINE, "gave up waiting for a render", e);
+			res.setHeader("Retry-After", "10");
+			res.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "the graph is still being rendered");
+			return;
+		}
+		res.setContentType(getContentType(type));
+		if (isCompressed(type)) {
+			res.setContentLength(bytes.length);
+			try (OutputStream out = res.getOutputStream()) {
+				out.write(bytes);
+			}
+		} else {
+			try (OutputStream out = res.getCompressedOutputStream(req)) {
+				out.write(bytes);
+			}
+		}
+	}
+
+	/**
+	 * Sets the ETag of the output, and answers with 304 Not Modified if the client already has it
+	 * @return true if the response is complete
+	 */
+	private static boolean isNotModified(StaplerRequest req, StaplerResponse res, String key) {
+		String etag = "\"" + key + "\"";
+		res.setHeader("ETag", etag);
+		// the graph changes with the jobs, so the browser has to ask every time
+		res.setHeader("Cache-Control", "private, no-cache");
+		if (matches(req.getHeader("If-None-Match"), etag)) {
+			res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @param ifNoneMatch the value of the If-None-Match header or null
+	 * @param etag the current ETag
+	 * @return true if the client already has the current output
+	 */
+	static boolean matches(String ifNoneMatch, String etag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		for (String tag : ifNoneMatch.split(",")) {
+			tag = tag.trim();
+			if (tag.startsWith("W/")) {
+				tag = tag.substring(2);
+			}
+			if (tag.equals("*") || tag.equals(etag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isCompressed(String type) {
+		return type.equals("png") || type.equals("gif") || type.equals("jpg");
+	}
+
+	private static String getContentType(String type) {
+		switch (type) {
+		case "png":
+			return "image/png";
+		case "gif":
+			return "image/gif";
+		case "jpg":
+			return "image/jpeg";
+		case "svg":
+			return "image/svg+xml";
+		case "cmapx":
+			return "text/html;charset=UTF-8";
+		case "gv":
+		case "dot":
+			return "text/vnd.graphviz;charset=UTF-8";
+		default:
+			return "application/octet-stream";
+		}
+	}
 }
@@ -23,109 +23,277 @@
  */
 package io.jenkins.plugins;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import org.jenkinsci.plugins.workflow.job.WorkflowJob;
-
-import hudson.model.AbstractProject;
-import hudson.model.Item;
+import hudson.model.Job;
 import io.jenkins.plugins.DependenciesProperty.DescriptorImpl;
+import io.jenkins.plugins.JobGraphBuilder.LoadedJob;
+import io.jenkins.plugins.JobGraphBuilder.UpstreamReference;
+import io.jenkins.plugins.JobGraphStore.StoredJob;
+import io.jenkins.plugins.model.graph.CompactGraph;
 import io.jenkins.plugins.model.graph.DirectedGraph;
-import io.jenkins.plugins.model.wrapper.ProjectWrapper;
+import io.jenkins.plugins.model.graph.Graph;
+import io.jenkins.plugins.model.graph.StronglyConnectedComponents;
+import io.jenkins.plugins.model.graph.SubgraphView;
+import io.jenkins.plugins.model.node.JobNode;
+import io.jenkins.plugins.model.node.JobNodeTable;
 import io.jenkins.plugins.model.wrapper.JobWrapper;
-import io.jenkins.plugins.model.wrapper.WorkflowJobWrapper;
+import io.jenkins.plugins.model.wrapper.UpstreamJobResolver;
 import jenkins.model.Jenkins;
 
-public class JobGraph extends DirectedGraph<JobWrapper> {
+public class JobGraph extends DirectedGraph<JobNode> {
+
+	private static final Logger logger = Logger.getLogger(JobGraph.class.getName());
 
-	private Map<JobWrapper, Integer> totalTriggerCount;
+	private Map<JobNode, Long> totalTriggerCount;
+	private Set<JobNode> cappedTriggerCounts;
+	private Set<JobNode> jobsInTriggerCycles;
+	private Map<String, Set<JobNode>> unresolvedUpstream = new HashMap<>();
 	private DescriptorImpl settings;
+	private final JobNodeTable nodes = new JobNodeTable();
+	private Map<String, StoredJob> storedJobs = new HashMap<>();
+	private final UpstreamJobResolver resolver;
 	
-	private static final String DISABLED_NODE_COLOR = "gray";
-	private static final String NODE_COLOR = "black";
-	private static final Logger logger = Logger.getLogger(JobGraph.class.getName());
+	private static final AtomicInteger constructionCount = new AtomicInteger();
 
 	public JobGraph() {
+		this(JobGraphService.get().getUpstreamJobResolver());
+	}
+	
+	JobGraph(UpstreamJobResolver resolver) {
+		this(resolver, Collections.emptyMap());
+	}
+	
+	/**
+	 * Creates the graph of all jobs, where the triggers of unchanged jobs are taken from a snapshot
+	 * @param resolver the resolver of upstream job names
+	 * @param snapshot the stored triggers of jobs by their full name
+	 */
+	JobGraph(UpstreamJobResolver resolver, Map<String, StoredJob> snapshot) {
 		super();
-		update();
+		this.resolver = resolver;
+		constructionCount.incrementAndGet();
+		setClosureCaching(true);
+		update(JobGraphBuilder.DEFAULT_PARALLELISM, snapshot);
+	}
+	
+	/**
+	 * @return the number of job graphs created since startup
+	 */
+	static int getConstructionCount() {
+		return constructionCount.get();
 	}
 
 	/**
 	 * retrieve the upstream dependencies of all jobs and save them into a graph
 	 */
-	public void update() {
+	public synchronized void update() {
+		update(JobGraphBuilder.DEFAULT_PARALLELISM);
+	}
+	
+	/**
+	 * retrieve the upstream dependencies of all jobs with a given number of threads
+	 * @param parallelism the number of threads which load the jobs
+	 */
+	synchronized void update(int parallelism) {
+		update(parallelism, Collections.emptyMap());
+	}
+	
+	private void update(int parallelism, Map<String, StoredJob> snapshot) {
 		settings = Jenkins.get().getDescriptorByType(DependenciesProperty.DescriptorImpl.class);
 		reset();
-		for (Item item : Jenkins.get().getAllItems()) {
-			if (item instanceof WorkflowJob) {
-				WorkflowJobWrapper workflowJob = new WorkflowJobWrapper((WorkflowJob)item);
-				loadUpstreamOfJob(workflowJob);
-			} 
-			else if (item instanceof AbstractProject) {
-				ProjectWrapper proj = new ProjectWrapper((AbstractProject)item);
-				loadUpstreamOfJob(proj);
-			}
-			else {
-				logger.log(Level.FINE, "ignoring item "+item.getFullName()+" is an instance of "+item.getClass().getName());
-			}
+		unresolvedUpstream = new HashMap<>();
+		storedJobs = new HashMap<>();
+		for (LoadedJob job : new JobGraphBuilder(resolver, parallelism, snapshot).loadAll()) {
+			addLoadedJob(job);
 		}
+		nodes.retainAll(getVertices());
+		totalTriggerCount = null;
 		if (settings.isCountTriggersTransitively()) {
 			countTotalTriggerPaths();
 		}
 	}
 	
+	@Override
+	public synchronized CompactGraph<JobNode> freeze() {
+		return super.freeze();
+	}
+	
 	/**
-	 * Generates a representations of the graph as GraphViz dot
-	 * @param current a selected note which should be highlighted and all non-connected node removed
-	 * @return the dot-string representation
+	 * Creates an immutable copy of the current state of this graph, which can be read without locking this graph.
+	 * The trigger counts are only copied if they are shown.
+	 * @return the snapshot of this graph with a new version
 	 */
-	public String getDotString(JobWrapper current) {
-        String rankdir = settings.isLeftToRightLayout() ? "LR" : "TB";
-        StringBuilder dot = new StringBuilder();
-		dot.append(String.format("digraph { %n\tnode [shape=box, style=rounded, fontname=sans ];%n\tgraph [rankdir=%s]; %n", rankdir));
-		for (JobWrapper j : getVertices()) {
-			if (isJobVisible(j)) {
-				dot.append(getDotNode(j, current));
-			}
+	public synchronized JobGraphSnapshot snapshot() {
+		if (totalTriggerCount == null && settings.isCountTriggersTransitively()) {
+			countTotalTriggerPaths();
+		}
+		if (totalTriggerCount == null) {
+			return new JobGraphSnapshot(freeze(), settings, null, Collections.emptySet(), Collections.emptySet());
 		}
-		for (JobWrapper targetJob : getVertices()) {
-			Set<JobWrapper> sourceJobs = getPredecessors(targetJob);
-			for (JobWrapper sourceJob : sourceJobs) {
-				if (isJobVisible(sourceJob) && isJobVisible(targetJob)) {
-					dot.append(getDotEdge(sourceJob, targetJob, current));
+		return new JobGraphSnapshot(freeze(), settings, new HashMap<>(totalTriggerCount), new HashSet<>(cappedTriggerCounts), new HashSet<>(jobsInTriggerCycles));
+	}
+	
+	/**
+	 * Reloads the upstream dependencies of a single job which was created or whose configuration has changed.
+	 * Jobs which reference this job by name but could not be resolved before will be connected to it.
+	 * @param job the created or changed job
+	 */
+	public synchronized void updateJob(JobWrapper job) {
+		Set<JobNode> changedJobs = new HashSet<>();
+		changedJobs.add(reloadUpstreamOfJob(job));
+		Set<JobNode> waiting = unresolvedUpstream.remove(job.getFullName());
+		if (waiting != null) {
+			// the new name may take precedence over a job which was resolved before, so the triggers are resolved again
+			for (JobNode downstream : waiting) {
+				JobWrapper downstreamJob = JobWrapper.wrap(resolver.getItem(downstream.getFullName()));
+				if (downstreamJob != null) {
+					changedJobs.add(reloadUpstreamOfJob(downstreamJob));
 				}
 			}
 		}
-		dot.append("}");
-		return dot.toString();
+		updateTotalTriggerPaths(changedJobs);
+	}
+	
+	/**
+	 * Moves a renamed job to its new name. The job keeps its edges and its node id.
+	 * @param job the job with its new name
+	 * @param oldFullName the full name of the job before it was renamed
+	 */
+	public synchronized void renameJob(JobWrapper job, String oldFullName) {
+		storedJobs.remove(oldFullName);
+		JobNode previous = nodes.get(oldFullName);
+		if (previous != null) {
+			replaceNode(previous, nodes.rename(job, oldFullName));
+		}
+		updateJob(job);
+	}
+	
+	/**
+	 * Removes a deleted job from the graph. Jobs which were triggered by this job will be connected again if a job with the same name is created.
+	 * @param job the deleted job
+	 */
+	public synchronized void removeJob(JobWrapper job) {
+		JobNode node = nodes.get(job.getFullName());
+		if (node != null) {
+			removeNode(node);
+		}
+	}
+	
+	private void removeNode(JobNode job) {
+		nodes.remove(job.getFullName());
+		storedJobs.remove(job.getFullName());
+		Set<JobNode> downstreamJobs = Collections.emptySet();
+		if (containsVertex(job)) {
+			downstreamJobs = new HashSet<>(getSuccessors(job));
+			downstreamJobs.remove(job);
+			for (JobNode downstream : downstreamJobs) {
+				unresolvedUpstream.computeIfAbsent(job.getFullName(), name -> new HashSet<>()).add(downstream);
+			}
+			removeVertex(job);
+		}
+		forgetUnresolvedUpstream(job);
+		if (totalTriggerCount != null) {
+			totalTriggerCount.remove(job);
+			cappedTriggerCounts.remove(job);
+			jobsInTriggerCycles.remove(job);
+		}
+		updateTotalTriggerPaths(downstreamJobs);
+	}
+	
+	/**
+	 * Removes all jobs of a deleted folder
+	 * @param folderName the full name of the folder
+	 */
+	public synchronized void removeJobsInFolder(String folderName) {
+		String prefix = folderName + "/";
+		for (JobNode job : new ArrayList<>(getJobs())) {
+			if (job.getFullName().startsWith(prefix)) {
+				removeNode(job);
+			}
+		}
+	}
+	
+	/**
+	 * Get the part of this graph which is shown on the triggers page of a job without copying or modifying this graph. 
+	 * The view only contains the jobs which are connected to the given job, so its size is independent of the number of all jobs.
+	 * @param job the selected job
+	 * @return a view of the connected jobs of the given job
+	 */
+	public synchronized SubgraphView<JobNode> getConnectedSubgraph(JobNode job) {
+		return getConnectedSubgraph(job, !settings.isLinearUpstreamOfProject());
+	}
+	
+	/**
+	 * Generates a representations of the graph as GraphViz dot
+	 * @param current a selected note which should be highlighted and all non-connected node removed
+	 * @return the dot-string representation
+	 */
+	public String getDotString(JobNode current) {
+		return getDotString(this, current);
+	}
+	
+	/**
+	 * Generates a representations of a part of this graph as GraphViz dot
+	 * @param graph this graph or a view of it
+	 * @param current a selected note which should be highlighted
+	 * @return the dot-string representation
+	 */
+	public synchronized String getDotString(Graph<JobNode> graph, JobNode current) {
+		if (settings.isCountTriggersTransitively() && totalTriggerCount == null) {
+			countTotalTriggerPaths();
+		}
+		return new JobGraphDotWriter(RenderSettings.of(settings), totalTriggerCount, cappedTriggerCounts, jobsInTriggerCycles).write(graph, current);
 	}
 	
 	/**
 	 * Removes all node which are not connected to the given node
 	 * @param node the node which all other nodes will be connected to
 	 */
-	public void removeUnconnectedNodes(JobWrapper node) {
+	public synchronized void removeUnconnectedNodes(JobNode node) {
 		removeDisconnectedComponents(node, !settings.isLinearUpstreamOfProject());
 	}
 	
-	public Set<JobWrapper> getJobs() {
+	public Set<JobNode> getJobs() {
 		return getVertices();
 	}
+	
+	/**
+	 * @param fullName the full name of a job
+	 * @return the node of the job in this graph or null if the job is not part of this graph
+	 */
+	public synchronized JobNode getNode(String fullName) {
+		return nodes.get(fullName);
+	}
+	
+	/**
+	 * @param job a job
+	 * @return the node of the job in this graph or null if the job is not part of this graph
+	 */
+	public JobNode getNode(Job<?, ?> job) {
+		return getNode(job.getFullName());
+	}
 
 	/**
 	 * Get the predecessor of a specific job
 	 * @param job which gets triggered by other jobs
 	 * @return the jobs which trigger the given job
 	 */
-	public Set<JobWrapper> getUpstreamOfJob(JobWrapper job) {
-		return getPredecessors(job);
+	public synchronized Set<JobNode> getUpstreamOfJob(JobNode job) {
+		return containsVertex(job) ? new HashSet<>(getPredecessors(job)) : Collections.emptySet();
 	}
 
 	/**
@@ -133,80 +301,205 @@ public class JobGraph extends DirectedGraph<JobWrapper> {
 	 * @param job which triggers by other jobs
 	 * @return the jobs which are triggered the given job
 	 */
-	public Set<JobWrapper> getDownstreamOfJob(JobWrapper job) {
-		return getSuccessors(job);
+	public synchronized Set<JobNode> getDownstreamOfJob(JobNode job) {
+		return containsVertex(job) ? new HashSet<>(getSuccessors(job)) : Collections.emptySet();
+	}
+
+	/**
+	 * @return the triggers of all jobs for a snapshot of this graph
+	 */
+	synchronized List<StoredJob> getStoredJobs() {
+		return new ArrayList<>(storedJobs.values());
 	}
 
 	/**
 	 * @return the a map of the number of triggers of all jobs
 	 */
-	public Map<JobWrapper, Integer> getTotalTriggerCount() {
-		return totalTriggerCount;
+	public synchronized Map<JobNode, Long> getTotalTriggerCount() {
+		if (totalTriggerCount == null) {
+			countTotalTriggerPaths();
+		}
+		return Collections.unmodifiableMap(totalTriggerCount);
+	}
+	
+	/**
+	 * Get if the number of triggers of a job exceeds the range of long. Its count is {@link Long#MAX_VALUE} in this case.
+	 * @param job the job whose trigger count is checked
+	 * @return true if the trigger count of the job is capped
+	 */
+	public synchronized boolean isTriggerCountCapped(JobNode job) {
+		if (totalTriggerCount == null) {
+			countTotalTriggerPaths();
+		}
+		return cappedTriggerCounts.contains(job);
+	}
+	
+	/**
+	 * @return the jobs which are part of a trigger cycle and therefore share one trigger count
+	 */
+	public synchronized Set<JobNode> getJobsInTriggerCycles() {
+		if (totalTriggerCount == null) {
+			countTotalTriggerPaths();
+		}
+		return Collections.unmodifiableSet(jobsInTriggerCycles);
 	}
 	
 	/**
 	 * calculate the upstream dependency graph of a given job
 	 * @param job to get its upstream dependencies of
 	 */
-	private void loadUpstreamOfJob(JobWrapper job) {
-		if (!containsVertex(job)) {
-			Queue<JobWrapper> queue = new LinkedList<>();
-			Map<JobWrapper, Boolean> discovered = new HashMap<>();
-			queue.add(job);
-			while (!queue.isEmpty()) {
-				JobWrapper j = queue.poll();
-				addVertex(j);
-				discovered.put(j, true);
-				Set<JobWrapper> predecessors = j.getPredecessor();
-				for (JobWrapper predecessor : predecessors) {
-					addEdge(predecessor, j);
-					if (!discovered.getOrDefault(predecessor, false)) {
-						queue.add(predecessor);
-					}
+	private JobNode loadUpstreamOfJob(JobWrapper job) {
+		return addLoadedJob(JobGraphBuilder.load(job, resolver));
+	}
+	
+	/**
+	 * Adds a job and the edges from its resolved upstream jobs to this graph
+	 * @param job the job with its resolved upstream jobs
+	 * @return the node of the job
+	 */
+	private JobNode addLoadedJob(LoadedJob job) {
+		JobNode node = addJob(job.getJob());
+		storedJobs.put(node.getFullName(), job.getStoredJob());
+		for (UpstreamReference reference : job.getUpstream()) {
+			Job<?, ?> upstream = reference.getJob();
+			JobNode predecessor = upstream == null ? null : getNodeOfUpstream(upstream);
+			if (predecessor != null) {
+				addEdge(predecessor, node);
+			}
+			// remember the names which are not resolved yet but would take precedence
+			for (String fullName : reference.getCandidateFullNames()) {
+				if (predecessor != null && fullName.equals(predecessor.getFullName())) {
+					break;
 				}
+				unresolvedUpstream.computeIfAbsent(fullName, n -> new HashSet<>()).add(node);
+			}
+		}
+		return node;
+	}
+	
+	/**
+	 * Removes the upstream dependencies of a job and loads them again
+	 * @param job the job whose triggers are resolved again
+	 * @return the node of the job
+	 */
+	private JobNode reloadUpstreamOfJob(JobWrapper job) {
+		JobNode node = nodes.get(job.getFullName());
+		if (node != null && containsVertex(node)) {
+			for (JobNode predecessor : new HashSet<>(getPredecessors(node))) {
+				removeEdge(predecessor, node);
 			}
+			forgetUnresolvedUpstream(node);
 		}
+		return loadUpstreamOfJob(job);
 	}
 	
 	/**
-	 * Get the string which represents the node in the dot-file
-	 * @param node job to draw in the graph
-	 * @param current selected job
-	 * @return the dot code for a given job
+	 * Adds the node of a job to this graph or replaces its node if the state of the job has changed
+	 * @param job the job to add
+	 * @return the current node of the job
 	 */
-	private String getDotNode(JobWrapper node, JobWrapper current) {
-		String nodeStyle = node.equals(current) ?  "rounded,filled" : "rounded"; // <td><img src=\""+node.getIconColor().getImage()+"\" /></td>
-		String nodeImage = settings.isDrawBalls() ? String.format("<td><img src=\"%s%s\" /></td>", settings.getImagePath(), node.getIconColor().getImage()) : "";
-		String nodeTriggerCount = settings.isCountTriggersTransitively() ? String.format("<td>(%d)</td>", totalTriggerCount.get(node)) : "";
-		String nodeLabel = String.format("<table border=\"0\"><tr>%s<td>%s</td>%s</tr></table>", nodeImage, node.getFullName(), nodeTriggerCount);
-		String nodeHref = node.getAbsoluteUrl()+"triggers/";
-		String nodeColor = node.isDisabled()  || node.equals(current) ? DISABLED_NODE_COLOR : NODE_COLOR;
-		String nodeFontcolor = node.isDisabled() && !node.equals(current) ? DISABLED_NODE_COLOR : NODE_COLOR;
-		return String.format("\t\"%s\" [style=\"%s\", label=<%s>, href=\"%s\", color=\"%s\", fontcolor=\"%s\"]; %n", node.getFullName(), nodeStyle, nodeLabel, nodeHref, nodeColor, nodeFontcolor);
+	private JobNode addJob(JobWrapper job) {
+		JobNode previous = nodes.get(job.getFullName());
+		JobNode node = nodes.intern(job);
+		if (previous != null && previous != node) {
+			replaceNode(previous, node);
+		}
+		addVertex(node);
+		return node;
 	}
 	
 	/**
-	 * Get the string which represents an directed edge (a->b) in the dot-file
-	 * @param source node a
-	 * @param target node b
-	 * @param current a node whose adjacent edges are highlighted
-	 * @return the dot code for an edge between two jobs
+	 * Get the node of an upstream job without creating a new wrapper if the job is already known
+	 * @param job the upstream job
+	 * @return the node of the job or null if the job type is not supported
 	 */
-	private String getDotEdge(JobWrapper source, JobWrapper target, JobWrapper current) {
-		String edgeColor = (source.isDisabled() || target.isDisabled()) ? DISABLED_NODE_COLOR : NODE_COLOR;
-		String edgeWidth = source.equals(current) || target.equals(current) ? String.valueOf(settings.getSelectedEdgeWidth()) : "1";
-		String edgeProperties = String.format("[color=\"%s\", penwidth=\"%s\"]", edgeColor, edgeWidth);
-		return String.format("\t\"%s\" -> \"%s\" %s; %n", source.getFullName(), target.getFullName(), edgeProperties);
+	private JobNode getNodeOfUpstream(Job<?, ?> job) {
+		JobNode node = nodes.get(job.getFullName());
+		if (node == null) {
+			JobWrapper wrapper = JobWrapper.wrap(job);
+			if (wrapper == null) {
+				return null;
+			}
+			node = nodes.intern(wrapper);
+		}
+		return node;
 	}
 	
+	/**
+	 * Exchanges the node of a job by a newer record of the same job
+	 * @param previous the node in this graph
+	 * @param node the new node of the same job
+	 */
+	private void replaceNode(JobNode previous, JobNode node) {
+		replaceVertex(previous, node);
+		if (totalTriggerCount != null && totalTriggerCount.containsKey(previous)) {
+			totalTriggerCount.put(node, totalTriggerCount.remove(previous));
+			if (cappedTriggerCounts.remove(previous)) {
+				cappedTriggerCounts.add(node);
+			}
+			if (jobsInTriggerCycles.remove(previous)) {
+				jobsInTriggerCycles.add(node);
+			}
+		}
+	}
 	
 	/**
-	 * Get if a job is visible because its not disabled or disabled jobs are shown because of user settings
-	 * @param job job to get visibility state
-	 * @return if a job is visible
+	 * Removes a job from the lists of jobs which wait for an upstream job to be created
+	 * @param job the job whose unresolved upstream names are discarded
 	 */
-	private boolean isJobVisible(JobWrapper j) {
-		return !j.isDisabled() || (!settings.isHideDisabled() && j.isDisabled());
+	private void forgetUnresolvedUpstream(JobNode job) {
+		Iterator<Set<JobNode>> waitingJobs = unresolvedUpstream.values().iterator();
+		while (waitingJobs.hasNext()) {
+			Set<JobNode> waiting = waitingJobs.next();
+			waiting.remove(job);
+			if (waiting.isEmpty()) {
+				waitingJobs.remove();
+			}
+		}
+	}
+	
+	/**
+	 * Recalculates the trigger counts of all jobs which are affected by a change of the graph.
+	 * Only the changed jobs and their downstream jobs are counted again. 
+	 * If the trigger counts are not shown, they are discarded and will be calculated on demand.
+	 * @param changedJobs the jobs whose upstream jobs have changed
+	 */
+	private void updateTotalTriggerPaths(Collection<JobNode> changedJobs) {
+		if (totalTriggerCount == null) {
+			return;
+		}
+		if (!settings.isCountTriggersTransitively()) {
+			totalTriggerCount = null;
+			return;
+		}
+		Set<JobNode> affectedJobs = new HashSet<>();
+		for (JobNode job : changedJobs) {
+			if (containsVertex(job)) {
+				affectedJobs.add(job);
+				affectedJobs.addAll(getDescendants(job));
+			}
+		}
+		// upstream jobs which were added by the changed triggers before their own change was applied are not counted yet
+		Deque<JobNode> pending = new ArrayDeque<>(affectedJobs);
+		while (!pending.isEmpty()) {
+			for (JobNode upstream : getPredecessors(pending.pop())) {
+				if (!affectedJobs.contains(upstream) && !totalTriggerCount.containsKey(upstream)) {
+					affectedJobs.add(upstream);
+					pending.push(upstream);
+					for (JobNode downstream : getDescendants(upstream)) {
+						if (affectedJobs.add(downstream)) {
+							pending.push(downstream);
+						}
+					}
+				}
+			}
+		}
+		try {
+			countTriggerPaths(new SubgraphView<>(this, affectedJobs));
+		} catch (IllegalStateException e) {
+			logger.log(Level.WARNING, "counting all triggers again", e);
+			countTotalTriggerPaths();
+		}
 	}
 	
 	/**
@@ -214,21 +507,69 @@ public class JobGraph extends DirectedGraph<JobWrapper> {
 	 */
 	private void countTotalTriggerPaths() {
 		totalTriggerCount = new HashMap<>();
-		Deque<JobWrapper> sorted = getTopologicalOrder();
-		for (JobWrapper j : getJobs()) {
-			totalTriggerCount.put(j, 1);
-		}
-		while (!sorted.isEmpty()) {
-			JobWrapper j = sorted.pop();
-			Integer pathCount = 0;
-			Set<JobWrapper> upstreamOfJ = getUpstreamOfJob(j);
-			if (upstreamOfJ.isEmpty()) {
-				pathCount = 1;
-			}
-			for (JobWrapper k : upstreamOfJ) {
-				pathCount += totalTriggerCount.get(k);
+		cappedTriggerCounts = new HashSet<>();
+		jobsInTriggerCycles = new HashSet<>();
+		countTriggerPaths(this);
+	}
+	
+	/**
+	 * Counts the number of paths to each job of a part of this graph in topological order. 
+	 * The counts of upstream jobs outside of this part must be known already.
+	 * Jobs of a trigger cycle are counted as a single node which gets triggered by all paths leading into the cycle.
+	 * Counts which exceed the range of long are capped at {@link Long#MAX_VALUE}.
+	 * @param region the jobs whose trigger counts are calculated
+	 * @throws IllegalStateException if the count of an upstream job outside of the region is not known
+	 */
+	private void countTriggerPaths(Graph<JobNode> region) {
+		CompactGraph<JobNode> graph = CompactGraph.of(region);
+		StronglyConnectedComponents components = graph.getStronglyConnectedComponents();
+		long[] pathCounts = new long[components.getComponentCount()];
+		boolean[] capped = new boolean[pathCounts.length];
+		for (int c = 0; c < pathCounts.length; c++) {
+			boolean triggered = false;
+			long pathCount = 0;
+			for (int m = 0; m < components.getSize(c); m++) {
+				for (JobNode upstream : getPredecessors(graph.getVertex(components.getMember(c, m)))) {
+					int k = graph.indexOf(upstream);
+					long upstreamCount;
+					if (k < 0) {
+						Long count = totalTriggerCount.get(upstream);
+						if (count == null) {
+							throw new IllegalStateException("the trigger count of the upstream job " + upstream.getFullName() + " is not known");
+						}
+						upstreamCount = count;
+						capped[c] |= cappedTriggerCounts.contains(upstream);
+					} else if (components.getComponent(k) != c) {
+						upstreamCount = pathCounts[components.getComponent(k)];
+						capped[c] |= capped[components.getComponent(k)];
+					} else {
+						continue;
+					}
+					triggered = true;
+					if (pathCount > Long.MAX_VALUE - upstreamCount) {
+						pathCount = Long.MAX_VALUE;
+						capped[c] = true;
+					} else {
+						pathCount += upstreamCount;
+					}
+				}
 			}
-			totalTriggerCount.put(j, pathCount);
+			pathCounts[c] = triggered ? pathCount : 1;
+		}
+		for (int j = 0; j < graph.getVertexCount(); j++) {
+			JobNode job = graph.getVertex(j);
+			int c = components.getComponent(j);
+			totalTriggerCount.put(job, pathCounts[c]);
+			setMembership(cappedTriggerCounts, job, capped[c]);
+			setMembership(jobsInTriggerCycles, job, components.isCyclic(c));
+		}
+	}
+	
+	private static void setMembership(Set<JobNode> set, JobNode job, boolean member) {
+		if (member) {
+			set.add(job);
+		} else {
+			set.remove(job);
 		}
 	}
 }
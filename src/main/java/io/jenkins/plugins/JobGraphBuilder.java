@@ -0,0 +1,228 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, Bachmann electronics GmbH, Ole Siemers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.acegisecurity.Authentication;
+
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.Job;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import io.jenkins.plugins.JobGraphStore.StoredJob;
+import io.jenkins.plugins.model.wrapper.JobWrapper;
+import io.jenkins.plugins.model.wrapper.UpstreamJobResolver;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+
+/**
+ * Loads the triggers of all jobs for a {@link JobGraph}. 
+ * The item tree is split by folder into fork-join tasks, which resolve the upstream jobs of their jobs in parallel 
+ * and collect them in their own buffers. The graph is assembled from the buffers afterwards on a single thread.
+ * The triggers of jobs whose configuration has not changed since a snapshot was stored are taken from the snapshot.
+ * @author OLSI
+ */
+class JobGraphBuilder {
+
+	/**
+	 * The number of threads used to load the jobs, 1 loads all jobs on the calling thread
+	 */
+	static final int DEFAULT_PARALLELISM = SystemProperties.getInteger(JobGraphBuilder.class.getName() + ".parallelism", Runtime.getRuntime().availableProcessors());
+
+	private static final Logger logger = Logger.getLogger(JobGraphBuilder.class.getName());
+
+	private final UpstreamJobResolver resolver;
+	private final int parallelism;
+	private final Map<String, StoredJob> snapshot;
+
+	JobGraphBuilder(UpstreamJobResolver resolver, int parallelism, Map<String, StoredJob> snapshot) {
+		this.resolver = resolver;
+		this.parallelism = parallelism;
+		this.snapshot = snapshot;
+	}
+
+	/**
+	 * Loads all jobs of this Jenkins instance which are visible to the current user
+	 * @return the loaded jobs, where the jobs of a folder follow the folder
+	 */
+	List<LoadedJob> loadAll() {
+		if (parallelism <= 1) {
+			List<LoadedJob> loaded = new ArrayList<>();
+			for (Item item : Jenkins.get().getAllItems()) {
+				loadItem(item, loaded);
+			}
+			return loaded;
+		}
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			return pool.invoke(new FolderTask(Jenkins.get(), Jenkins.getAuthentication()));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private void loadItem(Item item, List<LoadedJob> loaded) {
+		JobWrapper job = JobWrapper.wrap(item);
+		if (job != null) {
+			loaded.add(load(job, resolver, snapshot.get(job.getFullName())));
+		}
+		else if (!(item instanceof ItemGroup)) {
+			logger.log(Level.FINE, "ignoring item "+item.getFullName()+" is an instance of "+item.getClass().getName());
+		}
+	}
+
+	/**
+	 * Resolves the upstream jobs of a single job
+	 * @param job the job whose triggers are loaded
+	 * @param resolver the resolver of the upstream job names
+	 * @return the job with its resolved upstream jobs
+	 */
+	static LoadedJob load(JobWrapper job, UpstreamJobResolver resolver) {
+		return load(job, resolver, null);
+	}
+
+	/**
+	 * Resolves the upstream jobs of a single job. The names of the upstream jobs are resolved again even if they are taken from the snapshot,
+	 * since jobs with these names may have been created or deleted in the meantime.
+	 * @param job the job whose triggers are loaded
+	 * @param resolver the resolver of the upstream job names
+	 * @param stored the stored triggers of the job or null if the job is not part of the snapshot
+	 * @return the job with its resolved upstream jobs
+	 */
+	private static LoadedJob load(JobWrapper job, UpstreamJobResolver resolver, StoredJob stored) {
+		if (stored == null || !stored.isUpToDate(job)) {
+			stored = StoredJob.of(job, new ArrayList<>(resolver.getUpstreamProjectNames(job)));
+		}
+		List<UpstreamReference> upstream = new ArrayList<>();
+		for (String name : stored.getUpstreamNames()) {
+			upstream.add(new UpstreamReference(resolver.resolve(name, job), resolver.getCandidateFullNames(name, job)));
+		}
+		return new LoadedJob(job, upstream, stored);
+	}
+
+	/**
+	 * Loads the jobs of a folder and forks a task for each contained folder
+	 */
+	private class FolderTask extends RecursiveTask<List<LoadedJob>> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final transient ItemGroup<?> folder;
+		private final transient Authentication authentication;
+
+		FolderTask(ItemGroup<?> folder, Authentication authentication) {
+			this.folder = folder;
+			this.authentication = authentication;
+		}
+
+		@Override
+		protected List<LoadedJob> compute() {
+			// the worker threads do not inherit the user of the calling thread
+			try (ACLContext ctx = ACL.as(authentication)) {
+				List<LoadedJob> loaded = new ArrayList<>();
+				List<FolderTask> subtasks = new ArrayList<>();
+				for (Item item : folder.getItems()) {
+					loadItem(item, loaded);
+					if (item instanceof ItemGroup) {
+						FolderTask subtask = new FolderTask((ItemGroup<?>)item, authentication);
+						subtask.fork();
+						subtasks.add(subtask);
+					}
+				}
+				for (FolderTask subtask : subtasks) {
+					loaded.addAll(subtask.join());
+				}
+				return loaded;
+			}
+		}
+	}
+
+	/**
+	 * A job and the resolved names of its reverse build triggers
+	 */
+	static final class LoadedJob {
+
+		private final JobWrapper job;
+		private final List<UpstreamReference> upstream;
+		private final StoredJob stored;
+
+		LoadedJob(JobWrapper job, List<UpstreamReference> upstream, StoredJob stored) {
+			this.job = job;
+			this.upstream = upstream;
+			this.stored = stored;
+		}
+
+		JobWrapper getJob() {
+			return job;
+		}
+
+		List<UpstreamReference> getUpstream() {
+			return Collections.unmodifiableList(upstream);
+		}
+
+		/**
+		 * @return the record of the triggers of the job for the snapshot
+		 */
+		StoredJob getStoredJob() {
+			return stored;
+		}
+	}
+
+	/**
+	 * A name in a reverse build trigger and the job it refers to
+	 */
+	static final class UpstreamReference {
+
+		private final Job<?, ?> job;
+		private final List<String> candidateFullNames;
+
+		UpstreamReference(Job<?, ?> job, List<String> candidateFullNames) {
+			this.job = job;
+			this.candidateFullNames = candidateFullNames;
+		}
+
+		/**
+		 * @return the upstream job or null if the name could not be resolved
+		 */
+		Job<?, ?> getJob() {
+			return job;
+		}
+
+		/**
+		 * @return the full names the name can refer to, in the order they are tried
+		 */
+		List<String> getCandidateFullNames() {
+			return candidateFullNames;
+		}
+	}
+}
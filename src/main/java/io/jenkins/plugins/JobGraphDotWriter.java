@@ -0,0 +1,204 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, Bachmann electronics GmbH, Ole Siemers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import hudson.model.BallColor;
+import io.jenkins.plugins.model.graph.Graph;
+import io.jenkins.plugins.model.node.JobNode;
+
+/**
+ * Writes a graph of jobs as GraphViz dot in the style of the current settings
+ * Nodes and edges are written fragment by fragment, and the quoted names and urls of jobs are kept by their nodes.
+ * @author OLSI
+ */
+class JobGraphDotWriter {
+
+	private static final String DISABLED_NODE_COLOR = "gray";
+	private static final String NODE_COLOR = "black";
+	private static final String NEWLINE = System.lineSeparator();
+
+	private final RenderSettings settings;
+	private final Map<JobNode, Long> totalTriggerCount;
+	private final Set<JobNode> cappedTriggerCounts;
+	private final Set<JobNode> jobsInTriggerCycles;
+	private final Function<JobNode, BallColor> iconColors;
+	private final String selectedEdgeWidth;
+
+	/**
+	 * @param settings the settings of the graph
+	 * @param totalTriggerCount the trigger counts of all jobs, only used if trigger counts are shown
+	 * @param cappedTriggerCounts the jobs whose trigger count exceeds the range of long
+	 * @param jobsInTriggerCycles the jobs which are part of a trigger cycle
+	 */
+	JobGraphDotWriter(RenderSettings settings, Map<JobNode, Long> totalTriggerCount, Set<JobNode> cappedTriggerCounts, Set<JobNode> jobsInTriggerCycles) {
+		this(settings, totalTriggerCount, cappedTriggerCounts, jobsInTriggerCycles, job -> JobGraphService.get().getIconColor(job));
+	}
+
+	/**
+	 * @param settings the settings of the graph
+	 * @param totalTriggerCount the trigger counts of all jobs, only used if trigger counts are shown
+	 * @param cappedTriggerCounts the jobs whose trigger count exceeds the range of long
+	 * @param jobsInTriggerCycles the jobs which are part of a trigger cycle
+	 * @param iconColors the build status of the jobs, only used if the build status is shown
+	 */
+	JobGraphDotWriter(RenderSettings settings, Map<JobNode, Long> totalTriggerCount, Set<JobNode> cappedTriggerCounts, Set<JobNode> jobsInTriggerCycles, Function<JobNode, BallColor> iconColors) {
+		this.settings = settings;
+		this.totalTriggerCount = totalTriggerCount;
+		this.cappedTriggerCounts = cappedTriggerCounts;
+		this.jobsInTriggerCycles = jobsInTriggerCycles;
+		this.iconColors = iconColors;
+		this.selectedEdgeWidth = String.valueOf(settings.getSelectedEdgeWidth());
+	}
+
+	/**
+	 * Generates a representations of a graph as GraphViz dot
+	 * @param graph the graph or a view of it
+	 * @param current a selected note which should be highlighted
+	 * @return the dot-string representation
+	 */
+	String write(Graph<JobNode> graph, JobNode current) {
+		StringWriter dot = new StringWriter();
+		try {
+			write(dot, graph, current);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return dot.toString();
+	}
+
+	/**
+	 * Writes a graph as GraphViz dot node by node and edge by edge
+	 * @param out the writer of the dot language
+	 * @param graph the graph or a view of it
+	 * @param current a selected note which should be highlighted
+	 * @throws IOException if the writer failed
+	 */
+	void write(Writer out, Graph<JobNode> graph, JobNode current) throws IOException {
+		String rankdir = settings.isLeftToRightLayout() ? "LR" : "TB";
+		out.write(String.format("digraph { %n\tnode [shape=box, style=rounded, fontname=sans ];%n\tgraph [rankdir=%s]; %n", rankdir));
+		for (JobNode j : graph.getVertices()) {
+			if (isJobVisible(j)) {
+				writeDotNode(out, j, current);
+			}
+		}
+		for (JobNode targetJob : graph.getVertices()) {
+			// the edges of a hidden job are not visible either
+			if (!isJobVisible(targetJob)) {
+				continue;
+			}
+			for (JobNode sourceJob : graph.getPredecessors(targetJob)) {
+				if (isJobVisible(sourceJob)) {
+					writeDotEdge(out, sourceJob, targetJob, current);
+				}
+			}
+		}
+		out.write("}");
+	}
+	
+	/**
+	 * Writes the line which represents the node in the dot-file
+	 * @param out the writer of the dot language
+	 * @param node job to draw in the graph
+	 * @param current selected job
+	 */
+	private void writeDotNode(Writer out, JobNode node, JobNode current) throws IOException {
+		boolean selected = node.equals(current);
+		out.write('\t');
+		out.write(node.getDotId());
+		out.write(selected ? " [style=\"rounded,filled\", label=<<table border=\"0\"><tr>" : " [style=\"rounded\", label=<<table border=\"0\"><tr>");
+		if (settings.isDrawBalls()) {
+			out.write("<td><img src=\"");
+			out.write(settings.getImagePath());
+			out.write(iconColors.apply(node).getImage());
+			out.write("\" /></td>");
+		}
+		out.write("<td>");
+		out.write(node.getFullName());
+		out.write("</td>");
+		if (settings.isCountTriggersTransitively()) {
+			writeDotTriggerCount(out, node);
+		}
+		out.write("</tr></table>>, href=\"");
+		out.write(node.getAbsoluteUrl(settings.getRootUrl()));
+		out.write("triggers/\", color=\"");
+		out.write(node.isDisabled() || selected ? DISABLED_NODE_COLOR : NODE_COLOR);
+		out.write("\", fontcolor=\"");
+		out.write(node.isDisabled() && !selected ? DISABLED_NODE_COLOR : NODE_COLOR);
+		out.write("\"]; ");
+		out.write(NEWLINE);
+	}
+	
+	/**
+	 * Writes the trigger count of a node for its label in the dot-file
+	 * @param out the writer of the dot language
+	 * @param node job to draw in the graph
+	 */
+	private void writeDotTriggerCount(Writer out, JobNode node) throws IOException {
+		out.write("<td>(");
+		out.write(String.valueOf(totalTriggerCount.get(node)));
+		if (cappedTriggerCounts.contains(node)) {
+			out.write('+');
+		}
+		if (jobsInTriggerCycles.contains(node)) {
+			out.write(", cycle");
+		}
+		out.write(")</td>");
+	}
+	
+	/**
+	 * Writes the line which represents an directed edge (a->b) in the dot-file
+	 * @param out the writer of the dot language
+	 * @param source node a
+	 * @param target node b
+	 * @param current a node whose adjacent edges are highlighted
+	 */
+	private void writeDotEdge(Writer out, JobNode source, JobNode target, JobNode current) throws IOException {
+		out.write('\t');
+		out.write(source.getDotId());
+		out.write(" -> ");
+		out.write(target.getDotId());
+		out.write(source.isDisabled() || target.isDisabled() ? " [color=\"" + DISABLED_NODE_COLOR : " [color=\"" + NODE_COLOR);
+		out.write("\", penwidth=\"");
+		out.write(source.equals(current) || target.equals(current) ? selectedEdgeWidth : "1");
+		out.write("\"]; ");
+		out.write(NEWLINE);
+	}
+	
+	/**
+	 * Get if a job is visible because its not disabled or disabled jobs are shown because of user settings
+	 * @param job job to get visibility state
+	 * @return if a job is visible
+	 */
+	private boolean isJobVisible(JobNode j) {
+		return !j.isDisabled() || !settings.isHideDisabled();
+	}
+}
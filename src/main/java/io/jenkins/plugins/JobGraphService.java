@@ -0,0 +1,569 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, Bachmann electronics GmbH, Ole Siemers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.kohsuke.stapler.StaplerRequest;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.XmlFile;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.init.Terminator;
+import hudson.model.BallColor;
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.Job;
+import hudson.model.Saveable;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.SaveableListener;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import io.jenkins.plugins.JobGraphStore.StoredJob;
+import io.jenkins.plugins.model.graph.ReachabilityIndex;
+import io.jenkins.plugins.model.node.JobNode;
+import io.jenkins.plugins.model.wrapper.JobWrapper;
+import io.jenkins.plugins.model.wrapper.UpstreamJobResolver;
+import jenkins.model.Jenkins;
+import jenkins.util.AtmostOneTaskExecutor;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+
+/**
+ * Holds the trigger graph of all jobs of this Jenkins instance.
+ * The graph is built once on first use and kept up to date by listening to changes of jobs,
+ * so showing a triggers page does not require a scan of all items.
+ * Changes are collected for a quiet period and applied together on a single thread, 
+ * so a bulk change of many jobs results in a single rebuild instead of an update per job.
+ * Readers are served an immutable snapshot of the graph, which is replaced atomically after each change, 
+ * so they neither block nor see a graph while it is changed.
+ * The triggers of all jobs are stored in a snapshot after the graph is built and on shutdown, 
+ * so after a restart only the jobs whose configuration has changed are loaded again.
+ * @author OLSI
+ */
+@Extension
+public class JobGraphService {
+
+	private static final Logger logger = Logger.getLogger(JobGraphService.class.getName());
+
+	/**
+	 * The milliseconds in which changes of jobs are collected before they are applied to the graph
+	 */
+	static final long QUIET_PERIOD = SystemProperties.getLong(JobGraphService.class.getName() + ".quietPeriod", 500L);
+
+	/**
+	 * The number of collected changes above which the graph is built again instead of being updated job by job
+	 */
+	static final int REBUILD_THRESHOLD = SystemProperties.getInteger(JobGraphService.class.getName() + ".rebuildThreshold", 100);
+
+	/**
+	 * The number of recent snapshots which are kept, so the image and the image map of a page are served from the snapshot of the page
+	 */
+	static final int KEPT_SNAPSHOTS = SystemProperties.getInteger(JobGraphService.class.getName() + ".keptSnapshots", 8);
+
+	private final UpstreamJobResolver resolver = new UpstreamJobResolver();
+	private Future<JobGraph> graph;
+	private final AtomicReference<JobGraphSnapshot> snapshot = new AtomicReference<>();
+	private final Map<Long, JobGraphSnapshot> recentSnapshots = new LinkedHashMap<Long, JobGraphSnapshot>() {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, JobGraphSnapshot> eldest) {
+			return size() > KEPT_SNAPSHOTS;
+		}
+	};
+	private final DotCache dotCache = new DotCache(DotCache.DEFAULT_SIZE);
+	private final Map<Item, PendingChange> pendingChanges = new LinkedHashMap<>();
+	private boolean rebuildRequested;
+	private boolean flushScheduled;
+	private volatile long startupToReadyMillis = -1;
+	private volatile ReachabilityIndex<JobNode> reachability;
+	private volatile boolean reachabilityRequested;
+	private final ExecutorService builder = new ThreadPoolExecutor(0, 1, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+			new NamingThreadFactory(new DaemonThreadFactory(), "JobGraphService builder"));
+	private final AtmostOneTaskExecutor<Void> reachabilityUpdater = new AtmostOneTaskExecutor<>(() -> {
+		reachability = new ReachabilityIndex<>(getSnapshot().getGraph());
+		return null;
+	});
+
+	public static JobGraphService get() {
+		return ExtensionList.lookupSingleton(JobGraphService.class);
+	}
+
+	/**
+	 * Starts building the shared graph in the background once all jobs are loaded, 
+	 * so the first request after a restart does not have to wait for the whole build.
+	 */
+	@Initializer(after = InitMilestone.JOB_LOADED)
+	public static void warmUp() {
+		get().startBuilding();
+	}
+
+	/**
+	 * Starts building the shared graph on the builder thread unless it is already built or being built
+	 * @return the result of the build
+	 */
+	private synchronized Future<JobGraph> startBuilding() {
+		if (graph == null) {
+			graph = builder.submit(() -> {
+				long start = System.currentTimeMillis();
+				JobGraph built = buildGraph(getStore().read());
+				publish(built.snapshot());
+				long end = System.currentTimeMillis();
+				startupToReadyMillis = end - ManagementFactory.getRuntimeMXBean().getStartTime();
+				logger.log(Level.INFO, String.format("Trigger graph of %d jobs built in %d ms, ready %d ms after startup", built.getJobs().size(), end - start, startupToReadyMillis));
+				return built;
+			});
+		}
+		return graph;
+	}
+
+	/**
+	 * Builds a new graph of all jobs and stores a snapshot of it
+	 * @param snapshot the stored triggers of jobs which are used if the jobs have not changed
+	 * @return the new graph
+	 */
+	private JobGraph buildGraph(Map<String, StoredJob> snapshot) {
+		JobGraph built;
+		try (ACLContext ctx = ACL.as(ACL.SYSTEM)) {
+			built = new JobGraph(resolver, snapshot);
+		}
+		saveSnapshot(built);
+		return built;
+	}
+
+	/**
+	 * Stores the triggers of the shared graph on shutdown, so the snapshot contains the changes since the graph was built
+	 */
+	@Terminator
+	public static void saveOnShutdown() {
+		JobGraphService service = get();
+		Future<JobGraph> future;
+		synchronized (service) {
+			future = service.graph;
+		}
+		// a graph which is still being built is saved by its build
+		if (future != null && future.isDone()) {
+			try {
+				service.saveSnapshot(service.waitFor(future));
+			} catch (RuntimeException e) {
+				logger.log(Level.FINE, "no trigger graph to save", e);
+			}
+		}
+	}
+
+	/**
+	 * @return the store of the snapshot of the triggers of all jobs
+	 */
+	JobGraphStore getStore() {
+		return new JobGraphStore(new File(Jenkins.get().getRootDir(), JobGraphStore.class.getName() + ".bin"));
+	}
+
+	private void saveSnapshot(JobGraph current) {
+		JobGraphStore store = getStore();
+		try {
+			store.write(current.getStoredJobs());
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "failed to save trigger graph snapshot "+store.getFile(), e);
+		}
+	}
+
+	/**
+	 * Get the latest snapshot of the shared graph. It is built on the first call unless it was built at startup.
+	 * The snapshot does not change, so it can be read without locking, but it does not contain changes of jobs which are not applied yet.
+	 * @return the immutable snapshot of the graph of all jobs
+	 */
+	public JobGraphSnapshot getSnapshot() {
+		JobGraphSnapshot current = snapshot.get();
+		if (current == null) {
+			JobGraph built = getGraph();
+			current = snapshot.get();
+			if (current == null) {
+				JobGraphSnapshot first = built.snapshot();
+				if (snapshot.compareAndSet(null, first)) {
+					keep(first);
+				}
+				current = snapshot.get();
+			}
+		}
+		if (current.isMissingTriggerCounts()) {
+			// the trigger counts were turned on after the snapshot was taken
+			JobGraphSnapshot counted = getGraph().snapshot();
+			if (snapshot.compareAndSet(current, counted)) {
+				keep(counted);
+			}
+			current = snapshot.get();
+		}
+		return current;
+	}
+
+	/**
+	 * Get a recent snapshot of the shared graph. The image and the image map of a page are requested separately, 
+	 * so they name the version of the snapshot which the page was rendered with.
+	 * @param version the version of the snapshot
+	 * @return the snapshot of this version, or the latest snapshot if the version is not kept anymore
+	 */
+	public JobGraphSnapshot getSnapshot(long version) {
+		JobGraphSnapshot current = getSnapshot();
+		if (current.getVersion() == version) {
+			return current;
+		}
+		synchronized (recentSnapshots) {
+			JobGraphSnapshot recent = recentSnapshots.get(version);
+			return recent != null ? recent : current;
+		}
+	}
+
+	/**
+	 * @param req a request with an optional version parameter
+	 * @param current the snapshot which is served if the request has no version
+	 * @return the snapshot of the requested version
+	 * @throws IllegalArgumentException if the version is not a number
+	 */
+	JobGraphSnapshot getSnapshot(StaplerRequest req, Supplier<JobGraphSnapshot> current) {
+		String version = req.getParameter("version");
+		if (version == null || version.isEmpty()) {
+			return current.get();
+		}
+		try {
+			return getSnapshot(Long.parseLong(version));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("version must be a number", e);
+		}
+	}
+
+	private void publish(JobGraphSnapshot published) {
+		snapshot.set(published);
+		keep(published);
+	}
+
+	private void keep(JobGraphSnapshot kept) {
+		synchronized (recentSnapshots) {
+			recentSnapshots.put(kept.getVersion(), kept);
+		}
+	}
+
+	/**
+	 * Get the shared graph of all jobs. It is built on the first call unless it was built at startup.
+	 * Callers wait for a build which is already running instead of starting another one.
+	 * @return the graph of all jobs
+	 */
+	public JobGraph getGraph() {
+		return waitFor(startBuilding());
+	}
+
+	private JobGraph waitFor(Future<JobGraph> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while waiting for the trigger graph", e);
+		} catch (ExecutionException e) {
+			synchronized (this) {
+				// the next request builds the graph again
+				if (graph == future) {
+					graph = null;
+				}
+			}
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			}
+			throw new IllegalStateException("building the trigger graph failed", cause);
+		}
+	}
+
+	/**
+	 * @return the milliseconds from the start of Jenkins until the shared graph was built for the first time, or -1 if it is not built yet
+	 */
+	public long getStartupToReadyMillis() {
+		return startupToReadyMillis;
+	}
+
+	/**
+	 * @return the cache of the DOT output of the snapshots
+	 */
+	DotCache getDotCache() {
+		return dotCache;
+	}
+
+	/**
+	 * @return the resolver of upstream job names which is kept up to date with the items of this instance
+	 */
+	public UpstreamJobResolver getUpstreamJobResolver() {
+		return resolver;
+	}
+
+	/**
+	 * The build status is not part of the graph, since it changes with every build. 
+	 * The job is looked up in the index of the resolver, so the folders of a job are not walked for every node which is drawn.
+	 * @param node the node of a job
+	 * @return the current icon color of the job, or {@link BallColor#NOTBUILT} if the job does not exist or the current user cannot read it
+	 */
+	public BallColor getIconColor(JobNode node) {
+		Item item = resolver.getItem(node.getFullName());
+		if (item instanceof Job && item.hasPermission(Item.READ)) {
+			return ((Job<?, ?>) item).getIconColor();
+		}
+		return BallColor.NOTBUILT;
+	}
+
+	/**
+	 * Get an index of the shared graph which answers up- and downstream queries without traversing the graph.
+	 * The index is built on the first call and afterwards rebuilt in the background whenever the graph changes,
+	 * so it may not contain changes of the last moments.
+	 * @return the reachability index of all jobs
+	 */
+	public ReachabilityIndex<JobNode> getReachabilityIndex() {
+		ReachabilityIndex<JobNode> index = reachability;
+		if (index == null) {
+			reachabilityRequested = true;
+			try {
+				reachabilityUpdater.submit().get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				logger.log(Level.WARNING, "building the reachability index failed", e);
+			}
+			index = reachability;
+			if (index == null) {
+				index = new ReachabilityIndex<>(getSnapshot().getGraph());
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Requests to build the shared graph again from scratch if it has already been built. 
+	 * Concurrent requests and changes of jobs which arrive in the meantime are handled by a single build.
+	 * The current graph is served until the new graph is complete.
+	 */
+	public void rebuild() {
+		synchronized (this) {
+			if (graph == null) {
+				return;
+			}
+			rebuildRequested = true;
+		}
+		scheduleFlush(0);
+	}
+
+	/**
+	 * Applies the collected changes of jobs to the shared graph without waiting for the quiet period
+	 */
+	public void flush() {
+		try {
+			builder.submit(this::applyPendingChanges).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while updating the trigger graph", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("updating the trigger graph failed", e.getCause());
+		}
+	}
+
+	/**
+	 * Publishes a new snapshot of a changed graph
+	 * @param changed the shared graph
+	 */
+	private void graphChanged(JobGraph changed) {
+		publish(changed.snapshot());
+		if (reachabilityRequested) {
+			reachabilityUpdater.submit();
+		}
+	}
+
+	/**
+	 * Collects a change of an item. Several changes of the same item are applied as one.
+	 * Changes which arrive before the graph is requested are ignored, since the graph will be built from the current items.
+	 * @param item the changed item
+	 * @param oldFullName the full name of the item before it was moved or null if it was not moved
+	 * @param deleted true if the item was deleted
+	 */
+	private void itemChanged(Item item, String oldFullName, boolean deleted) {
+		synchronized (this) {
+			if (graph == null) {
+				return;
+			}
+			PendingChange change = pendingChanges.remove(item);
+			if (change == null) {
+				change = new PendingChange(item);
+			}
+			if (change.previousFullName == null) {
+				change.previousFullName = oldFullName;
+			}
+			change.deleted |= deleted;
+			// the items are updated in the order of their last change, so a deleted folder follows the jobs moved out of it
+			pendingChanges.put(item, change);
+		}
+		scheduleFlush(QUIET_PERIOD);
+	}
+
+	private synchronized void scheduleFlush(long delay) {
+		if (!flushScheduled) {
+			flushScheduled = true;
+			Timer.get().schedule(() -> builder.submit(this::applyPendingChanges), delay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Applies all collected changes on the builder thread, either job by job or by building the graph again
+	 */
+	private void applyPendingChanges() {
+		List<PendingChange> changes;
+		boolean rebuildGraph;
+		Future<JobGraph> future;
+		synchronized (this) {
+			changes = new ArrayList<>(pendingChanges.values());
+			pendingChanges.clear();
+			rebuildGraph = rebuildRequested || changes.size() > REBUILD_THRESHOLD;
+			rebuildRequested = false;
+			flushScheduled = false;
+			future = graph;
+		}
+		// a graph which is built after this task already contains the changes
+		if (future == null || !future.isDone() || (changes.isEmpty() && !rebuildGraph)) {
+			return;
+		}
+		try {
+			if (rebuildGraph) {
+				JobGraph rebuilt = buildGraph(Collections.emptyMap());
+				synchronized (this) {
+					if (graph == future) {
+						graph = CompletableFuture.completedFuture(rebuilt);
+					}
+				}
+				graphChanged(rebuilt);
+			} else {
+				JobGraph current = waitFor(future);
+				try (ACLContext ctx = ACL.as(ACL.SYSTEM)) {
+					for (PendingChange change : changes) {
+						change.apply(current);
+					}
+				}
+				graphChanged(current);
+			}
+		} catch (RuntimeException e) {
+			logger.log(Level.WARNING, "failed to update the trigger graph", e);
+		}
+	}
+
+	/**
+	 * The collected changes of a single item
+	 */
+	private static final class PendingChange {
+
+		private final Item item;
+		private String previousFullName;
+		private boolean deleted;
+
+		PendingChange(Item item) {
+			this.item = item;
+		}
+
+		void apply(JobGraph graph) {
+			JobWrapper job = JobWrapper.wrap(item);
+			if (job != null) {
+				if (previousFullName != null) {
+					graph.renameJob(job, previousFullName);
+				}
+				if (deleted) {
+					graph.removeJob(job);
+				}
+				else if (previousFullName == null) {
+					graph.updateJob(job);
+				}
+			}
+			else if (deleted && item instanceof ItemGroup) {
+				// the jobs of a deleted folder are not necessarily reported one by one
+				graph.removeJobsInFolder(item.getFullName());
+			}
+		}
+	}
+
+	/**
+	 * Updates the shared graph when jobs are created, moved or deleted
+	 */
+	@Extension
+	public static class ItemListenerImpl extends ItemListener {
+
+		@Override
+		public void onCreated(Item item) {
+			get().resolver.itemCreated(item);
+			get().itemChanged(item, null, false);
+		}
+
+		@Override
+		public void onDeleted(Item item) {
+			get().resolver.itemDeleted(item);
+			get().itemChanged(item, null, true);
+		}
+
+		/**
+		 * Also called for renamed items and for every item of a moved folder
+		 */
+		@Override
+		public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+			get().resolver.itemMoved(item, oldFullName);
+			get().itemChanged(item, oldFullName, false);
+		}
+	}
+
+	/**
+	 * Updates the shared graph when the configuration of a job is saved
+	 */
+	@Extension
+	public static class SaveableListenerImpl extends SaveableListener {
+
+		@Override
+		public void onChange(Saveable o, XmlFile file) {
+			if (o instanceof Job) {
+				get().itemChanged((Job<?, ?>)o, null, false);
+			}
+		}
+	}
+}
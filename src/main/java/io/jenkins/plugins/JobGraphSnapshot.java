@@ -0,0 +1,334 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, Bachmann electronics GmbH, Ole Siemers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import hudson.model.BallColor;
+import hudson.model.Job;
+import io.jenkins.plugins.DependenciesProperty.DescriptorImpl;
+import io.jenkins.plugins.model.graph.CompactGraph;
+import io.jenkins.plugins.model.graph.Graph;
+import io.jenkins.plugins.model.graph.SubgraphView;
+import io.jenkins.plugins.model.graph.WeaklyConnectedComponents;
+import io.jenkins.plugins.model.node.JobNode;
+
+/**
+ * An immutable copy of a {@link JobGraph} which can be read by any number of threads without locking.
+ * Every snapshot has a version which is greater than the versions of all snapshots created before,
+ * so results which are derived from a snapshot can be cached by its version.
+ * @author OLSI
+ */
+public final class JobGraphSnapshot {
+
+	private static final AtomicLong versions = new AtomicLong();
+
+	private final long version;
+	private final CompactGraph<JobNode> graph;
+	private final Map<String, JobNode> nodes;
+	private final DescriptorImpl settings;
+	private final Map<JobNode, Long> totalTriggerCount;
+	private final Set<JobNode> cappedTriggerCounts;
+	private final Set<JobNode> jobsInTriggerCycles;
+	private final boolean triggersCounted;
+	private volatile List<JobNode> downstreamRoots;
+	private volatile List<JobNode> upstreamRoots;
+	private volatile List<SubgraphView<JobNode>> components;
+
+	/**
+	 * @param graph the frozen graph of all jobs
+	 * @param settings the settings of the graph
+	 * @param totalTriggerCount a copy of the trigger counts of all jobs or null if they are not counted
+	 * @param cappedTriggerCounts a copy of the jobs whose trigger count is capped
+	 * @param jobsInTriggerCycles a copy of the jobs which are part of a trigger cycle
+	 */
+	JobGraphSnapshot(CompactGraph<JobNode> graph, DescriptorImpl settings, Map<JobNode, Long> totalTriggerCount, Set<JobNode> cappedTriggerCounts, Set<JobNode> jobsInTriggerCycles) {
+		this.version = versions.incrementAndGet();
+		this.graph = graph;
+		this.settings = settings;
+		this.triggersCounted = totalTriggerCount != null;
+		this.totalTriggerCount = triggersCounted ? Collections.unmodifiableMap(totalTriggerCount) : Collections.emptyMap();
+		this.cappedTriggerCounts = Collections.unmodifiableSet(cappedTriggerCounts);
+		this.jobsInTriggerCycles = Collections.unmodifiableSet(jobsInTriggerCycles);
+		Map<String, JobNode> nodesByName = new HashMap<>();
+		for (JobNode node : graph.getVertices()) {
+			nodesByName.put(node.getFullName(), node);
+		}
+		this.nodes = Collections.unmodifiableMap(nodesByName);
+	}
+
+	/**
+	 * @return the version of this snapshot, which increases with every snapshot
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return the frozen graph of all jobs
+	 */
+	public CompactGraph<JobNode> getGraph() {
+		return graph;
+	}
+
+	public Set<JobNode> getJobs() {
+		return graph.getVertices();
+	}
+
+	/**
+	 * @return the jobs which are not triggered by other jobs
+	 */
+	public Set<JobNode> getEntries() {
+		return graph.getEntries();
+	}
+
+	/**
+	 * @return the jobs which do not trigger other jobs
+	 */
+	public Set<JobNode> getExits() {
+		return graph.getExits();
+	}
+
+	/**
+	 * @param fullName the full name of a job
+	 * @return the node of the job or null if the job is not part of this snapshot
+	 */
+	public JobNode getNode(String fullName) {
+		return nodes.get(fullName);
+	}
+
+	/**
+	 * @param job a job
+	 * @return the node of the job or null if the job is not part of this snapshot
+	 */
+	public JobNode getNode(Job<?, ?> job) {
+		return getNode(job.getFullName());
+	}
+
+	/**
+	 * @param job which gets triggered by other jobs
+	 * @return the jobs which trigger the given job
+	 */
+	public Set<JobNode> getUpstreamOfJob(JobNode job) {
+		return graph.containsVertex(job) ? graph.getPredecessors(job) : Collections.<JobNode>emptySet();
+	}
+
+	/**
+	 * @param job which triggers other jobs
+	 * @return the jobs which are triggered by the given job
+	 */
+	public Set<JobNode> getDownstreamOfJob(JobNode job) {
+		return graph.containsVertex(job) ? graph.getSuccessors(job) : Collections.<JobNode>emptySet();
+	}
+
+	/**
+	 * Get the part of this snapshot which is shown on the triggers page of a job
+	 * @param job the selected job
+	 * @return a view of the connected jobs of the given job
+	 */
+	public SubgraphView<JobNode> getConnectedSubgraph(JobNode job) {
+		return graph.getConnectedSubgraph(job, !settings.isLinearUpstreamOfProject());
+	}
+
+	/**
+	 * Generates a representations of this snapshot as GraphViz dot
+	 * @param current a selected note which should be highlighted
+	 * @return the dot-string representation
+	 */
+	public String getDotString(JobNode current) {
+		return getDotString(graph, current);
+	}
+
+	/**
+	 * Generates a representations of a part of this snapshot as GraphViz dot
+	 * @param part the graph of this snapshot or a view of it
+	 * @param current a selected note which should be highlighted
+	 * @return the dot-string representation
+	 */
+	public String getDotString(Graph<JobNode> part, JobNode current) {
+		return getDotString(part, current, RenderSettings.of(settings));
+	}
+
+	/**
+	 * Generates a representations of a part of this snapshot as GraphViz dot with given settings
+	 * @param part the graph of this snapshot or a view of it
+	 * @param current a selected note which should be highlighted
+	 * @param renderSettings the settings of the output
+	 * @return the dot-string representation
+	 */
+	String getDotString(Graph<JobNode> part, JobNode current, RenderSettings renderSettings) {
+		return new JobGraphDotWriter(renderSettings, totalTriggerCount, cappedTriggerCounts, jobsInTriggerCycles).write(part, current);
+	}
+
+	/**
+	 * Writes a part of this snapshot as GraphViz dot with given settings and a given build status of the jobs
+	 * @param out the writer of the dot language
+	 * @param part the graph of this snapshot or a view of it
+	 * @param current a selected note which should be highlighted
+	 * @param renderSettings the settings of the output
+	 * @param iconColors the build status of the jobs, only used if the build status is shown
+	 * @throws IOException if the writer failed
+	 */
+	void writeDot(Writer out, Graph<JobNode> part, JobNode current, RenderSettings renderSettings, Function<JobNode, BallColor> iconColors) throws IOException {
+		new JobGraphDotWriter(renderSettings, totalTriggerCount, cappedTriggerCounts, jobsInTriggerCycles, iconColors).write(out, part, current);
+	}
+
+	/**
+	 * Lays out a part of this snapshot in process and draws it with given settings
+	 * @param part the graph of this snapshot or a view of it
+	 * @param current a selected note which should be highlighted
+	 * @param renderSettings the settings of the output
+	 * @param iconColors the build status of the jobs, only used if the build status is shown
+	 * @param types the requested types of {@link JobGraphSvgWriter#TYPES}
+	 * @return the output by type
+	 */
+	Map<String, byte[]> layout(Graph<JobNode> part, JobNode current, RenderSettings renderSettings, Function<JobNode, BallColor> iconColors, List<String> types) {
+		return new JobGraphSvgWriter(renderSettings, totalTriggerCount, cappedTriggerCounts, jobsInTriggerCycles, iconColors).write(part, current, types);
+	}
+
+	/**
+	 * Writes the part of this snapshot which is selected by a query as JSON with given settings
+	 * @param json the writer of the JSON object
+	 * @param current the selected job or null to select from the jobs which are not triggered by other jobs
+	 * @param query the requested part of the graph
+	 * @param renderSettings the settings of the output
+	 * @throws IOException if the writer failed
+	 */
+	void writeJson(JsonWriter json, JobNode current, GraphQuery query, RenderSettings renderSettings) throws IOException {
+		writeJson(json, current == null ? Collections.<JobNode>emptySet() : Collections.singleton(current), query, renderSettings);
+	}
+
+	/**
+	 * Writes the neighbourhood of some jobs in this snapshot as JSON with given settings.
+	 * Only the selected part of the graph is visited, so the cost depends on the size of the neighbourhood.
+	 * @param json the writer of the JSON object
+	 * @param selected the selected jobs or an empty collection to select from the jobs which are not triggered by other jobs
+	 * @param query the requested part of the graph
+	 * @param renderSettings the settings of the output
+	 * @throws IOException if the writer failed
+	 */
+	void writeJson(JsonWriter json, Collection<JobNode> selected, GraphQuery query, RenderSettings renderSettings) throws IOException {
+		json.beginObject();
+		json.name("version").value(version);
+		json.name("hideDisabled").value(renderSettings.isHideDisabled());
+		json.name("leftToRight").value(renderSettings.isLeftToRightLayout());
+		JobGraphService service = renderSettings.isDrawBalls() ? JobGraphService.get() : null;
+		new GraphJsonWriter<>(graph, false, JobNode::getFullName, (out, node) -> {
+			out.name("name").value(node.getFullDisplayName());
+			out.name("url").value(node.getAbsoluteUrl(renderSettings.getRootUrl()) + "triggers/");
+			// the build status is looked up job by job, so it is only written if it is shown
+			if (service != null) {
+				out.name("color").value(service.getIconColor(node).getHtmlBaseColor());
+			}
+			out.name("disabled").value(node.isDisabled());
+			if (renderSettings.isCountTriggersTransitively() && triggersCounted) {
+				out.name("triggers").value(totalTriggerCount.get(node));
+				out.name("triggersCapped").value(cappedTriggerCounts.contains(node));
+				out.name("cycle").value(jobsInTriggerCycles.contains(node));
+			}
+		}, this::getRoots).write(json, selected, query);
+		json.endObject();
+	}
+
+	/**
+	 * The overview is laid out component by component, so a change of a job only invalidates the layout of its own component
+	 * @return views of the parts of the graph which are not connected to each other, ordered by their lowest job id
+	 */
+	public List<SubgraphView<JobNode>> getComponents() {
+		List<SubgraphView<JobNode>> result = components;
+		if (result == null) {
+			WeaklyConnectedComponents weak = graph.getWeaklyConnectedComponents();
+			List<SubgraphView<JobNode>> views = new ArrayList<>(weak.getComponentCount());
+			for (int c = 0; c < weak.getComponentCount(); c++) {
+				Set<JobNode> members = new HashSet<>();
+				for (int i = 0; i < weak.getSize(c); i++) {
+					members.add(graph.getVertex(weak.getMember(c, i)));
+				}
+				views.add(new SubgraphView<>(graph, members));
+			}
+			result = Collections.unmodifiableList(views);
+			components = result;
+		}
+		return result;
+	}
+
+	/**
+	 * The roots are searched once per snapshot because every overview which is loaded as JSON starts from them
+	 * @param downstream true for the roots of a search along the triggers
+	 * @return the jobs from which the whole graph can be reached in the given direction
+	 */
+	List<JobNode> getRoots(boolean downstream) {
+		List<JobNode> roots = downstream ? downstreamRoots : upstreamRoots;
+		if (roots == null) {
+			roots = Collections.unmodifiableList(GraphQuery.getRoots(graph, downstream));
+			if (downstream) {
+				downstreamRoots = roots;
+			} else {
+				upstreamRoots = roots;
+			}
+		}
+		return roots;
+	}
+
+	/**
+	 * The trigger counts are left out of snapshots while they are not shown, so changes of jobs do not count the whole graph again
+	 * @return true if the trigger counts are shown but this snapshot was taken without them
+	 */
+	boolean isMissingTriggerCounts() {
+		return !triggersCounted && settings.isCountTriggersTransitively();
+	}
+
+	/**
+	 * @return the number of triggers of all jobs, which is empty if they were not counted
+	 */
+	public Map<JobNode, Long> getTotalTriggerCount() {
+		return totalTriggerCount;
+	}
+
+	/**
+	 * @param job the job whose trigger count is checked
+	 * @return true if the trigger count of the job exceeds the range of long
+	 */
+	public boolean isTriggerCountCapped(JobNode job) {
+		return cappedTriggerCounts.contains(job);
+	}
+
+	/**
+	 * @return the jobs which are part of a trigger cycle and therefore share one trigger count
+	 */
+	public Set<JobNode> getJobsInTriggerCycles() {
+		return jobsInTriggerCycles;
+	}
+}
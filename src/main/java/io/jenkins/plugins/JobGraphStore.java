@@ -0,0 +1,215 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, Bachmann electronics GmbH, Ole Siemers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import hudson.model.Items;
+import io.jenkins.plugins.model.wrapper.JobWrapper;
+
+/**
+ * Stores the trigger names of all jobs in a binary file, so the graph can be built after a restart 
+ * without loading the triggers of jobs whose configuration has not changed since the file was written.
+ * The file consists of a table of all names followed by the jobs, which refer to the names by their index in the table:
+ * <pre>
+ * int magic, int version, int nameCount, nameCount * (int length, UTF-8 bytes), 
+ * int jobCount, jobCount * (int fullName, long configModified, long configLength, int upstreamCount, upstreamCount * int upstreamName)
+ * </pre>
+ * @author OLSI
+ */
+class JobGraphStore {
+
+	private static final Logger logger = Logger.getLogger(JobGraphStore.class.getName());
+
+	private static final int MAGIC = 0x4A475354;
+	private static final int VERSION = 1;
+
+	private final File file;
+
+	JobGraphStore(File file) {
+		this.file = file;
+	}
+
+	File getFile() {
+		return file;
+	}
+
+	/**
+	 * Reads the jobs of the file. A missing or unreadable file results in an empty snapshot, so all jobs are loaded.
+	 * @return the stored jobs by their full name
+	 */
+	Map<String, StoredJob> read() {
+		if (!file.isFile()) {
+			return Collections.emptyMap();
+		}
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+				logger.log(Level.INFO, "ignoring trigger graph snapshot "+file+" of another format");
+				return Collections.emptyMap();
+			}
+			String[] names = new String[buffer.getInt()];
+			for (int i = 0; i < names.length; i++) {
+				byte[] bytes = new byte[buffer.getInt()];
+				buffer.get(bytes);
+				names[i] = new String(bytes, StandardCharsets.UTF_8);
+			}
+			int jobCount = buffer.getInt();
+			Map<String, StoredJob> jobs = new HashMap<>();
+			for (int j = 0; j < jobCount; j++) {
+				String fullName = names[buffer.getInt()];
+				long configModified = buffer.getLong();
+				long configLength = buffer.getLong();
+				String[] upstreamNames = new String[buffer.getInt()];
+				for (int u = 0; u < upstreamNames.length; u++) {
+					upstreamNames[u] = names[buffer.getInt()];
+				}
+				jobs.put(fullName, new StoredJob(fullName, configModified, configLength, Arrays.asList(upstreamNames)));
+			}
+			return jobs;
+		} catch (IOException | BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+			logger.log(Level.WARNING, "failed to read trigger graph snapshot "+file, e);
+			return Collections.emptyMap();
+		}
+	}
+
+	/**
+	 * Replaces the file by the given jobs. The file is written to a temporary file first, 
+	 * so a crash while writing leaves the previous file intact.
+	 * @param jobs the jobs to store
+	 * @throws IOException if the file could not be written
+	 */
+	void write(Collection<StoredJob> jobs) throws IOException {
+		Map<String, Integer> names = new LinkedHashMap<>();
+		for (StoredJob job : jobs) {
+			names.putIfAbsent(job.getFullName(), names.size());
+			for (String name : job.getUpstreamNames()) {
+				names.putIfAbsent(name, names.size());
+			}
+		}
+		File parent = file.getAbsoluteFile().getParentFile();
+		Files.createDirectories(parent.toPath());
+		File tmp = File.createTempFile(file.getName(), ".tmp", parent);
+		try {
+			try (OutputStream os = Files.newOutputStream(tmp.toPath());
+					DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(names.size());
+				for (String name : names.keySet()) {
+					byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+					out.writeInt(bytes.length);
+					out.write(bytes);
+				}
+				out.writeInt(jobs.size());
+				for (StoredJob job : jobs) {
+					out.writeInt(names.get(job.getFullName()));
+					out.writeLong(job.getConfigModified());
+					out.writeLong(job.getConfigLength());
+					out.writeInt(job.getUpstreamNames().size());
+					for (String name : job.getUpstreamNames()) {
+						out.writeInt(names.get(name));
+					}
+				}
+			}
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp.toPath());
+		}
+	}
+
+	/**
+	 * The trigger names of a job and the state of its configuration file when they were loaded
+	 */
+	static final class StoredJob {
+
+		private final String fullName;
+		private final long configModified;
+		private final long configLength;
+		private final List<String> upstreamNames;
+
+		StoredJob(String fullName, long configModified, long configLength, List<String> upstreamNames) {
+			this.fullName = fullName;
+			this.configModified = configModified;
+			this.configLength = configLength;
+			this.upstreamNames = upstreamNames;
+		}
+
+		/**
+		 * Records the current state of the configuration file of a job
+		 * @param job the job whose triggers are loaded
+		 * @param upstreamNames the names in the reverse build triggers of the job
+		 * @return the record of the job
+		 */
+		static StoredJob of(JobWrapper job, List<String> upstreamNames) {
+			File config = Items.getConfigFile(job.getJob()).getFile();
+			return new StoredJob(job.getFullName(), config.lastModified(), config.length(), upstreamNames);
+		}
+
+		String getFullName() {
+			return fullName;
+		}
+
+		long getConfigModified() {
+			return configModified;
+		}
+
+		long getConfigLength() {
+			return configLength;
+		}
+
+		List<String> getUpstreamNames() {
+			return Collections.unmodifiableList(upstreamNames);
+		}
+
+		/**
+		 * @param job the job of this record
+		 * @return true if the configuration file of the job has not changed since this record was created
+		 */
+		boolean isUpToDate(JobWrapper job) {
+			File config = Items.getConfigFile(job.getJob()).getFile();
+			return configModified == config.lastModified() && configLength == config.length();
+		}
+	}
+}
@@ -0,0 +1,250 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, Bachmann electronics GmbH, Ole Siemers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import hudson.model.BallColor;
+import io.jenkins.plugins.model.graph.CompactGraph;
+import io.jenkins.plugins.model.graph.Graph;
+import io.jenkins.plugins.model.graph.LayeredLayout;
+import io.jenkins.plugins.model.graph.SubgraphView;
+import io.jenkins.plugins.model.node.JobNode;
+
+/**
+ * Draws a graph of jobs with a {@link LayeredLayout} as SVG and as an image map, without running GraphViz.
+ * The drawing follows the style of {@link JobGraphDotWriter}. The size of a label is estimated from its number of characters.
+ * @author OLSI
+ */
+class JobGraphSvgWriter {
+
+	/**
+	 * The output types of this writer, which are always laid out together
+	 */
+	static final List<String> TYPES = Collections.unmodifiableList(Arrays.asList("svg", "cmapx"));
+
+	private static final String DISABLED_NODE_COLOR = "gray";
+	private static final String NODE_COLOR = "black";
+	private static final String SELECTED_FILL_COLOR = "lightgrey";
+	private static final int FONT_SIZE = 14;
+	private static final int CHARACTER_WIDTH = 8;
+	private static final int PADDING = 10;
+	private static final int NODE_HEIGHT = 36;
+	private static final int BALL_RADIUS = 6;
+
+	private final RenderSettings settings;
+	private final Map<JobNode, Long> totalTriggerCount;
+	private final Set<JobNode> cappedTriggerCounts;
+	private final Set<JobNode> jobsInTriggerCycles;
+	private final Function<JobNode, BallColor> iconColors;
+
+	/**
+	 * @param settings the settings of the graph
+	 * @param totalTriggerCount the trigger counts of all jobs, only used if trigger counts are shown
+	 * @param cappedTriggerCounts the jobs whose trigger count exceeds the range of long
+	 * @param jobsInTriggerCycles the jobs which are part of a trigger cycle
+	 */
+	JobGraphSvgWriter(RenderSettings settings, Map<JobNode, Long> totalTriggerCount, Set<JobNode> cappedTriggerCounts, Set<JobNode> jobsInTriggerCycles) {
+		this(settings, totalTriggerCount, cappedTriggerCounts, jobsInTriggerCycles, job -> JobGraphService.get().getIconColor(job));
+	}
+
+	/**
+	 * @param settings the settings of the graph
+	 * @param totalTriggerCount the trigger counts of all jobs, only used if trigger counts are shown
+	 * @param cappedTriggerCounts the jobs whose trigger count exceeds the range of long
+	 * @param jobsInTriggerCycles the jobs which are part of a trigger cycle
+	 * @param iconColors the build status of the jobs, only used if the build status is shown
+	 */
+	JobGraphSvgWriter(RenderSettings settings, Map<JobNode, Long> totalTriggerCount, Set<JobNode> cappedTriggerCounts, Set<JobNode> jobsInTriggerCycles, Function<JobNode, BallColor> iconColors) {
+		this.settings = settings;
+		this.totalTriggerCount = totalTriggerCount;
+		this.cappedTriggerCounts = cappedTriggerCounts;
+		this.jobsInTriggerCycles = jobsInTriggerCycles;
+		this.iconColors = iconColors;
+	}
+
+	/**
+	 * Lays out a graph once and draws it in the requested types
+	 * @param graph the graph or a view of it
+	 * @param current a selected note which should be highlighted
+	 * @param types the requested types of {@link #TYPES}
+	 * @return the output by type
+	 * @throws IllegalArgumentException if the graph is too deep and wide to be laid out
+	 */
+	Map<String, byte[]> write(Graph<JobNode> graph, JobNode current, List<String> types) {
+		CompactGraph<JobNode> visible = getVisibleGraph(graph);
+		int n = visible.getVertexCount();
+		String[] labels = new String[n];
+		int[] widths = new int[n];
+		int[] heights = new int[n];
+		for (int v = 0; v < n; v++) {
+			labels[v] = getLabel(visible.getVertex(v));
+			widths[v] = labels[v].length() * CHARACTER_WIDTH + 2 * PADDING + (settings.isDrawBalls() ? 2 * BALL_RADIUS + PADDING : 0);
+			heights[v] = NODE_HEIGHT;
+		}
+		LayeredLayout layout = new LayeredLayout(visible, widths, heights, settings.isLeftToRightLayout());
+		Map<String, byte[]> outputs = new LinkedHashMap<>();
+		for (String type : types) {
+			String output = type.equals("svg") ? getSvg(visible, layout, labels, widths, current) : getImageMap(visible, layout, widths);
+			outputs.put(type, output.getBytes(StandardCharsets.UTF_8));
+		}
+		return outputs;
+	}
+
+	/**
+	 * The compact graph of a snapshot is drawn as it is, so its strongly connected components are not computed again
+	 */
+	private CompactGraph<JobNode> getVisibleGraph(Graph<JobNode> graph) {
+		if (!settings.isHideDisabled()) {
+			return graph instanceof CompactGraph ? (CompactGraph<JobNode>) graph : CompactGraph.of(graph);
+		}
+		Set<JobNode> visible = new HashSet<>();
+		for (JobNode job : graph.getVertices()) {
+			if (!job.isDisabled()) {
+				visible.add(job);
+			}
+		}
+		return CompactGraph.of(new SubgraphView<>(graph, visible));
+	}
+
+	private String getLabel(JobNode node) {
+		if (!settings.isCountTriggersTransitively()) {
+			return node.getFullName();
+		}
+		String cappedMarker = cappedTriggerCounts.contains(node) ? "+" : "";
+		String cycleMarker = jobsInTriggerCycles.contains(node) ? ", cycle" : "";
+		return node.getFullName() + " (" + totalTriggerCount.get(node) + cappedMarker + cycleMarker + ")";
+	}
+
+	private String getSvg(CompactGraph<JobNode> graph, LayeredLayout layout, String[] labels, int[] widths, JobNode current) {
+		StringBuilder svg = new StringBuilder();
+		svg.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		svg.append("<svg xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\"")
+				.append(" width=\"").append(layout.getWidth()).append("\" height=\"").append(layout.getHeight())
+				.append("\" viewBox=\"0 0 ").append(layout.getWidth()).append(' ').append(layout.getHeight())
+				.append("\" font-family=\"sans-serif\" font-size=\"").append(FONT_SIZE).append("\">\n");
+		svg.append("<defs>\n");
+		appendArrowHead(svg, NODE_COLOR);
+		appendArrowHead(svg, DISABLED_NODE_COLOR);
+		svg.append("</defs>\n");
+		for (int e = 0; e < layout.getEdgeCount(); e++) {
+			JobNode source = graph.getVertex(layout.getEdgeSource(e));
+			JobNode target = graph.getVertex(layout.getEdgeTarget(e));
+			String edgeColor = source.isDisabled() || target.isDisabled() ? DISABLED_NODE_COLOR : NODE_COLOR;
+			int edgeWidth = source.equals(current) || target.equals(current) ? settings.getSelectedEdgeWidth() : 1;
+			svg.append("<polyline points=\"");
+			int[] points = layout.getEdgePoints(e);
+			for (int k = 0; k < points.length; k += 2) {
+				svg.append(k == 0 ? "" : " ").append(points[k]).append(',').append(points[k + 1]);
+			}
+			svg.append("\" fill=\"none\" stroke=\"").append(edgeColor).append("\" stroke-width=\"").append(edgeWidth)
+					.append("\" marker-end=\"url(#arrow-").append(edgeColor).append(")\"/>\n");
+		}
+		for (int v = 0; v < graph.getVertexCount(); v++) {
+			JobNode node = graph.getVertex(v);
+			boolean selected = node.equals(current);
+			String nodeColor = node.isDisabled() || selected ? DISABLED_NODE_COLOR : NODE_COLOR;
+			String nodeFontcolor = node.isDisabled() && !selected ? DISABLED_NODE_COLOR : NODE_COLOR;
+			int left = layout.getX(v) - widths[v] / 2;
+			int top = layout.getY(v) - NODE_HEIGHT / 2;
+			svg.append("<a xlink:href=\"").append(escape(getHref(node))).append("\" target=\"_top\">");
+			svg.append("<title>").append(escape(node.getFullName())).append("</title>");
+			svg.append("<rect x=\"").append(left).append("\" y=\"").append(top).append("\" width=\"").append(widths[v])
+					.append("\" height=\"").append(NODE_HEIGHT).append("\" rx=\"6\" ry=\"6\" fill=\"").append(selected ? SELECTED_FILL_COLOR : "white")
+					.append("\" stroke=\"").append(nodeColor).append("\"/>");
+			int textLeft = left + PADDING;
+			if (settings.isDrawBalls()) {
+				svg.append("<circle cx=\"").append(textLeft + BALL_RADIUS).append("\" cy=\"").append(layout.getY(v))
+						.append("\" r=\"").append(BALL_RADIUS).append("\" fill=\"").append(escape(iconColors.apply(node).getHtmlBaseColor())).append("\"/>");
+				textLeft += 2 * BALL_RADIUS + PADDING;
+			}
+			svg.append("<text x=\"").append(textLeft).append("\" y=\"").append(layout.getY(v) + FONT_SIZE / 3)
+					.append("\" fill=\"").append(nodeFontcolor).append("\">").append(escape(labels[v])).append("</text></a>\n");
+		}
+		svg.append("</svg>\n");
+		return svg.toString();
+	}
+
+	private static void appendArrowHead(StringBuilder svg, String color) {
+		svg.append("<marker id=\"arrow-").append(color).append("\" markerWidth=\"10\" markerHeight=\"8\" refX=\"10\" refY=\"4\"")
+				.append(" orient=\"auto\" markerUnits=\"userSpaceOnUse\"><path d=\"M0,0 L10,4 L0,8 z\" fill=\"").append(color).append("\"/></marker>\n");
+	}
+
+	/**
+	 * The image map has the format of the cmapx output of GraphViz, so the pages can use either
+	 */
+	private String getImageMap(CompactGraph<JobNode> graph, LayeredLayout layout, int[] widths) {
+		StringBuilder map = new StringBuilder();
+		map.append("<map id=\"G\" name=\"G\">\n");
+		for (int v = 0; v < graph.getVertexCount(); v++) {
+			JobNode node = graph.getVertex(v);
+			int left = layout.getX(v) - widths[v] / 2;
+			int top = layout.getY(v) - NODE_HEIGHT / 2;
+			map.append("<area shape=\"rect\" id=\"node").append(v + 1).append("\" href=\"").append(escape(getHref(node)))
+					.append("\" title=\"").append(escape(node.getFullName())).append("\" alt=\"\" coords=\"")
+					.append(left).append(',').append(top).append(',').append(left + widths[v]).append(',').append(top + NODE_HEIGHT).append("\"/>\n");
+		}
+		map.append("</map>\n");
+		return map.toString();
+	}
+
+	private String getHref(JobNode node) {
+		return node.getAbsoluteUrl(settings.getRootUrl()) + "triggers/";
+	}
+
+	private static String escape(String text) {
+		StringBuilder escaped = new StringBuilder(text.length());
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+			case '&':
+				escaped.append("&amp;");
+				break;
+			case '<':
+				escaped.append("&lt;");
+				break;
+			case '>':
+				escaped.append("&gt;");
+				break;
+			case '"':
+				escaped.append("&quot;");
+				break;
+			case '\'':
+				escaped.append("&#39;");
+				break;
+			default:
+				escaped.append(c);
+			}
+		}
+		return escaped.toString();
+	}
+}
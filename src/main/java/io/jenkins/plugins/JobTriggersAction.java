@@ -23,57 +23,154 @@
  */
 package io.jenkins.plugins;
 
-import hudson.model.AbstractProject;
 import hudson.model.Action;
 import hudson.model.Job;
-import io.jenkins.plugins.model.wrapper.ProjectWrapper;
+import io.jenkins.plugins.model.graph.ReachabilityIndex;
+import io.jenkins.plugins.model.node.JobNode;
 import io.jenkins.plugins.model.wrapper.JobWrapper;
-import io.jenkins.plugins.model.wrapper.WorkflowJobWrapper;
+import jenkins.model.Jenkins;
 
-import java.io.ByteArrayInputStream;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.util.Set;
 import javax.servlet.http.HttpServletResponse;
 
-import org.jenkinsci.plugins.workflow.job.WorkflowJob;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
 
 public class JobTriggersAction implements Action {
 
 	private JobWrapper jobWrapper;
-	private JobGraph jobGraph;
+	private JobGraphSnapshot jobGraph;
 	
 	public JobTriggersAction(Job target) {
-		this.jobWrapper = target instanceof WorkflowJob ? 
-				new WorkflowJobWrapper((WorkflowJob)target) : 
-				new ProjectWrapper((AbstractProject)target);
-		this.jobGraph = new JobGraph();
-		this.jobGraph.removeUnconnectedNodes(jobWrapper);
+		this.jobWrapper = JobWrapper.wrap(target);
 	}
 	
+	/**
+	 * The graph is loaded on first use because this action is created whenever the actions of a job are listed.
+	 * A new action is created for every request, so the image and its map are requested with the {@link #getVersion() version} of the page.
+	 * @return the snapshot of the shared job graph
+	 */
+	private synchronized JobGraphSnapshot getJobGraph() {
+		if (jobGraph == null) {
+			jobGraph = JobGraphService.get().getSnapshot();
+		}
+		return jobGraph;
+	}
+	
+	/**
+	 * @return the node of this job in the snapshot
+	 */
+	private JobNode getNode() {
+		return getJobGraph().getNode(jobWrapper.getFullName());
+	}
+	
+	/**
+	 * @return the version of the snapshot which the page shows
+	 */
+	public long getVersion() {
+		return getJobGraph().getVersion();
+	}
+
 	public String getDot() {
-		return jobGraph.getDotString(jobWrapper);
+		return JobGraphService.get().getDotCache().getDot(getJobGraph(), getNode());
+	}
+	
+	/**
+	 * @return true if the graph is drawn by the browser from graph.json
+	 */
+	public boolean isDrawnInBrowser() {
+		return Jenkins.get().getDescriptorByType(DependenciesProperty.DescriptorImpl.class).isDrawnInBrowser();
+	}
+
+	/**
+	 * @return the type of the image which is shown on the page
+	 */
+	public String getImageType() {
+		return Jenkins.get().getDescriptorByType(DependenciesProperty.DescriptorImpl.class).getImageType();
 	}
 	
 	public void doDynamic(StaplerRequest req, StaplerResponse res) throws IOException, InterruptedException {
 		String path = req.getRestOfPath();
-		if (path.startsWith("/graph.")) {
+		if (path.equals("/graph.json")) {
+			JobNode node = getNode();
+			// without a job the query would select the whole overview
+			if (node == null) {
+				res.sendError(HttpServletResponse.SC_NOT_FOUND, "unknown job");
+				return;
+			}
+			GraphJsonWriter.serve(req, res, (json, query) -> getJobGraph().writeJson(json, node, query, RenderSettings.current()));
+		} else if (path.startsWith("/graph.")) {
 			String extension = path.substring(path.lastIndexOf('.')+1);
-			String dot = jobGraph.getDotString(jobWrapper);
-			GraphViz.runDot(res.getCompressedOutputStream(req), new ByteArrayInputStream(dot.getBytes(StandardCharsets.UTF_8)), extension);	
+			JobGraphSnapshot snapshot;
+			try {
+				snapshot = JobGraphService.get().getSnapshot(req, this::getJobGraph);
+			} catch (IllegalArgumentException e) {
+				res.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+				return;
+			}
+			GraphViz.serve(req, res, JobGraphService.get().getDotCache().getSource(snapshot, snapshot.getNode(jobWrapper.getFullName())), extension);
+		} else if (path.equals("/impact.json")) {
+			serveImpact(req, res);
 		} else {
 			res.sendError(HttpServletResponse.SC_NOT_FOUND);
 		}
 	}
 
-	public Set<JobWrapper> getUpstreamJobs() {
-		return jobGraph.getUpstreamOfJob(jobWrapper);
+	public Set<JobNode> getUpstreamJobs() {
+		return getJobGraph().getUpstreamOfJob(getNode());
 	}
 
-	public Set<JobWrapper> getDownstreamJobs() {
-		return jobGraph.getDownstreamOfJob(jobWrapper);
+	public Set<JobNode> getDownstreamJobs() {
+		return getJobGraph().getDownstreamOfJob(getNode());
+	}
+
+	/**
+	 * @return the jobs which eventually trigger this job, looked up in the reachability index
+	 */
+	public Set<JobNode> getAllUpstreamJobs() {
+		return JobGraphService.get().getReachabilityIndex().getAncestors(getNode());
+	}
+
+	/**
+	 * @return the jobs which are eventually triggered by this job, looked up in the reachability index
+	 */
+	public Set<JobNode> getAllDownstreamJobs() {
+		return JobGraphService.get().getReachabilityIndex().getDescendants(getNode());
+	}
+
+	/**
+	 * Sends the full names of all jobs which eventually trigger this job and which are eventually triggered by it. 
+	 * They are looked up in the reachability index, so the graph is not searched for every request.
+	 */
+	private void serveImpact(StaplerRequest req, StaplerResponse res) throws IOException {
+		JobNode node = getNode();
+		if (node == null) {
+			res.sendError(HttpServletResponse.SC_NOT_FOUND, "unknown job");
+			return;
+		}
+		ReachabilityIndex<JobNode> index = JobGraphService.get().getReachabilityIndex();
+		res.setContentType("application/json;charset=UTF-8");
+		try (Writer out = new BufferedWriter(new OutputStreamWriter(res.getCompressedOutputStream(req), StandardCharsets.UTF_8))) {
+			JsonWriter json = new JsonWriter(out);
+			json.beginObject();
+			json.name("job").value(node.getFullName());
+			writeNames(json.name("upstream"), index.getAncestors(node));
+			writeNames(json.name("downstream"), index.getDescendants(node));
+			json.endObject();
+		}
+	}
+
+	private static void writeNames(JsonWriter json, Set<JobNode> jobs) throws IOException {
+		json.beginArray();
+		for (JobNode job : jobs) {
+			json.value(job.getFullName());
+		}
+		json.endArray();
 	}
 
 	@Override
@@ -29,6 +29,7 @@ import java.util.Collections;
 import hudson.Extension;
 import hudson.model.Action;
 import hudson.model.Job;
+import io.jenkins.plugins.model.wrapper.JobWrapper;
 import jenkins.model.TransientActionFactory;
 
 @Extension
@@ -41,6 +42,9 @@ public class JobTriggersActionFactory extends TransientActionFactory<Job> {
 
 	@Override
 	public Collection<? extends Action> createFor(Job target) {
+		if (JobWrapper.wrap(target) == null) {
+			return Collections.emptySet();
+		}
 		return Collections.singleton(new JobTriggersAction(target));
 	}
 
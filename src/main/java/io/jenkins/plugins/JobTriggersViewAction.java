@@ -23,9 +23,10 @@
  */
 package io.jenkins.plugins;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 import javax.servlet.http.HttpServletResponse;
 
@@ -34,28 +35,104 @@ import org.kohsuke.stapler.StaplerResponse;
 
 import hudson.model.Action;
 import hudson.model.View;
+import io.jenkins.plugins.model.node.JobNode;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
 
 public class JobTriggersViewAction implements Action {
 	
+	/**
+	 * The number of jobs up to which the overview shows the whole graph
+	 */
+	static final int EXPLORE_THRESHOLD = SystemProperties.getInteger(JobTriggersViewAction.class.getName() + ".exploreThreshold", 1000);
+
 	private View view;
-	private JobGraph jobGraph;
+	private JobGraphSnapshot jobGraph;
 
 	public JobTriggersViewAction(View view) {
 		this.setView(view);
-		this.setWorkflowGraph(new JobGraph());
 	}
 	
 	public void doDynamic(StaplerRequest req, StaplerResponse res) throws IOException, InterruptedException {
 		String path = req.getRestOfPath();
-		if (path.startsWith("/graph.")) {
+		if (path.equals("/graph.json")) {
+			GraphJsonWriter.serve(req, res, (json, query) -> getWorkflowGraph().writeJson(json, Collections.<JobNode>emptySet(), query, RenderSettings.current()));
+		} else if (path.equals("/neighbourhood.json")) {
+			serveNeighbourhood(req, res);
+		} else if (path.startsWith("/graph.")) {
 			String extension = path.substring(path.lastIndexOf('.')+1);
-			String dot = jobGraph.getDotString(null);
-			GraphViz.runDot(res.getCompressedOutputStream(req), new ByteArrayInputStream(dot.getBytes(StandardCharsets.UTF_8)), extension);	
+			DotCache dotCache = JobGraphService.get().getDotCache();
+			JobGraphSnapshot snapshot;
+			try {
+				// the image and its map are requested with the version of their page
+				snapshot = JobGraphService.get().getSnapshot(req, this::getWorkflowGraph);
+			} catch (IllegalArgumentException e) {
+				res.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+				return;
+			}
+			// components are laid out separately, the source is still downloaded as one graph
+			if (TiledGraph.TYPES.contains(extension) && snapshot.getComponents().size() > 1) {
+				TiledGraph.serve(req, res, dotCache.getComponents(snapshot), () -> dotCache.getSource(snapshot), extension, getImageType());
+			} else {
+				GraphViz.serve(req, res, dotCache.getSource(snapshot), extension);
+			}
 		} else {
 			res.sendError(HttpServletResponse.SC_NOT_FOUND);
 		}
 	}
 
+	/**
+	 * Serves the jobs within a depth of one, or the given depth, of the jobs of the parameter job.
+	 * Without a job the search starts from the jobs which are not triggered by other jobs.
+	 */
+	private void serveNeighbourhood(StaplerRequest req, StaplerResponse res) throws IOException {
+		JobGraphSnapshot snapshot = getWorkflowGraph();
+		String[] names = req.getParameterValues("job");
+		Set<JobNode> selected = new LinkedHashSet<>();
+		if (names != null) {
+			for (String name : names) {
+				JobNode node = snapshot.getNode(name);
+				if (node != null) {
+					selected.add(node);
+				}
+			}
+			if (selected.isEmpty()) {
+				res.sendError(HttpServletResponse.SC_NOT_FOUND, "unknown job");
+				return;
+			}
+		}
+		GraphJsonWriter.serve(req, res, 1, (json, query) -> snapshot.writeJson(json, selected, query, RenderSettings.current()));
+	}
+
+	/**
+	 * Large graphs are explored step by step from their entries instead of drawing all jobs at once
+	 * @return true if the overview has more jobs than {@link #EXPLORE_THRESHOLD}
+	 */
+	public boolean isExplored() {
+		return getWorkflowGraph().getJobs().size() > EXPLORE_THRESHOLD;
+	}
+
+	/**
+	 * @return true if the graph is drawn by the browser from graph.json
+	 */
+	public boolean isDrawnInBrowser() {
+		return Jenkins.get().getDescriptorByType(DependenciesProperty.DescriptorImpl.class).isDrawnInBrowser();
+	}
+
+	/**
+	 * @return the type of the image which is shown on the page
+	 */
+	public String getImageType() {
+		return Jenkins.get().getDescriptorByType(DependenciesProperty.DescriptorImpl.class).getImageType();
+	}
+
+	/**
+	 * @return the version of the snapshot which the page shows
+	 */
+	public long getVersion() {
+		return getWorkflowGraph().getVersion();
+	}
+
 	public View getView() {
 		return view;
 	}
@@ -64,11 +141,14 @@ public class JobTriggersViewAction implements Action {
 		this.view = view;
 	}
 
-	public JobGraph getWorkflowGraph() {
+	public synchronized JobGraphSnapshot getWorkflowGraph() {
+		if (jobGraph == null) {
+			jobGraph = JobGraphService.get().getSnapshot();
+		}
 		return jobGraph;
 	}
 
-	public void setWorkflowGraph(JobGraph workflowGraph) {
+	public synchronized void setWorkflowGraph(JobGraphSnapshot workflowGraph) {
 		this.jobGraph = workflowGraph;
 	}
 
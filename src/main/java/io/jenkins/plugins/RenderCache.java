@@ -0,0 +1,412 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, Bachmann electronics GmbH, Ole Siemers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import io.jenkins.plugins.DependenciesProperty.DescriptorImpl;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+
+/**
+ * Keeps the output of GraphViz, so a graph is only laid out again if its DOT input has changed.
+ * The output is kept in memory for the most recently shown graphs and on disk under {@code JENKINS_HOME} for all others.
+ * Both are bounded by their size in bytes and evict the least recently used output first.
+ * An output is identified by the SHA-256 hash of its output type and the hash of its DOT input, which also serves as its ETag.
+ * The image and the image map of a page are laid out in a single run of GraphViz and cached together.
+ * GraphViz runs on the {@link RenderScheduler}, which also lets concurrent requests of the same graph share a run.
+ * @author OLSI
+ */
+@Extension
+public class RenderCache {
+
+	private static final Logger logger = Logger.getLogger(RenderCache.class.getName());
+
+	/**
+	 * The number of bytes of output which are kept in memory
+	 */
+	static final long MEMORY_SIZE = SystemProperties.getLong(RenderCache.class.getName() + ".memorySize", 16L * 1024 * 1024);
+
+	/**
+	 * The number of bytes of output which are kept on disk
+	 */
+	static final long DISK_SIZE = SystemProperties.getLong(RenderCache.class.getName() + ".diskSize", 256L * 1024 * 1024);
+
+	private final Map<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+	private long memoryBytes;
+	private long diskBytes = -1;
+
+	public static RenderCache get() {
+		return ExtensionList.lookupSingleton(RenderCache.class);
+	}
+
+	/**
+	 * @param dot the DOT input
+	 * @param type the output type of GraphViz
+	 * @return the hex encoded SHA-256 hash which identifies the output
+	 */
+	static String getKey(String dot, String type) {
+		try {
+			return getKey(DotSource.of(dot), type);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * @param dot the DOT input
+	 * @param type the output type of GraphViz
+	 * @return the hex encoded SHA-256 hash which identifies the output
+	 * @throws IOException if the DOT input could not be written
+	 */
+	static String getKey(DotSource dot, String type) throws IOException {
+		return getKey(getHash(dot), dot, type);
+	}
+
+	/**
+	 * The keys of all output types of a DOT input are derived from the hash of the input, so a large input is only hashed once per request
+	 * @param hash the hash of the DOT input from {@link #getHash(DotSource)}
+	 * @param dot the DOT input
+	 * @param type the output type of GraphViz
+	 * @return the hex encoded SHA-256 hash which identifies the output
+	 */
+	static String getKey(String hash, DotSource dot, String type) {
+		MessageDigest digest = newDigest();
+		// output which is laid out in process differs from the output of dot
+		if (GraphViz.isLaidOutInProcess(dot, type)) {
+			digest.update(DescriptorImpl.LAYERED_BACKEND.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+		}
+		digest.update(type.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+		digest.update(hash.getBytes(StandardCharsets.UTF_8));
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * Hashes the DOT input while it is written, so it is never held in memory as a whole
+	 * @param dot the DOT input
+	 * @return the hex encoded SHA-256 hash of the DOT input
+	 * @throws IOException if the DOT input could not be written
+	 */
+	static String getHash(DotSource dot) throws IOException {
+		MessageDigest digest = newDigest();
+		OutputStream hash = new OutputStream() {
+
+			@Override
+			public void write(int b) {
+				digest.update((byte) b);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+				digest.update(b, off, len);
+			}
+		};
+		try (Writer out = new BufferedWriter(new OutputStreamWriter(hash, StandardCharsets.UTF_8))) {
+			dot.writeTo(out);
+		}
+		return toHex(digest.digest());
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not supported", e);
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder();
+		for (byte b : bytes) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * Get the output of GraphViz for a DOT input, which is only generated if it is neither in memory nor on disk
+	 * @param hash the hash of the DOT input from {@link #getHash(DotSource)}
+	 * @param dot the DOT input
+	 * @param type the output type
+	 * @return the output of GraphViz
+	 * @throws IOException if GraphViz failed
+	 * @throws InterruptedException if interrupted while waiting for GraphViz
+	 * @throws TimeoutException if GraphViz did not finish in time
+	 */
+	byte[] getOutput(String hash, DotSource dot, String type) throws IOException, InterruptedException, TimeoutException {
+		byte[] output = getCached(getKey(hash, dot, type), type);
+		return output == null ? render(hash, dot, type) : output;
+	}
+
+	/**
+	 * Renders the requested type together with the types which are requested with it on the {@link RenderScheduler}, and caches all of them.
+	 * @param hash the hash of the DOT input
+	 * @param dot the DOT input
+	 * @param type the requested output type
+	 * @return the output of the requested type
+	 */
+	private byte[] render(String hash, DotSource dot, String type) throws IOException, InterruptedException, TimeoutException {
+		List<String> types = GraphViz.getTypesRenderedWith(dot, type);
+		Map<String, byte[]> outputs = RenderScheduler.get().render(getKey(hash, dot, String.join(",", types)), getRender(hash, dot, types));
+		return outputs.get(type);
+	}
+
+	/**
+	 * Get the outputs of several graphs, for example the components of a graph. 
+	 * The graphs which are not cached are rendered in parallel on the {@link RenderScheduler}.
+	 * @param dots the DOT inputs
+	 * @param type the requested output type
+	 * @return for every input its output of the requested type and the types which are rendered with it
+	 * @throws IOException if GraphViz failed
+	 * @throws InterruptedException if interrupted while waiting for GraphViz
+	 * @throws TimeoutException if GraphViz did not finish in time
+	 */
+	List<Map<String, byte[]>> getOutputs(List<DotSource> dots, String type) throws IOException, InterruptedException, TimeoutException {
+		List<String> hashes = new ArrayList<>(dots.size());
+		for (DotSource dot : dots) {
+			hashes.add(getHash(dot));
+		}
+		return getOutputs(dots, hashes, type);
+	}
+
+	/**
+	 * Get the outputs of several graphs whose hashes are already known
+	 * @param dots the DOT inputs
+	 * @param hashes the hashes of the DOT inputs, see {@link #getHash(DotSource)}
+	 * @param type the requested output type
+	 * @return for every input its output of the requested type and the types which are rendered with it
+	 * @throws IOException if GraphViz failed
+	 * @throws InterruptedException if interrupted while waiting for GraphViz
+	 * @throws TimeoutException if GraphViz did not finish in time
+	 */
+	List<Map<String, byte[]>> getOutputs(List<DotSource> dots, List<String> hashes, String type) throws IOException, InterruptedException, TimeoutException {
+		List<Map<String, byte[]>> outputs = new ArrayList<>(dots.size());
+		List<String> renderKeys = new ArrayList<>(dots.size());
+		Map<String, Callable<Map<String, byte[]>>> renders = new LinkedHashMap<>();
+		for (int i = 0; i < dots.size(); i++) {
+			DotSource dot = dots.get(i);
+			String hash = hashes.get(i);
+			List<String> types = GraphViz.getTypesRenderedWith(dot, type);
+			Map<String, byte[]> cached = new LinkedHashMap<>();
+			for (String cachedType : types) {
+				byte[] output = getCached(getKey(hash, dot, cachedType), cachedType);
+				if (output == null) {
+					cached = null;
+					break;
+				}
+				cached.put(cachedType, output);
+			}
+			String renderKey = getKey(hash, dot, String.join(",", types));
+			outputs.add(cached);
+			renderKeys.add(renderKey);
+			if (cached == null) {
+				renders.put(renderKey, getRender(hash, dot, types));
+			}
+		}
+		if (!renders.isEmpty()) {
+			Map<String, Map<String, byte[]>> rendered = RenderScheduler.get().renderAll(renders);
+			for (int i = 0; i < outputs.size(); i++) {
+				if (outputs.get(i) == null) {
+					outputs.set(i, rendered.get(renderKeys.get(i)));
+				}
+			}
+		}
+		return outputs;
+	}
+
+	/**
+	 * Get output which is composed of other output, which is only kept in memory because it is cheap to compose again
+	 * @param key the key of the composed output
+	 * @param compose composes the output if it is not in memory
+	 * @return the composed output
+	 * @throws IOException if GraphViz failed
+	 * @throws InterruptedException if interrupted while waiting for GraphViz
+	 * @throws TimeoutException if GraphViz did not finish in time
+	 */
+	byte[] getComposedOutput(String key, OutputSupplier compose) throws IOException, InterruptedException, TimeoutException {
+		byte[] output = getFromMemory(key);
+		if (output == null) {
+			output = compose.get();
+			putInMemory(key, output);
+		}
+		return output;
+	}
+
+	/**
+	 * Output which may have to be rendered first
+	 */
+	@FunctionalInterface
+	interface OutputSupplier {
+		byte[] get() throws IOException, InterruptedException, TimeoutException;
+	}
+
+	/**
+	 * @return a render of the given types which caches all of them
+	 */
+	private Callable<Map<String, byte[]>> getRender(String hash, DotSource dot, List<String> types) {
+		return () -> {
+			Map<String, byte[]> rendered = GraphViz.render(dot, types);
+			for (Map.Entry<String, byte[]> output : rendered.entrySet()) {
+				String key = getKey(hash, dot, output.getKey());
+				putOnDisk(key, output.getKey(), output.getValue());
+				putInMemory(key, output.getValue());
+			}
+			return rendered;
+		};
+	}
+
+	private byte[] getCached(String key, String type) {
+		byte[] output = getFromMemory(key);
+		if (output == null) {
+			output = getFromDisk(key, type);
+			if (output != null) {
+				putInMemory(key, output);
+			}
+		}
+		return output;
+	}
+
+	private synchronized byte[] getFromMemory(String key) {
+		return memory.get(key);
+	}
+
+	private synchronized void putInMemory(String key, byte[] output) {
+		if (output.length > MEMORY_SIZE) {
+			return;
+		}
+		byte[] previous = memory.put(key, output);
+		memoryBytes += output.length - (previous == null ? 0 : previous.length);
+		Iterator<byte[]> eldest = memory.values().iterator();
+		while (memoryBytes > MEMORY_SIZE) {
+			memoryBytes -= eldest.next().length;
+			eldest.remove();
+		}
+	}
+
+	/**
+	 * @return the directory of the cached output
+	 */
+	File getDirectory() {
+		return new File(Jenkins.get().getRootDir(), RenderCache.class.getName());
+	}
+
+	private File getFile(String key, String type) {
+		return new File(getDirectory(), key + "." + type);
+	}
+
+	private byte[] getFromDisk(String key, String type) {
+		File file = getFile(key, type);
+		try {
+			byte[] output = Files.readAllBytes(file.toPath());
+			// the modification time marks the recently used files, which are evicted last
+			if (!file.setLastModified(System.currentTimeMillis())) {
+				logger.log(Level.FINE, "failed to touch "+file);
+			}
+			return output;
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "failed to read cached graph "+file, e);
+			return null;
+		}
+	}
+
+	private void putOnDisk(String key, String type, byte[] output) {
+		if (output.length > DISK_SIZE) {
+			return;
+		}
+		File file = getFile(key, type);
+		try {
+			Files.createDirectories(file.getParentFile().toPath());
+			File tmp = File.createTempFile(key, ".tmp", file.getParentFile());
+			try {
+				Files.write(tmp.toPath(), output);
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(tmp.toPath());
+			}
+			evictFromDisk(output.length);
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "failed to cache graph "+file, e);
+		}
+	}
+
+	/**
+	 * Deletes the least recently used files until the size of the directory is within its bound
+	 * @param added the number of bytes which were written to the directory
+	 */
+	private synchronized void evictFromDisk(long added) {
+		if (diskBytes >= 0) {
+			diskBytes += added;
+			if (diskBytes <= DISK_SIZE) {
+				return;
+			}
+		}
+		File[] files = getDirectory().listFiles();
+		if (files == null) {
+			return;
+		}
+		diskBytes = 0;
+		for (File file : files) {
+			diskBytes += file.length();
+		}
+		Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+		for (File file : files) {
+			if (diskBytes <= DISK_SIZE) {
+				break;
+			}
+			long length = file.length();
+			if (file.delete()) {
+				diskBytes -= length;
+			}
+		}
+	}
+}
@@ -0,0 +1,219 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, Bachmann electronics GmbH, Ole Siemers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import io.jenkins.plugins.DependenciesProperty.DescriptorImpl;
+import jenkins.model.Jenkins;
+
+/**
+ * Runs GraphViz on a bounded number of threads, so many concurrent page views do not start a process each.
+ * Renders wait in a first-in-first-out queue, and a request for a render which is already queued or running waits for its result.
+ * A request gives up after twice the render timeout, and a queued render is cancelled when no request waits for it anymore.
+ * The components of a graph are queued together, so they are laid out in parallel.
+ * @author OLSI
+ */
+@Extension
+public class RenderScheduler {
+
+	private static final Logger logger = Logger.getLogger(RenderScheduler.class.getName());
+
+	private final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+			new NamingThreadFactory(new DaemonThreadFactory(), "GraphViz renderer"));
+	private final Map<String, RenderTask> inFlight = new ConcurrentHashMap<>();
+	private final AtomicLong renders = new AtomicLong();
+	private final AtomicLong totalWaitMillis = new AtomicLong();
+	private volatile long lastWaitMillis;
+
+	public RenderScheduler() {
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	public static RenderScheduler get() {
+		return ExtensionList.lookupSingleton(RenderScheduler.class);
+	}
+
+	/**
+	 * Runs a render on the render threads or waits for the same render if it is already queued or running
+	 * @param key the key of the render, which identifies its input and output types
+	 * @param render the render, which should kill GraphViz after the render timeout
+	 * @return the outputs of the render by type
+	 * @throws IOException if the render failed
+	 * @throws InterruptedException if interrupted while waiting
+	 * @throws TimeoutException if the render did not finish within twice the render timeout
+	 */
+	Map<String, byte[]> render(String key, Callable<Map<String, byte[]>> render) throws IOException, InterruptedException, TimeoutException {
+		return renderAll(Collections.singletonMap(key, render)).get(key);
+	}
+
+	/**
+	 * Queues several renders at once, so they run in parallel on the render threads, and waits for all of them.
+	 * Renders which are already queued or running are shared as in {@link #render(String, Callable)}.
+	 * @param renders the renders by their keys
+	 * @return the outputs of the renders by key and type
+	 * @throws IOException if a render failed
+	 * @throws InterruptedException if interrupted while waiting
+	 * @throws TimeoutException if the renders did not finish within twice the render timeout
+	 */
+	Map<String, Map<String, byte[]>> renderAll(Map<String, Callable<Map<String, byte[]>>> renders) throws IOException, InterruptedException, TimeoutException {
+		DescriptorImpl settings = Jenkins.get().getDescriptorByType(DependenciesProperty.DescriptorImpl.class);
+		setPoolSize(Math.max(1, settings.getMaxConcurrentRenders()));
+		List<RenderTask> tasks = new ArrayList<>(renders.size());
+		synchronized (inFlight) {
+			for (Map.Entry<String, Callable<Map<String, byte[]>>> render : renders.entrySet()) {
+				RenderTask task = inFlight.get(render.getKey());
+				if (task == null) {
+					task = new RenderTask(render.getKey(), render.getValue());
+					inFlight.put(render.getKey(), task);
+					executor.execute(task);
+				}
+				task.waiting.incrementAndGet();
+				tasks.add(task);
+			}
+		}
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2L * Math.max(1, settings.getRenderTimeout()));
+		Map<String, Map<String, byte[]>> outputs = new LinkedHashMap<>();
+		try {
+			for (RenderTask task : tasks) {
+				outputs.put(task.key, task.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS));
+			}
+			return outputs;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw new IOException(e.getCause().getMessage(), e.getCause());
+			}
+			throw new IOException("rendering the graph failed", e.getCause());
+		} catch (CancellationException e) {
+			throw new IOException("rendering the graph was cancelled", e);
+		} finally {
+			synchronized (inFlight) {
+				for (RenderTask task : tasks) {
+					// a render which has not started yet is not needed anymore if nobody waits for it
+					if (task.waiting.decrementAndGet() == 0 && !task.isDone() && !task.started) {
+						task.cancel(false);
+					}
+				}
+			}
+		}
+	}
+
+	private synchronized void setPoolSize(int size) {
+		if (size > executor.getMaximumPoolSize()) {
+			executor.setMaximumPoolSize(size);
+			executor.setCorePoolSize(size);
+		} else if (size < executor.getMaximumPoolSize()) {
+			executor.setCorePoolSize(size);
+			executor.setMaximumPoolSize(size);
+		}
+	}
+
+	/**
+	 * @return the number of renders which wait for a free render thread
+	 */
+	public int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * @return the number of renders which are running
+	 */
+	public int getRunningRenders() {
+		return executor.getActiveCount();
+	}
+
+	/**
+	 * @return the milliseconds the last started render waited in the queue
+	 */
+	public long getLastWaitMillis() {
+		return lastWaitMillis;
+	}
+
+	/**
+	 * @return the average milliseconds a render waited in the queue since startup
+	 */
+	public long getAverageWaitMillis() {
+		long started = renders.get();
+		return started == 0 ? 0 : totalWaitMillis.get() / started;
+	}
+
+	/**
+	 * A queued render, which measures its time in the queue and removes itself from the renders in flight when it is done
+	 */
+	private final class RenderTask extends FutureTask<Map<String, byte[]>> {
+
+		private final String key;
+		private final long queued = System.currentTimeMillis();
+		private final AtomicInteger waiting = new AtomicInteger();
+		private volatile boolean started;
+
+		RenderTask(String key, Callable<Map<String, byte[]>> render) {
+			super(render);
+			this.key = key;
+		}
+
+		@Override
+		public void run() {
+			synchronized (inFlight) {
+				if (isCancelled()) {
+					return;
+				}
+				started = true;
+			}
+			long waited = System.currentTimeMillis() - queued;
+			lastWaitMillis = waited;
+			totalWaitMillis.addAndGet(waited);
+			renders.incrementAndGet();
+			logger.log(Level.FINE, String.format("render started after %d ms in the queue, %d renders are queued", waited, getQueueDepth()));
+			super.run();
+		}
+
+		@Override
+		protected void done() {
+			inFlight.remove(key, this);
+		}
+	}
+}
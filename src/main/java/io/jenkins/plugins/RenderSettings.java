@@ -0,0 +1,139 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, Bachmann electronics GmbH, Ole Siemers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins;
+
+import java.util.Objects;
+
+import io.jenkins.plugins.DependenciesProperty.DescriptorImpl;
+import jenkins.model.Jenkins;
+
+/**
+ * The settings which change the DOT output of a graph, captured at one point in time.
+ * Two renderings of the same graph with equal settings produce the same output, 
+ * unless the build status is drawn, which is not part of the graph.
+ * @author OLSI
+ */
+final class RenderSettings {
+
+	private final String imagePath;
+	private final boolean drawBalls;
+	private final boolean hideDisabled;
+	private final boolean leftToRightLayout;
+	private final boolean countTriggersTransitively;
+	private final boolean linearUpstreamOfProject;
+	private final int selectedEdgeWidth;
+	private final String rootUrl;
+	private final boolean layeredLayout;
+
+	RenderSettings(DescriptorImpl settings, String rootUrl) {
+		this.imagePath = settings.getImagePath();
+		this.drawBalls = settings.isDrawBalls();
+		this.hideDisabled = settings.isHideDisabled();
+		this.leftToRightLayout = settings.isLeftToRightLayout();
+		this.countTriggersTransitively = settings.isCountTriggersTransitively();
+		this.linearUpstreamOfProject = settings.isLinearUpstreamOfProject();
+		this.selectedEdgeWidth = settings.getSelectedEdgeWidth();
+		this.rootUrl = rootUrl;
+		this.layeredLayout = settings.isLayeredLayout();
+	}
+
+	/**
+	 * @param settings the global settings of the graphs
+	 * @return the current values of the settings
+	 */
+	static RenderSettings of(DescriptorImpl settings) {
+		return new RenderSettings(settings, Jenkins.get().getRootUrl());
+	}
+
+	/**
+	 * @return the current values of the global settings
+	 */
+	static RenderSettings current() {
+		return of(Jenkins.get().getDescriptorByType(DescriptorImpl.class));
+	}
+
+	String getImagePath() {
+		return imagePath;
+	}
+
+	boolean isDrawBalls() {
+		return drawBalls;
+	}
+
+	boolean isHideDisabled() {
+		return hideDisabled;
+	}
+
+	boolean isLeftToRightLayout() {
+		return leftToRightLayout;
+	}
+
+	boolean isCountTriggersTransitively() {
+		return countTriggersTransitively;
+	}
+
+	boolean isLinearUpstreamOfProject() {
+		return linearUpstreamOfProject;
+	}
+
+	int getSelectedEdgeWidth() {
+		return selectedEdgeWidth;
+	}
+
+	/**
+	 * @return the root URL of Jenkins, which is part of the links of all nodes
+	 */
+	String getRootUrl() {
+		return rootUrl;
+	}
+
+	boolean isLayeredLayout() {
+		return layeredLayout;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(imagePath, drawBalls, hideDisabled, leftToRightLayout, countTriggersTransitively, linearUpstreamOfProject, selectedEdgeWidth, rootUrl, layeredLayout);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		RenderSettings other = (RenderSettings) obj;
+		return drawBalls == other.drawBalls
+				&& hideDisabled == other.hideDisabled
+				&& leftToRightLayout == other.leftToRightLayout
+				&& countTriggersTransitively == other.countTriggersTransitively
+				&& linearUpstreamOfProject == other.linearUpstreamOfProject
+				&& selectedEdgeWidth == other.selectedEdgeWidth
+				&& layeredLayout == other.layeredLayout
+				&& Objects.equals(imagePath, other.imagePath)
+				&& Objects.equals(rootUrl, other.rootUrl);
+	}
+}
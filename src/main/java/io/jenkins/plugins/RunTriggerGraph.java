@@ -23,9 +23,15 @@
  */
 package io.jenkins.plugins;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import hudson.model.Cause;
 import hudson.model.Run;
@@ -38,12 +44,22 @@ public class RunTriggerGraph extends DirectedGraph<Run> {
 
 	private Run run;
 	
+	private static final AtomicInteger constructionCount = new AtomicInteger();
+	
 	public RunTriggerGraph(Run run) {
 		super();
+		constructionCount.incrementAndGet();
 		this.run = run;
 		this.addUpstreamRunsToGraph(this.run);
 	}
 
+	/**
+	 * @return the number of run graphs created since startup
+	 */
+	static int getConstructionCount() {
+		return constructionCount.get();
+	}
+
 	/**
 	 * @return the last upstream cause of this run or null if it was not triggered by another run.
 	 */
@@ -61,24 +77,55 @@ public class RunTriggerGraph extends DirectedGraph<Run> {
 	 * @return string of the dot-file
 	 */
 	public String getDot() {
-		StringBuilder dot = new StringBuilder();
-		dot.append(String.format("digraph \"%s\" {%n\tnode [shape=box, style=rounded, fontname=sans];%n\tgraph [rankdir=BT]; %n", run.getFullDisplayName()));
+		StringWriter dot = new StringWriter();
+		try {
+			writeDot(dot);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return dot.toString();
+	}
+
+	/**
+	 * Writes the dot-file of this graph run by run and edge by edge
+	 * @param dot the writer of the dot-file
+	 * @throws IOException if the writer failed
+	 */
+	public void writeDot(Writer dot) throws IOException {
+		dot.write(String.format("digraph \"%s\" {%n\tnode [shape=box, style=rounded, fontname=sans];%n\tgraph [rankdir=BT]; %n", run.getFullDisplayName()));
 		DescriptorImpl settings = Jenkins.get().getDescriptorByType(DependenciesProperty.DescriptorImpl.class);
 		for (Run r : getVertices()) {
 			String nodeIcon = settings.isDrawBalls() ? String.format("<td><img src=\"%s\" /></td>", r.getIconColor().getImage()) : "";
 			String nodeLabel = String.format("<table border=\"0\"><tr>%s<td>%s</td></tr></table>", nodeIcon, r.getFullDisplayName());
-			dot.append(String.format("\t\"%s\" [label=<%s>];%n", r.getFullDisplayName(), nodeLabel));
+			dot.write(String.format("\t\"%s\" [label=<%s>];%n", r.getFullDisplayName(), nodeLabel));
 		}
 		for (Run sourceRun : getVertices()) {
 			Set<Run> targetRuns = getSuccessors(sourceRun);
 			for (Run targetRun : targetRuns) {
-				dot.append("\t\""+targetRun.getFullDisplayName() + "\" -> \""+sourceRun.getFullDisplayName()+"\";\n");
+				dot.write("\t\""+targetRun.getFullDisplayName() + "\" -> \""+sourceRun.getFullDisplayName()+"\";\n");
 			}
 		}
-		dot.append("}");
-		return dot.toString();
+		dot.write("}");
 	}
 	
+	/**
+	 * Writes the part of this graph which is selected by a query as JSON, starting from the run of this graph
+	 * @param json the writer of the JSON object
+	 * @param query the requested part of the graph
+	 * @throws IOException if the writer failed
+	 */
+	void writeJson(JsonWriter json, GraphQuery query) throws IOException {
+		String rootUrl = Jenkins.get().getRootUrl();
+		json.beginObject();
+		new GraphJsonWriter<Run>(this, true, Run::getExternalizableId, (out, r) -> {
+			out.name("name").value(r.getFullDisplayName());
+			out.name("url").value(rootUrl == null ? r.getUrl() : rootUrl + r.getUrl());
+			out.name("color").value(r.getIconColor().getHtmlBaseColor());
+			out.name("building").value(r.isBuilding());
+		}).write(json, Collections.singleton(run), query);
+		json.endObject();
+	}
+
 	/**
 	 * Gets the upstream causes of the current run
 	 * @return a list of all upstream-causes
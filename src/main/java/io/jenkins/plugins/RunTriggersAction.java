@@ -23,9 +23,7 @@
  */
 package io.jenkins.plugins;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 
 import javax.servlet.http.HttpServletResponse;
 import org.kohsuke.stapler.StaplerRequest;
@@ -33,6 +31,7 @@ import org.kohsuke.stapler.StaplerResponse;
 
 import hudson.model.Action;
 import hudson.model.Run;
+import jenkins.model.Jenkins;
 
 public class RunTriggersAction implements Action {
 
@@ -41,26 +40,46 @@ public class RunTriggersAction implements Action {
 	
 	public RunTriggersAction(Run run) {
 		this.run = run;
-		this.graph = new RunTriggerGraph(run);
+	}
+	
+	/**
+	 * The graph is loaded on first use because this action is created whenever the actions of a run are listed,
+	 * e.g. for every row of the build history
+	 * @return the graph of the upstream runs of this run
+	 */
+	private synchronized RunTriggerGraph getGraph() {
+		if (graph == null) {
+			graph = new RunTriggerGraph(run);
+		}
+		return graph;
 	}
 	
 	public void doDynamic(StaplerRequest req, StaplerResponse res) throws IOException, InterruptedException {
 		String path = req.getRestOfPath();
-		if (path.startsWith("/graph.")) {
+		if (path.equals("/graph.json")) {
+			GraphJsonWriter.serve(req, res, getGraph()::writeJson);
+		} else if (path.startsWith("/graph.")) {
 			String extension = path.substring(path.lastIndexOf('.')+1);
-			String dot = graph.getDot();
-			GraphViz.runDot(res.getCompressedOutputStream(req), new ByteArrayInputStream(dot.getBytes(StandardCharsets.UTF_8)), extension);	
+			GraphViz.serve(req, res, getGraph()::writeDot, extension);
 		} else {
 			res.sendError(HttpServletResponse.SC_NOT_FOUND);
 		}
 	}
 
+	/**
+	 * @return true if the graph is drawn by the browser from graph.json
+	 */
+	public boolean isDrawnInBrowser() {
+		return Jenkins.get().getDescriptorByType(DependenciesProperty.DescriptorImpl.class).isDrawnInBrowser();
+	}
+
 	public Run getRun() {
 		return run;
 	}
 
-	public void setRun(Run run) {
+	public synchronized void setRun(Run run) {
 		this.run = run;
+		this.graph = null;
 	}
 
 	@Override
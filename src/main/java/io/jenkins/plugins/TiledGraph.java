@@ -0,0 +1,352 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, Bachmann electronics GmbH, Ole Siemers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.imageio.ImageIO;
+
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import jenkins.util.SystemProperties;
+
+/**
+ * Composes the separately rendered components of a graph into one image. 
+ * The components are placed in rows from the highest to the lowest, and the image and its image map 
+ * are composed from the same positions, which only depend on the sizes of the component images.
+ * @author OLSI
+ */
+final class TiledGraph {
+
+	/**
+	 * The output types which can be composed from components
+	 */
+	static final List<String> TYPES = Collections.unmodifiableList(Arrays.asList("png", "svg", "cmapx"));
+
+	/**
+	 * The number of pixels of the largest PNG which is composed in memory. Larger graphs are drawn by dot as a single graph.
+	 */
+	static final int MAX_PNG_PIXELS = SystemProperties.getInteger(TiledGraph.class.getName() + ".maxPngPixels", 16 * 1024 * 1024);
+
+	/**
+	 * The pixels of the smallest node which dot draws in a PNG, a box of 0.75 by 0.5 inches at 96 dpi
+	 */
+	static final int MIN_NODE_PIXELS = 72 * 48;
+
+	private static final int GAP = 16;
+	private static final Pattern SVG_ROOT = Pattern.compile("<svg\\b[^>]*>");
+	private static final Pattern AREA = Pattern.compile("<area\\b[^>]*>");
+	private static final Pattern COORDS = Pattern.compile("coords=\"([^\"]*)\"");
+
+	private TiledGraph() {
+		throw new IllegalStateException("Utility class");
+	}
+
+	/**
+	 * Sends the output of a graph which is composed from its components. Only components which are not cached are rendered, in parallel.
+	 * A PNG which would be too large to compose, and its image map, are rendered from the whole graph instead. 
+	 * If the jobs alone would not fit, the components are not rendered at all.
+	 * @param req the request of the graph
+	 * @param res the response
+	 * @param components the components with the hashes of their DOT output
+	 * @param whole the DOT source of the whole graph, which is only created if it is rendered
+	 * @param type the output type
+	 * @param imageType the type of the image which the image map belongs to
+	 * @throws IOException if dot failed or the response could not be written
+	 * @throws InterruptedException if interrupted while waiting for dot
+	 */
+	static void serve(StaplerRequest req, StaplerResponse res, DotCache.Components components, Supplier<DotSource> whole, String type, String imageType) throws IOException, InterruptedException {
+		String renderType = type.equals("cmapx") ? imageType : type;
+		if (renderType.equals("png") && (long) components.getJobCount() * MIN_NODE_PIXELS > MAX_PNG_PIXELS) {
+			// dot draws the image outside of the memory of Jenkins
+			GraphViz.serve(req, res, whole.get(), type);
+			return;
+		}
+		String key = getKey(components, type, renderType);
+		RenderCache cache = RenderCache.get();
+		GraphViz.serve(req, res, key, type, () -> cache.getComposedOutput(key, () -> {
+			List<Map<String, byte[]>> outputs = cache.getOutputs(components.getSources(), components.getHashes(), renderType);
+			if (renderType.equals("png") && !fitsInPng(getPositions(outputs, renderType))) {
+				DotSource dot = whole.get();
+				return cache.getOutput(RenderCache.getHash(dot), dot, type);
+			}
+			return tile(outputs, renderType, type);
+		}));
+	}
+
+	/**
+	 * The key of the composed output depends on the keys of all components, so it changes with any of them. 
+	 * It is built from the hashes of the components, so their DOT output is not written again.
+	 */
+	private static String getKey(DotCache.Components components, String type, String renderType) {
+		StringBuilder keys = new StringBuilder("tiled ").append(renderType);
+		for (int i = 0; i < components.getSources().size(); i++) {
+			keys.append('\n').append(RenderCache.getKey(components.getHashes().get(i), components.getSources().get(i), renderType));
+		}
+		return RenderCache.getKey(keys.toString(), type);
+	}
+
+	/**
+	 * @param outputs the outputs of the components by type
+	 * @param imageType the type of the images whose sizes determine the positions of the components
+	 * @param type the type to compose
+	 * @return the composed output
+	 * @throws IOException if an output is missing or cannot be read
+	 */
+	static byte[] tile(List<Map<String, byte[]>> outputs, String imageType, String type) throws IOException {
+		int n = outputs.size();
+		double[] widths = new double[n];
+		double[] heights = new double[n];
+		getSizes(outputs, imageType, widths, heights);
+		double[] positions = place(widths, heights);
+		switch (type) {
+		case "png":
+			if (!fitsInPng(positions)) {
+				throw new IOException("the composed image exceeds " + MAX_PNG_PIXELS + " pixels");
+			}
+			return tilePng(outputs, positions);
+		case "svg":
+			return tileSvg(outputs, positions, widths, heights);
+		case "cmapx":
+			return tileMap(outputs, positions);
+		default:
+			throw new IllegalArgumentException("cannot compose " + type);
+		}
+	}
+
+	/**
+	 * @param outputs the outputs of the components by type
+	 * @param imageType the type of the images whose sizes determine the positions of the components
+	 * @return the positions of the components, followed by the size of the composed image
+	 * @throws IOException if an output is missing or cannot be read
+	 */
+	static double[] getPositions(List<Map<String, byte[]>> outputs, String imageType) throws IOException {
+		double[] widths = new double[outputs.size()];
+		double[] heights = new double[outputs.size()];
+		getSizes(outputs, imageType, widths, heights);
+		return place(widths, heights);
+	}
+
+	/**
+	 * @param positions the positions of the components, followed by the size of the composed image
+	 * @return true if the composed image has at most {@link #MAX_PNG_PIXELS} pixels
+	 */
+	static boolean fitsInPng(double[] positions) {
+		int n = positions.length / 2 - 1;
+		return positions[2 * n] * positions[2 * n + 1] <= MAX_PNG_PIXELS;
+	}
+
+	private static void getSizes(List<Map<String, byte[]>> outputs, String imageType, double[] widths, double[] heights) throws IOException {
+		for (int i = 0; i < outputs.size(); i++) {
+			double[] size = getSize(getOutput(outputs.get(i), imageType), imageType);
+			widths[i] = size[0];
+			heights[i] = size[1];
+		}
+	}
+
+	private static byte[] getOutput(Map<String, byte[]> outputs, String type) throws IOException {
+		byte[] output = outputs.get(type);
+		if (output == null) {
+			throw new IOException("the output of a component has no " + type);
+		}
+		return output;
+	}
+
+	/**
+	 * Places the tiles in rows, the highest tiles first, so that the rows are about as wide as all tiles are high
+	 * @param widths the widths of the tiles
+	 * @param heights the heights of the tiles
+	 * @return the x and y of the top left corner of every tile, followed by the width and height of the whole image
+	 */
+	static double[] place(double[] widths, double[] heights) {
+		int n = widths.length;
+		Integer[] order = new Integer[n];
+		double area = 0;
+		double rowWidth = 0;
+		for (int i = 0; i < n; i++) {
+			order[i] = i;
+			area += (widths[i] + GAP) * (heights[i] + GAP);
+			rowWidth = Math.max(rowWidth, widths[i]);
+		}
+		rowWidth = Math.max(rowWidth, Math.sqrt(area));
+		Arrays.sort(order, Comparator.comparingDouble((Integer i) -> -heights[i]));
+		double[] positions = new double[2 * n + 2];
+		double x = 0;
+		double y = 0;
+		double rowHeight = 0;
+		double width = 0;
+		for (int i : order) {
+			if (x > 0 && x + widths[i] > rowWidth) {
+				y += rowHeight + GAP;
+				x = 0;
+				rowHeight = 0;
+			}
+			positions[2 * i] = x;
+			positions[2 * i + 1] = y;
+			width = Math.max(width, x + widths[i]);
+			rowHeight = Math.max(rowHeight, heights[i]);
+			x += widths[i] + GAP;
+		}
+		positions[2 * n] = width;
+		positions[2 * n + 1] = y + rowHeight;
+		return positions;
+	}
+
+	/**
+	 * @return the width and height of an image, SVG sizes in points are converted to pixels like the browser does
+	 */
+	static double[] getSize(byte[] image, String type) throws IOException {
+		if (type.equals("png")) {
+			// the size is the start of the IHDR chunk, which directly follows the signature
+			if (image.length < 24) {
+				throw new IOException("invalid PNG");
+			}
+			return new double[] { readInt(image, 16), readInt(image, 20) };
+		}
+		Matcher root = SVG_ROOT.matcher(new String(image, StandardCharsets.UTF_8));
+		if (!root.find()) {
+			throw new IOException("invalid SVG");
+		}
+		return new double[] { getLength(root.group(), "width"), getLength(root.group(), "height") };
+	}
+
+	private static int readInt(byte[] bytes, int offset) {
+		return (bytes[offset] & 0xff) << 24 | (bytes[offset + 1] & 0xff) << 16 | (bytes[offset + 2] & 0xff) << 8 | (bytes[offset + 3] & 0xff);
+	}
+
+	private static double getLength(String element, String attribute) throws IOException {
+		Matcher length = Pattern.compile("\\s" + attribute + "=\"([0-9.]+)(pt|px)?\"").matcher(element);
+		if (!length.find()) {
+			throw new IOException("the SVG has no " + attribute);
+		}
+		double value = Double.parseDouble(length.group(1));
+		return "pt".equals(length.group(2)) ? value * 4 / 3 : value;
+	}
+
+	private static byte[] tilePng(List<Map<String, byte[]>> outputs, double[] positions) throws IOException {
+		int n = outputs.size();
+		BufferedImage tiled = new BufferedImage(Math.max(1, (int) positions[2 * n]), Math.max(1, (int) positions[2 * n + 1]), BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = tiled.createGraphics();
+		try {
+			graphics.setColor(Color.WHITE);
+			graphics.fillRect(0, 0, tiled.getWidth(), tiled.getHeight());
+			for (int i = 0; i < n; i++) {
+				BufferedImage image = ImageIO.read(new ByteArrayInputStream(outputs.get(i).get("png")));
+				if (image == null) {
+					throw new IOException("invalid PNG");
+				}
+				graphics.drawImage(image, (int) positions[2 * i], (int) positions[2 * i + 1], null);
+			}
+		} finally {
+			graphics.dispose();
+		}
+		ByteArrayOutputStream png = new ByteArrayOutputStream();
+		ImageIO.write(tiled, "png", png);
+		return png.toByteArray();
+	}
+
+	/**
+	 * Nests the SVG documents of the components, whose own sizes are kept
+	 */
+	private static byte[] tileSvg(List<Map<String, byte[]>> outputs, double[] positions, double[] widths, double[] heights) throws IOException {
+		int n = outputs.size();
+		StringBuilder svg = new StringBuilder();
+		svg.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		svg.append("<svg xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\" width=\"").append(format(positions[2 * n]))
+				.append("\" height=\"").append(format(positions[2 * n + 1])).append("\" viewBox=\"0 0 ").append(format(positions[2 * n]))
+				.append(' ').append(format(positions[2 * n + 1])).append("\">\n");
+		for (int i = 0; i < n; i++) {
+			String component = new String(outputs.get(i).get("svg"), StandardCharsets.UTF_8);
+			Matcher root = SVG_ROOT.matcher(component);
+			if (!root.find()) {
+				throw new IOException("invalid SVG");
+			}
+			// the XML declaration and the doctype are left out, the size of the root is replaced by its size in pixels
+			String start = root.group()
+					.replaceFirst("\\swidth=\"[^\"]*\"", " width=\"" + format(widths[i]) + "\"")
+					.replaceFirst("\\sheight=\"[^\"]*\"", " height=\"" + format(heights[i]) + "\"");
+			svg.append("<svg x=\"").append(format(positions[2 * i])).append("\" y=\"").append(format(positions[2 * i + 1])).append('"')
+					.append(start, "<svg".length(), start.length()).append('\n');
+			svg.append(component, root.end(), component.length()).append('\n');
+		}
+		svg.append("</svg>\n");
+		return svg.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Moves the areas of the image maps of the components to the positions of the components
+	 */
+	private static byte[] tileMap(List<Map<String, byte[]>> outputs, double[] positions) throws IOException {
+		StringBuilder map = new StringBuilder("<map id=\"G\" name=\"G\">\n");
+		for (int i = 0; i < outputs.size(); i++) {
+			int dx = (int) Math.round(positions[2 * i]);
+			int dy = (int) Math.round(positions[2 * i + 1]);
+			Matcher area = AREA.matcher(new String(getOutput(outputs.get(i), "cmapx"), StandardCharsets.UTF_8));
+			while (area.find()) {
+				map.append(moveArea(area.group(), dx, dy)).append('\n');
+			}
+		}
+		map.append("</map>\n");
+		return map.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	static String moveArea(String area, int dx, int dy) {
+		Matcher coords = COORDS.matcher(area);
+		if (!coords.find()) {
+			return area;
+		}
+		String[] values = coords.group(1).split("[,\\s]+");
+		// a circle is given by its center and radius, all other shapes by pairs of x and y
+		int moved = area.contains("shape=\"circle\"") ? Math.min(2, values.length) : values.length;
+		List<String> result = new ArrayList<>(values.length);
+		for (int i = 0; i < values.length; i++) {
+			if (i < moved && !values[i].isEmpty()) {
+				result.add(Long.toString(Math.round(Double.parseDouble(values[i])) + (i % 2 == 0 ? dx : dy)));
+			} else {
+				result.add(values[i]);
+			}
+		}
+		return area.substring(0, coords.start(1)) + String.join(",", result) + area.substring(coords.end(1));
+	}
+
+	private static String format(double value) {
+		return value == Math.rint(value) ? Long.toString((long) value) : Double.toString(value);
+	}
+}
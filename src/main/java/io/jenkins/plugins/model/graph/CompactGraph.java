@@ -0,0 +1,424 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, Bachmann electronics GmbH, Ole Siemers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.model.graph;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Immutable directed graph in compressed sparse row form.
+ * Every vertex is interned to an int id, the successors and predecessors of all vertices 
+ * are stored in two int arrays which are indexed by offset arrays. 
+ * The adjacency of each vertex is sorted by id.
+ * @author OLSI
+ * @param <V> the type of the vertices
+ */
+public final class CompactGraph<V> implements Graph<V> {
+
+	private final Object[] vertices;
+	private final Map<V, Integer> ids;
+	private final int[] forwardOffsets;
+	private final int[] forwardTargets;
+	private final int[] backwardOffsets;
+	private final int[] backwardSources;
+	private StronglyConnectedComponents components;
+	private WeaklyConnectedComponents weakComponents;
+
+	private CompactGraph(Object[] vertices, Map<V, Integer> ids, int[] forwardOffsets, int[] forwardTargets, int[] backwardOffsets, int[] backwardSources) {
+		this.vertices = vertices;
+		this.ids = ids;
+		this.forwardOffsets = forwardOffsets;
+		this.forwardTargets = forwardTargets;
+		this.backwardOffsets = backwardOffsets;
+		this.backwardSources = backwardSources;
+	}
+
+	/**
+	 * Creates a compact copy of a graph
+	 * @param graph the graph to copy
+	 * @param <V> the type of the vertices
+	 * @return a frozen copy of the given graph
+	 */
+	public static <V> CompactGraph<V> of(Graph<V> graph) {
+		Set<V> vertexSet = graph.getVertices();
+		int n = vertexSet.size();
+		Object[] vertices = new Object[n];
+		Map<V, Integer> ids = new HashMap<>(n * 4 / 3 + 1);
+		for (V v : vertexSet) {
+			vertices[ids.size()] = v;
+			ids.put(v, ids.size());
+		}
+		int[] forwardOffsets = new int[n + 1];
+		int[] backwardOffsets = new int[n + 1];
+		int edgeCount = 0;
+		for (int i = 0; i < n; i++) {
+			edgeCount += countContained(graph.getSuccessors(vertex(vertices, i)), ids);
+			forwardOffsets[i + 1] = edgeCount;
+		}
+		int[] forwardTargets = new int[edgeCount];
+		int[] inDegree = new int[n];
+		for (int i = 0; i < n; i++) {
+			int position = forwardOffsets[i];
+			for (V w : graph.getSuccessors(vertex(vertices, i))) {
+				Integer target = ids.get(w);
+				if (target != null) {
+					forwardTargets[position++] = target;
+					inDegree[target]++;
+				}
+			}
+			Arrays.sort(forwardTargets, forwardOffsets[i], position);
+		}
+		for (int i = 0; i < n; i++) {
+			backwardOffsets[i + 1] = backwardOffsets[i] + inDegree[i];
+		}
+		// sources are filled in ascending order, so every predecessor range is sorted as well
+		int[] backwardSources = new int[edgeCount];
+		int[] fill = Arrays.copyOf(backwardOffsets, n);
+		for (int i = 0; i < n; i++) {
+			for (int e = forwardOffsets[i]; e < forwardOffsets[i + 1]; e++) {
+				backwardSources[fill[forwardTargets[e]]++] = i;
+			}
+		}
+		return new CompactGraph<>(vertices, ids, forwardOffsets, forwardTargets, backwardOffsets, backwardSources);
+	}
+
+	private static <V> int countContained(Set<V> vertices, Map<V, Integer> ids) {
+		int count = 0;
+		for (V v : vertices) {
+			if (ids.containsKey(v)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <V> V vertex(Object[] vertices, int id) {
+		return (V)vertices[id];
+	}
+
+	/**
+	 * @return the number of vertices of this graph
+	 */
+	public int getVertexCount() {
+		return vertices.length;
+	}
+
+	/**
+	 * @return the number of edges of this graph
+	 */
+	public int getEdgeCount() {
+		return forwardTargets.length;
+	}
+
+	/**
+	 * Returns the id of a vertex
+	 * @param vertex the vertex to look up
+	 * @return the id of the vertex or -1 if it is not contained in this graph
+	 */
+	public int indexOf(V vertex) {
+		Integer id = ids.get(vertex);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Returns the vertex with the given id
+	 * @param id the id of the vertex
+	 * @return the vertex
+	 */
+	public V getVertex(int id) {
+		return vertex(vertices, id);
+	}
+
+	public int getOutDegree(int id) {
+		return forwardOffsets[id + 1] - forwardOffsets[id];
+	}
+
+	/**
+	 * @param id the id of the start vertex
+	 * @param index the index of the edge between 0 and the out-degree of the vertex
+	 * @return the id of the successor
+	 */
+	public int getSuccessor(int id, int index) {
+		return forwardTargets[forwardOffsets[id] + index];
+	}
+
+	public int getInDegree(int id) {
+		return backwardOffsets[id + 1] - backwardOffsets[id];
+	}
+
+	/**
+	 * @param id the id of the end vertex
+	 * @param index the index of the edge between 0 and the in-degree of the vertex
+	 * @return the id of the predecessor
+	 */
+	public int getPredecessor(int id, int index) {
+		return backwardSources[backwardOffsets[id] + index];
+	}
+
+	@Override
+	public Set<V> getVertices() {
+		return new VertexSet(null, 0, vertices.length);
+	}
+
+	@Override
+	public Set<V> getPredecessors(V vertex) {
+		int id = indexOf(vertex);
+		return id < 0 ? null : new VertexSet(backwardSources, backwardOffsets[id], backwardOffsets[id + 1]);
+	}
+
+	@Override
+	public Set<V> getSuccessors(V vertex) {
+		int id = indexOf(vertex);
+		return id < 0 ? null : new VertexSet(forwardTargets, forwardOffsets[id], forwardOffsets[id + 1]);
+	}
+
+	@Override
+	public Set<V> getEntries() {
+		Set<V> entries = new HashSet<>();
+		for (int i = 0; i < vertices.length; i++) {
+			if (getInDegree(i) == 0) {
+				entries.add(getVertex(i));
+			}
+		}
+		return entries;
+	}
+
+	@Override
+	public Set<V> getExits() {
+		Set<V> exits = new HashSet<>();
+		for (int i = 0; i < vertices.length; i++) {
+			if (getOutDegree(i) == 0) {
+				exits.add(getVertex(i));
+			}
+		}
+		return exits;
+	}
+
+	@Override
+	public boolean containsVertex(V vertex) {
+		return ids.containsKey(vertex);
+	}
+
+	@Override
+	public boolean containsEdge(V from, V to) {
+		int source = indexOf(from);
+		int target = indexOf(to);
+		return source >= 0 && target >= 0 && containsEdge(source, target);
+	}
+
+	public boolean containsEdge(int from, int to) {
+		return Arrays.binarySearch(forwardTargets, forwardOffsets[from], forwardOffsets[from + 1], to) >= 0;
+	}
+
+	/**
+	 * Performs a breadth-first-search from a given vertex
+	 * @param start the id of the start vertex
+	 * @param followSuccessors if outgoing edges are traversed
+	 * @param followPredecessors if ingoing edges are traversed
+	 * @return the ids of all discovered vertices in the order of their discovery, starting with the start vertex
+	 */
+	public int[] breadthFirstSearch(int start, boolean followSuccessors, boolean followPredecessors) {
+		return breadthFirstSearch(start, new boolean[vertices.length], followSuccessors, followPredecessors);
+	}
+
+	/**
+	 * Performs a breadth-first-search from a given vertex which does not pass already discovered vertices
+	 * @param start the id of the start vertex, which must not be discovered yet
+	 * @param discovered the vertices which are not visited, the discovered vertices are added to it
+	 * @param followSuccessors if outgoing edges are traversed
+	 * @param followPredecessors if ingoing edges are traversed
+	 * @return the ids of all discovered vertices in the order of their discovery, starting with the start vertex
+	 */
+	private int[] breadthFirstSearch(int start, boolean[] discovered, boolean followSuccessors, boolean followPredecessors) {
+		int[] queue = new int[vertices.length];
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = start;
+		discovered[start] = true;
+		while (head < tail) {
+			int v = queue[head++];
+			if (followSuccessors) {
+				for (int e = forwardOffsets[v]; e < forwardOffsets[v + 1]; e++) {
+					int w = forwardTargets[e];
+					if (!discovered[w]) {
+						discovered[w] = true;
+						queue[tail++] = w;
+					}
+				}
+			}
+			if (followPredecessors) {
+				for (int e = backwardOffsets[v]; e < backwardOffsets[v + 1]; e++) {
+					int w = backwardSources[e];
+					if (!discovered[w]) {
+						discovered[w] = true;
+						queue[tail++] = w;
+					}
+				}
+			}
+		}
+		return Arrays.copyOf(queue, tail);
+	}
+
+	/**
+	 * Returns a read-only view of all vertices which are connected to the given vertex
+	 * @param connectedVertex the vertex which all other vertices are connected to
+	 * @param keepUnreachableSiblings if false, vertices which are only connected via a common ancestor are not included
+	 * @return the view of the connected component of the given vertex
+	 * @see DirectedGraph#getConnectedSubgraph(Object, boolean)
+	 */
+	public SubgraphView<V> getConnectedSubgraph(V connectedVertex, boolean keepUnreachableSiblings) {
+		int start = indexOf(connectedVertex);
+		if (start < 0) {
+			return new SubgraphView<>(this, Collections.<V>emptySet());
+		}
+		boolean[] discovered = new boolean[vertices.length];
+		Set<V> connected = new HashSet<>();
+		if (!keepUnreachableSiblings) {
+			// the ancestors are part of the view, but the other descendants of the ancestors are not
+			for (int ancestor : breadthFirstSearch(start, false, true)) {
+				discovered[ancestor] = true;
+				connected.add(getVertex(ancestor));
+			}
+			discovered[start] = false;
+		}
+		for (int id : breadthFirstSearch(start, discovered, true, true)) {
+			connected.add(getVertex(id));
+		}
+		return new SubgraphView<>(this, connected);
+	}
+
+	/**
+	 * Returns the strongly connected components of this graph. They are computed on the first call.
+	 * @return the strongly connected components and the condensation of this graph
+	 */
+	public StronglyConnectedComponents getStronglyConnectedComponents() {
+		StronglyConnectedComponents result = components;
+		if (result == null) {
+			result = new StronglyConnectedComponents(this);
+			components = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the weakly connected components of this graph. They are computed on the first call.
+	 * @return the parts of this graph which are not connected to each other
+	 */
+	public WeaklyConnectedComponents getWeaklyConnectedComponents() {
+		WeaklyConnectedComponents result = weakComponents;
+		if (result == null) {
+			result = new WeaklyConnectedComponents(this);
+			weakComponents = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Sorts all vertices so that every vertex is placed before its successors. 
+	 * Vertices of a cycle are placed next to each other in arbitrary order.
+	 * @return the ids of the sorted vertices
+	 */
+	public int[] topologicalOrder() {
+		return getStronglyConnectedComponents().topologicalOrder();
+	}
+
+	/**
+	 * @see #topologicalOrder()
+	 * @return all vertices in topological order
+	 */
+	public Deque<V> getTopologicalOrder() {
+		Deque<V> sorted = new LinkedList<>();
+		for (int id : topologicalOrder()) {
+			sorted.add(getVertex(id));
+		}
+		return sorted;
+	}
+
+	/**
+	 * Unmodifiable set of vertices whose ids are stored in a sorted range of an array
+	 */
+	private final class VertexSet extends AbstractSet<V> {
+
+		private final int[] range;
+		private final int from;
+		private final int to;
+
+		/**
+		 * @param range the array with the sorted ids or null if the ids are from and to itself
+		 * @param from the inclusive start of the range
+		 * @param to the exclusive end of the range
+		 */
+		VertexSet(int[] range, int from, int to) {
+			this.range = range;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public Iterator<V> iterator() {
+			return new Iterator<V>() {
+				private int position = from;
+
+				@Override
+				public boolean hasNext() {
+					return position < to;
+				}
+
+				@Override
+				public V next() {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					int id = range == null ? position : range[position];
+					position++;
+					return getVertex(id);
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return to - from;
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			Integer id = ids.get(o);
+			if (id == null) {
+				return false;
+			}
+			return range == null ? id >= from && id < to : Arrays.binarySearch(range, from, to, id) >= 0;
+		}
+	}
+}
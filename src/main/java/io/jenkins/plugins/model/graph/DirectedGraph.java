@@ -23,6 +23,7 @@
  */
 package io.jenkins.plugins.model.graph;
 
+import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -35,10 +36,12 @@ import java.util.Set;
  * @author OLSI
  * @param <V> the type of the vertices
  */
-public class DirectedGraph<V> {
+public class DirectedGraph<V> implements Graph<V> {
 	
 	private Map<V, Set<V>> forwardEdges;
 	private Map<V, Set<V>> backwardEdges;
+	private Map<V, Set<V>> ancestorCache;
+	private Map<V, Set<V>> descendantCache;
 	
 	public DirectedGraph() {
 		reset();
@@ -50,6 +53,16 @@ public class DirectedGraph<V> {
 	protected void reset() {
 		this.forwardEdges = new HashMap<>();
 		this.backwardEdges = new HashMap<>();
+		invalidateClosures();
+	}
+	
+	/**
+	 * Specifies if the results of {@link #getAncestors(Object)} and {@link #getDescendants(Object)} are cached until this graph is modified
+	 * @param enabled true to cache the closures of each vertex
+	 */
+	public void setClosureCaching(boolean enabled) {
+		ancestorCache = enabled ? new HashMap<>() : null;
+		descendantCache = enabled ? new HashMap<>() : null;
 	}
 
 	/**
@@ -69,7 +82,9 @@ public class DirectedGraph<V> {
 	public void addEdge(V from, V to) {
 		addVertex(from);
 		addVertex(to);
-		forwardEdges.get(from).add(to);
+		if (forwardEdges.get(from).add(to)) {
+			invalidateClosures();
+		}
 		backwardEdges.get(to).add(from);
 	}
 	
@@ -78,10 +93,58 @@ public class DirectedGraph<V> {
 	 * @param vertex vertex to be removed
 	 */
 	public void removeVertex(V vertex) {
-		forwardEdges.forEach( (source, target) -> target.remove(vertex));
-		forwardEdges.remove(vertex);
-		backwardEdges.forEach( (source, target) -> target.remove(vertex));
-		backwardEdges.remove(vertex);
+		Set<V> successors = forwardEdges.remove(vertex);
+		Set<V> predecessors = backwardEdges.remove(vertex);
+		invalidateClosures();
+		if (successors != null) {
+			for (V successor : successors) {
+				Set<V> predecessorsOfSuccessor = backwardEdges.get(successor);
+				if (predecessorsOfSuccessor != null) {
+					predecessorsOfSuccessor.remove(vertex);
+				}
+			}
+		}
+		if (predecessors != null) {
+			for (V predecessor : predecessors) {
+				Set<V> successorsOfPredecessor = forwardEdges.get(predecessor);
+				if (successorsOfPredecessor != null) {
+					successorsOfPredecessor.remove(vertex);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Replaces a vertex by another one and keeps all its edges. 
+	 * This also exchanges the stored instance of a vertex by an equal one.
+	 * @param vertex the vertex to be replaced
+	 * @param replacement the new vertex, which must not be part of this graph unless it equals the replaced vertex
+	 */
+	public void replaceVertex(V vertex, V replacement) {
+		Set<V> successors = forwardEdges.remove(vertex);
+		Set<V> predecessors = backwardEdges.remove(vertex);
+		if (successors == null || predecessors == null) {
+			return;
+		}
+		invalidateClosures();
+		boolean selfLoop = successors.remove(vertex);
+		predecessors.remove(vertex);
+		for (V successor : successors) {
+			Set<V> predecessorsOfSuccessor = backwardEdges.get(successor);
+			predecessorsOfSuccessor.remove(vertex);
+			predecessorsOfSuccessor.add(replacement);
+		}
+		for (V predecessor : predecessors) {
+			Set<V> successorsOfPredecessor = forwardEdges.get(predecessor);
+			successorsOfPredecessor.remove(vertex);
+			successorsOfPredecessor.add(replacement);
+		}
+		if (selfLoop) {
+			successors.add(replacement);
+			predecessors.add(replacement);
+		}
+		forwardEdges.put(replacement, successors);
+		backwardEdges.put(replacement, predecessors);
 	}
 
 	/**
@@ -93,7 +156,9 @@ public class DirectedGraph<V> {
 		if (!(forwardEdges.containsKey(from) && backwardEdges.containsKey(to))) {
 			return;
 		}
-		forwardEdges.get(from).remove(to);
+		if (forwardEdges.get(from).remove(to)) {
+			invalidateClosures();
+		}
 		backwardEdges.get(to).remove(from);
 	}
 
@@ -101,6 +166,7 @@ public class DirectedGraph<V> {
 	 * Returns the vertices of this graph.
 	 * @return a set containing all vertices in this graph
 	 */
+	@Override
 	public Set<V> getVertices() {
 		return forwardEdges.keySet();
 	}
@@ -110,6 +176,7 @@ public class DirectedGraph<V> {
 	 * @param vertex the end vertex
 	 * @return the set of predecessors of the vertex
 	 */
+	@Override
 	public Set<V> getPredecessors(V vertex) {
 		return backwardEdges.get(vertex);
 	}
@@ -119,6 +186,7 @@ public class DirectedGraph<V> {
 	 * @param vertex the start vertex
 	 * @return the set successors of the vertex
 	 */
+	@Override
 	public Set<V> getSuccessors(V vertex) {
 		return forwardEdges.get(vertex);
 	}
@@ -128,6 +196,7 @@ public class DirectedGraph<V> {
 	 * Returns all vertices which haven't an predecessor
 	 * @return set of all roots in the graph
 	 */
+	@Override
 	public Set<V> getEntries() {
 		return getEntriesOrExits(true);
 	}
@@ -136,6 +205,7 @@ public class DirectedGraph<V> {
 	 * Returns all vertices which haven't an predecessor
 	 * @return set of all leafes in the graph
 	 */
+	@Override
 	public Set<V> getExits() {
 		return getEntriesOrExits(false);
 	}
@@ -161,6 +231,7 @@ public class DirectedGraph<V> {
 	 * @param vertex vertex whose presence in this graph is to be tested
 	 * @return true if this graph contains the specified vertex
 	 */
+	@Override
 	public boolean containsVertex(V vertex) {
 		return forwardEdges.containsKey(vertex);
 	}
@@ -171,6 +242,7 @@ public class DirectedGraph<V> {
 	 * @param to the end vertex of the edge whose presence in this graph is to be tested
 	 * @return true if this graph contains the specified edge
 	 */
+	@Override
 	public boolean containsEdge(V from, V to) {
 		return forwardEdges.containsKey(from) && forwardEdges.get(from).contains(to);
 	}
@@ -181,39 +253,51 @@ public class DirectedGraph<V> {
 	 * @param removes all node
 	 */
 	public void removeDisconnectedComponents(V connectedVertex, boolean keepUnreachableSiblings) {
-		Map<V, Boolean> discovered = discoverVertices(connectedVertex, keepUnreachableSiblings);
-		for (Map.Entry<V, Boolean> vertexDiscovered : discovered.entrySet()){
-			if (!vertexDiscovered.getValue()) {
-				removeVertex(vertexDiscovered.getKey());
+		Set<V> connected = getConnectedVertices(connectedVertex, keepUnreachableSiblings);
+		for (V vertex : new HashSet<>(getVertices())){
+			if (!connected.contains(vertex)) {
+				removeVertex(vertex);
 			}
 		}
 	}
 
-	private Map<V, Boolean> discoverVertices(V connectedVertex, boolean keepUnreachableSiblings) {
+	/**
+	 * Returns a read-only view of all vertices which are connected to the given vertex without copying or modifying this graph
+	 * @param connectedVertex the vertex which all other vertices are connected to
+	 * @param keepUnreachableSiblings if false, vertices which are only connected via a common ancestor are not included
+	 * @return the view of the connected component of the given vertex
+	 */
+	public SubgraphView<V> getConnectedSubgraph(V connectedVertex, boolean keepUnreachableSiblings) {
+		if (!containsVertex(connectedVertex)) {
+			return new SubgraphView<>(this, Collections.<V>emptySet());
+		}
+		return new SubgraphView<>(this, getConnectedVertices(connectedVertex, keepUnreachableSiblings));
+	}
+
+	/**
+	 * Collects all vertices which are connected to the given vertex without modifying this graph
+	 * @param connectedVertex the vertex which all other vertices are connected to
+	 * @param keepUnreachableSiblings if false, vertices which are only connected via a common ancestor are not included
+	 * @return the set of connected vertices including the given vertex
+	 */
+	public Set<V> getConnectedVertices(V connectedVertex, boolean keepUnreachableSiblings) {
 		// perform breadth-first-search on backwardEdges and forwardEdges
 		Queue<V> q = new LinkedList<>();
-		Map<V, Boolean> discovered = new HashMap<>();
-		for (V v : getVertices()) {
-			discovered.put(v, false);
-		}
-		discovered.put(connectedVertex, true);
+		Set<V> discovered = new HashSet<>();
+		discovered.add(connectedVertex);
 		if (!keepUnreachableSiblings) {
-			for (V p : findParentsOfVertex(connectedVertex)) {
-				discovered.put(p, true);
-			}
+			discovered.addAll(getAncestors(connectedVertex));
 		}
 		q.add(connectedVertex);
 		while (!q.isEmpty()) {
 			V v = q.poll();
 			for (V w : getPredecessors(v)) {
-				if (!discovered.get(w)) {
-					discovered.put(w, true);
+				if (discovered.add(w)) {
 					q.add(w);
 				}
 			}
 			for (V w : getSuccessors(v)) {
-				if (!discovered.get(w)) {
-					discovered.put(w, true);
+				if (discovered.add(w)) {
 					q.add(w);
 				}
 			}
@@ -221,44 +305,75 @@ public class DirectedGraph<V> {
 		return discovered;
 	}
 	
+	/**
+	 * Sorts the vertices of this graph so that every vertex is placed before its successors.
+	 * Vertices of a cycle are placed next to each other in arbitrary order.
+	 * @return the vertices in topological order
+	 */
 	public Deque<V> getTopologicalOrder() {
-		Deque<V> sorted = new LinkedList<>();
-		Map<V, Boolean> visited = new HashMap<>();
-		for (V v : getVertices()) {
-			visited.put(v, false);
-		}
-		
-		for (V v : getEntries()) {
-			if (!visited.get(v)) {
-				visitNode(v, visited, sorted);
-			}
-		}
-		return sorted;
+		return freeze().getTopologicalOrder();
 	}
-	
 
-	private void visitNode(V node, Map<V, Boolean> visited, Deque<V> sorted) {
-		visited.put(node, true);
-		for (V k : getSuccessors(node)) {
-			if (!visited.get(k)) {
-				visitNode(k, visited, sorted);
-			}
-		}
-		sorted.push(node);
+	/**
+	 * Creates an immutable compact copy of this graph which is faster to traverse
+	 * @return the frozen copy of this graph
+	 */
+	public CompactGraph<V> freeze() {
+		return CompactGraph.of(this);
 	}
 	
-	private Set<V> findParentsOfVertex(V vertex) {
-		Set<V> parents = new HashSet<>();
+	/**
+	 * Returns all vertices which have a path to the given vertex. 
+	 * Every vertex is visited once, so this also terminates if the graph contains cycles.
+	 * @param vertex the end vertex of all paths
+	 * @return the ancestors of the vertex, which only contain the vertex itself if it is part of a cycle
+	 */
+	public Set<V> getAncestors(V vertex) {
+		return getClosure(vertex, backwardEdges, ancestorCache);
+	}
+	
+	/**
+	 * Returns all vertices which can be reached from the given vertex. 
+	 * Every vertex is visited once, so this also terminates if the graph contains cycles.
+	 * @param vertex the start vertex of all paths
+	 * @return the descendants of the vertex, which only contain the vertex itself if it is part of a cycle
+	 */
+	public Set<V> getDescendants(V vertex) {
+		return getClosure(vertex, forwardEdges, descendantCache);
+	}
+	
+	private Set<V> getClosure(V vertex, Map<V, Set<V>> edges, Map<V, Set<V>> cache) {
+		if (cache != null) {
+			Set<V> cached = cache.get(vertex);
+			if (cached != null) {
+				return cached;
+			}
+		}
+		Set<V> closure = new HashSet<>();
 		Queue<V> queue = new LinkedList<>();
 		queue.add(vertex);
 		while (!queue.isEmpty()) {
-			V current = queue.poll();
-			Set<V> predecessors = getPredecessors(current);
-			if (!predecessors.isEmpty()) {
-				parents.addAll(predecessors);
-				queue.addAll(predecessors);
+			Set<V> adjacent = edges.get(queue.poll());
+			if (adjacent == null) {
+				continue;
+			}
+			for (V w : adjacent) {
+				if (closure.add(w)) {
+					queue.add(w);
+				}
 			}
 		}
-		return parents;
+		closure = Collections.unmodifiableSet(closure);
+		if (cache != null) {
+			cache.put(vertex, closure);
+		}
+		return closure;
+	}
+	
+	private void invalidateClosures() {
+		if (ancestorCache != null) {
+			ancestorCache.clear();
+			descendantCache.clear();
+		}
 	}
 }
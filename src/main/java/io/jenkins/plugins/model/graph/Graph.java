@@ -0,0 +1,81 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, Bachmann electronics GmbH, Ole Siemers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.model.graph;
+
+import java.util.Set;
+
+/**
+ * Read access to a directed graph
+ * @author OLSI
+ * @param <V> the type of the vertices
+ */
+public interface Graph<V> {
+
+	/**
+	 * Returns the vertices of this graph.
+	 * @return a set containing all vertices in this graph
+	 */
+	Set<V> getVertices();
+
+	/**
+	 * Returns the predecessors of a given vertex
+	 * @param vertex the end vertex
+	 * @return the set of predecessors of the vertex
+	 */
+	Set<V> getPredecessors(V vertex);
+
+	/**
+	 * Returns the successors of a given vertex
+	 * @param vertex the start vertex
+	 * @return the set successors of the vertex
+	 */
+	Set<V> getSuccessors(V vertex);
+
+	/**
+	 * Returns all vertices which haven't an predecessor
+	 * @return set of all roots in the graph
+	 */
+	Set<V> getEntries();
+
+	/**
+	 * Returns all vertices which haven't an successor
+	 * @return set of all leafes in the graph
+	 */
+	Set<V> getExits();
+
+	/**
+	 * Returns true if this graph contains the specified vertex.
+	 * @param vertex vertex whose presence in this graph is to be tested
+	 * @return true if this graph contains the specified vertex
+	 */
+	boolean containsVertex(V vertex);
+
+	/**
+	 * Returns true if this graph contains the specified edge
+	 * @param from the start vertex of edge whose presence in this graph is to be tested
+	 * @param to the end vertex of the edge whose presence in this graph is to be tested
+	 * @return true if this graph contains the specified edge
+	 */
+	boolean containsEdge(V from, V to);
+}
@@ -0,0 +1,531 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, Bachmann electronics GmbH, Ole Siemers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.model.graph;
+
+import java.util.Arrays;
+
+/**
+ * A layered drawing of a {@link CompactGraph} in the style of Sugiyama, Tagawa and Toda, which needs no external layout program.
+ * <ol>
+ * <li>Edges which lead against the topological order of the strongly connected components are reversed, so the graph becomes acyclic.</li>
+ * <li>Vertices are placed on the layer after their longest path from a source, and sources are moved next to their successors.</li>
+ * <li>Edges which span several layers are split by virtual vertices.</li>
+ * <li>Crossings are reduced by sweeps which sort every layer by the barycenters of the neighbours, keeping the order with the fewest crossings.</li>
+ * <li>Vertices are moved towards the mean position of their neighbours without overlapping the vertices next to them.</li>
+ * </ol>
+ * Coordinates are pixels with the layers from top to bottom or from left to right. Self loops are drawn beside their vertex.
+ * @author OLSI
+ */
+public final class LayeredLayout {
+
+	private static final int VERTEX_SPACING = 20;
+	private static final int LAYER_SPACING = 50;
+	private static final int MARGIN = 8;
+	private static final int LOOP_SIZE = 20;
+	private static final int SWEEPS = 24;
+	private static final int PLACEMENT_PASSES = 8;
+
+	/**
+	 * The maximum number of vertices and virtual vertices, since deep graphs with long edges need a virtual vertex per edge and layer
+	 */
+	public static final int MAX_VERTICES = 500000;
+
+	private final int[] x;
+	private final int[] y;
+	private final int[] edgeSources;
+	private final int[] edgeTargets;
+	private final int[][] edgePoints;
+	private final int width;
+	private final int height;
+	private final long crossings;
+
+	/**
+	 * Lays out a graph
+	 * @param graph the graph to draw
+	 * @param widths the width of every vertex by id
+	 * @param heights the height of every vertex by id
+	 * @param leftToRight true if the layers are placed from left to right, false if from top to bottom
+	 * @throws IllegalArgumentException if the layers need more than {@link #MAX_VERTICES} vertices
+	 */
+	public LayeredLayout(CompactGraph<?> graph, int[] widths, int[] heights, boolean leftToRight) {
+		int n = graph.getVertexCount();
+		// the extent of a vertex along its layer and across the layers
+		int[] alongLayer = leftToRight ? heights : widths;
+		int[] acrossLayers = leftToRight ? widths : heights;
+
+		int[] order = graph.topologicalOrder();
+		int[] position = new int[n];
+		for (int i = 0; i < n; i++) {
+			position[order[i]] = i;
+		}
+		int edgeCount = graph.getEdgeCount();
+		edgeSources = new int[edgeCount];
+		edgeTargets = new int[edgeCount];
+		int e = 0;
+		for (int v = 0; v < n; v++) {
+			for (int k = 0; k < graph.getOutDegree(v); k++) {
+				edgeSources[e] = v;
+				edgeTargets[e++] = graph.getSuccessor(v, k);
+			}
+		}
+
+		// 1. every edge is laid from the lower to the higher topological position
+		int[] laidFrom = new int[edgeCount];
+		int[] laidTo = new int[edgeCount];
+		int[] outOffsets = new int[n + 1];
+		int[] inDegree = new int[n];
+		for (e = 0; e < edgeCount; e++) {
+			boolean forward = position[edgeSources[e]] < position[edgeTargets[e]];
+			laidFrom[e] = forward ? edgeSources[e] : edgeTargets[e];
+			laidTo[e] = forward ? edgeTargets[e] : edgeSources[e];
+			if (laidFrom[e] != laidTo[e]) {
+				outOffsets[laidFrom[e] + 1]++;
+				inDegree[laidTo[e]]++;
+			}
+		}
+		for (int v = 0; v < n; v++) {
+			outOffsets[v + 1] += outOffsets[v];
+		}
+		int[] outEdges = new int[outOffsets[n]];
+		int[] fill = Arrays.copyOf(outOffsets, n);
+		for (e = 0; e < edgeCount; e++) {
+			if (laidFrom[e] != laidTo[e]) {
+				outEdges[fill[laidFrom[e]]++] = e;
+			}
+		}
+
+		// 2. longest path layering, then sources are pulled down to their successors
+		int[] layer = new int[n];
+		for (int i = 0; i < n; i++) {
+			int v = order[i];
+			for (int k = outOffsets[v]; k < outOffsets[v + 1]; k++) {
+				int w = laidTo[outEdges[k]];
+				layer[w] = Math.max(layer[w], layer[v] + 1);
+			}
+		}
+		for (int i = n - 1; i >= 0; i--) {
+			int v = order[i];
+			if (inDegree[v] == 0 && outOffsets[v + 1] > outOffsets[v]) {
+				int lowest = Integer.MAX_VALUE;
+				for (int k = outOffsets[v]; k < outOffsets[v + 1]; k++) {
+					lowest = Math.min(lowest, layer[laidTo[outEdges[k]]]);
+				}
+				layer[v] = lowest - 1;
+			}
+		}
+
+		// 3. virtual vertices on every layer between the ends of a long edge
+		int nodeCount = n;
+		int[] chainOffsets = new int[edgeCount + 1];
+		for (e = 0; e < edgeCount; e++) {
+			int span = laidFrom[e] == laidTo[e] ? 0 : layer[laidTo[e]] - layer[laidFrom[e]];
+			chainOffsets[e + 1] = chainOffsets[e] + span + 1;
+			nodeCount += Math.max(0, span - 1);
+			if (nodeCount > MAX_VERTICES) {
+				throw new IllegalArgumentException("the layers of the graph need more than " + MAX_VERTICES + " vertices");
+			}
+		}
+		int[] chains = new int[chainOffsets[edgeCount]];
+		int[] nodeLayer = Arrays.copyOf(layer, nodeCount);
+		int[] segmentUpper = new int[chains.length];
+		int[] segmentLower = new int[chains.length];
+		int segmentCount = 0;
+		int nextNode = n;
+		for (e = 0; e < edgeCount; e++) {
+			int start = chainOffsets[e];
+			int length = chainOffsets[e + 1] - start;
+			chains[start] = laidFrom[e];
+			for (int k = 1; k < length - 1; k++) {
+				nodeLayer[nextNode] = layer[laidFrom[e]] + k;
+				chains[start + k] = nextNode++;
+			}
+			if (length > 1) {
+				chains[start + length - 1] = laidTo[e];
+			}
+			for (int k = 0; k + 1 < length; k++) {
+				segmentUpper[segmentCount] = chains[start + k];
+				segmentLower[segmentCount++] = chains[start + k + 1];
+			}
+		}
+		int[] upOffsets = new int[nodeCount + 1];
+		int[] downOffsets = new int[nodeCount + 1];
+		for (int s = 0; s < segmentCount; s++) {
+			upOffsets[segmentLower[s] + 1]++;
+			downOffsets[segmentUpper[s] + 1]++;
+		}
+		for (int v = 0; v < nodeCount; v++) {
+			upOffsets[v + 1] += upOffsets[v];
+			downOffsets[v + 1] += downOffsets[v];
+		}
+		int[] up = new int[segmentCount];
+		int[] down = new int[segmentCount];
+		int[] upFill = Arrays.copyOf(upOffsets, nodeCount);
+		int[] downFill = Arrays.copyOf(downOffsets, nodeCount);
+		for (int s = 0; s < segmentCount; s++) {
+			up[upFill[segmentLower[s]]++] = segmentUpper[s];
+			down[downFill[segmentUpper[s]]++] = segmentLower[s];
+		}
+
+		// 4. the layers start in topological order and are sorted by barycenters
+		int layerCount = 0;
+		for (int v = 0; v < nodeCount; v++) {
+			layerCount = Math.max(layerCount, nodeLayer[v] + 1);
+		}
+		int[] layerSizes = new int[layerCount];
+		for (int v = 0; v < nodeCount; v++) {
+			layerSizes[nodeLayer[v]]++;
+		}
+		int[][] layers = new int[layerCount][];
+		for (int l = 0; l < layerCount; l++) {
+			layers[l] = new int[layerSizes[l]];
+			layerSizes[l] = 0;
+		}
+		for (int i = 0; i < n; i++) {
+			int v = order[i];
+			layers[layer[v]][layerSizes[layer[v]]++] = v;
+		}
+		for (int v = n; v < nodeCount; v++) {
+			layers[nodeLayer[v]][layerSizes[nodeLayer[v]]++] = v;
+		}
+		int[] indexInLayer = new int[nodeCount];
+		updateIndices(layers, indexInLayer);
+		long bestCrossings = countCrossings(layers, indexInLayer, downOffsets, down);
+		int[][] best = copy(layers);
+		for (int sweep = 0; sweep < SWEEPS && bestCrossings > 0; sweep++) {
+			boolean downwards = sweep % 2 == 0;
+			for (int i = 1; i < layerCount; i++) {
+				int l = downwards ? i : layerCount - 1 - i;
+				sortByBarycenter(layers[l], indexInLayer, downwards ? upOffsets : downOffsets, downwards ? up : down);
+			}
+			long current = countCrossings(layers, indexInLayer, downOffsets, down);
+			if (current < bestCrossings) {
+				bestCrossings = current;
+				best = copy(layers);
+			}
+		}
+		layers = best;
+		updateIndices(layers, indexInLayer);
+		crossings = bestCrossings;
+
+		// 5. positions along the layers
+		double[] along = new double[nodeCount];
+		for (int[] nodes : layers) {
+			double next = 0;
+			for (int v : nodes) {
+				double extent = v < n ? alongLayer[v] : 0;
+				along[v] = next + extent / 2;
+				next += extent + VERTEX_SPACING;
+			}
+		}
+		for (int pass = 0; pass < PLACEMENT_PASSES; pass++) {
+			boolean downwards = pass % 2 == 0;
+			for (int i = 1; i < layerCount; i++) {
+				int l = downwards ? i : layerCount - 1 - i;
+				place(layers[l], along, alongLayer, n, downwards ? upOffsets : downOffsets, downwards ? up : down);
+			}
+		}
+		double minimum = Double.MAX_VALUE;
+		for (int v = 0; v < nodeCount; v++) {
+			minimum = Math.min(minimum, along[v] - (v < n ? alongLayer[v] / 2.0 : 0));
+		}
+		int[] layerCenters = new int[layerCount];
+		int next = MARGIN;
+		for (int l = 0; l < layerCount; l++) {
+			int thickness = 0;
+			for (int v : layers[l]) {
+				thickness = Math.max(thickness, v < n ? acrossLayers[v] : 0);
+			}
+			layerCenters[l] = next + thickness / 2;
+			next += thickness + LAYER_SPACING;
+		}
+
+		int[] a = new int[nodeCount];
+		for (int v = 0; v < nodeCount; v++) {
+			a[v] = (int) Math.round(along[v] - minimum) + MARGIN;
+		}
+		x = new int[n];
+		y = new int[n];
+		for (int v = 0; v < n; v++) {
+			x[v] = leftToRight ? layerCenters[layer[v]] : a[v];
+			y[v] = leftToRight ? a[v] : layerCenters[layer[v]];
+		}
+
+		edgePoints = new int[edgeCount][];
+		for (e = 0; e < edgeCount; e++) {
+			int from = laidFrom[e];
+			int to = laidTo[e];
+			int[] points;
+			if (from == to) {
+				// a loop on the far side of the vertex along its layer
+				int side = a[from] + alongLayer[from] / 2;
+				int center = layerCenters[layer[from]];
+				int quarter = Math.max(1, acrossLayers[from] / 4);
+				points = new int[] {side, center - quarter, side + LOOP_SIZE, center - quarter, side + LOOP_SIZE, center + quarter, side, center + quarter};
+			} else {
+				int start = chainOffsets[e];
+				int length = chainOffsets[e + 1] - start;
+				points = new int[2 * length];
+				points[0] = a[from];
+				points[1] = layerCenters[layer[from]] + acrossLayers[from] / 2;
+				for (int k = 1; k < length - 1; k++) {
+					int node = chains[start + k];
+					points[2 * k] = a[node];
+					points[2 * k + 1] = layerCenters[nodeLayer[node]];
+				}
+				points[2 * length - 2] = a[to];
+				points[2 * length - 1] = layerCenters[layer[to]] - acrossLayers[to] / 2;
+				if (from != edgeSources[e]) {
+					reverse(points);
+				}
+			}
+			if (leftToRight) {
+				for (int k = 0; k < points.length; k += 2) {
+					int swap = points[k];
+					points[k] = points[k + 1];
+					points[k + 1] = swap;
+				}
+			}
+			edgePoints[e] = points;
+		}
+
+		int right = 0;
+		int bottom = 0;
+		for (int v = 0; v < n; v++) {
+			right = Math.max(right, x[v] + widths[v] / 2);
+			bottom = Math.max(bottom, y[v] + heights[v] / 2);
+		}
+		for (int[] points : edgePoints) {
+			for (int k = 0; k < points.length; k += 2) {
+				right = Math.max(right, points[k]);
+				bottom = Math.max(bottom, points[k + 1]);
+			}
+		}
+		width = right + MARGIN;
+		height = bottom + MARGIN;
+	}
+
+	private static void updateIndices(int[][] layers, int[] indexInLayer) {
+		for (int[] nodes : layers) {
+			for (int i = 0; i < nodes.length; i++) {
+				indexInLayer[nodes[i]] = i;
+			}
+		}
+	}
+
+	private static int[][] copy(int[][] layers) {
+		int[][] copy = new int[layers.length][];
+		for (int l = 0; l < layers.length; l++) {
+			copy[l] = layers[l].clone();
+		}
+		return copy;
+	}
+
+	/**
+	 * Sorts a layer by the mean index of the neighbours in the adjacent layer. A vertex without neighbours keeps its index.
+	 */
+	private static void sortByBarycenter(int[] nodes, int[] indexInLayer, int[] offsets, int[] neighbours) {
+		long[] keys = new long[nodes.length];
+		for (int i = 0; i < nodes.length; i++) {
+			int v = nodes[i];
+			int degree = offsets[v + 1] - offsets[v];
+			long barycenter;
+			if (degree == 0) {
+				barycenter = (long) indexInLayer[v] << 10;
+			} else {
+				long sum = 0;
+				for (int k = offsets[v]; k < offsets[v + 1]; k++) {
+					sum += indexInLayer[neighbours[k]];
+				}
+				barycenter = (sum << 10) / degree;
+			}
+			// the index breaks ties, so the sort is stable
+			keys[i] = barycenter << 21 | i;
+		}
+		Arrays.sort(keys);
+		int[] sorted = new int[nodes.length];
+		for (int i = 0; i < nodes.length; i++) {
+			sorted[i] = nodes[(int) (keys[i] & ((1 << 21) - 1))];
+		}
+		for (int i = 0; i < nodes.length; i++) {
+			nodes[i] = sorted[i];
+			indexInLayer[sorted[i]] = i;
+		}
+	}
+
+	/**
+	 * Counts the crossings between all adjacent layers by counting inversions with a Fenwick tree
+	 */
+	private static long countCrossings(int[][] layers, int[] indexInLayer, int[] downOffsets, int[] down) {
+		long count = 0;
+		for (int l = 0; l + 1 < layers.length; l++) {
+			long[] tree = new long[layers[l + 1].length + 1];
+			long inserted = 0;
+			for (int u : layers[l]) {
+				int degree = downOffsets[u + 1] - downOffsets[u];
+				int[] lower = new int[degree];
+				for (int k = 0; k < degree; k++) {
+					lower[k] = indexInLayer[down[downOffsets[u] + k]];
+				}
+				Arrays.sort(lower);
+				for (int p : lower) {
+					// edges of earlier vertices which end right of this edge cross it
+					long notRight = 0;
+					for (int i = p + 1; i > 0; i -= i & -i) {
+						notRight += tree[i];
+					}
+					count += inserted - notRight;
+				}
+				for (int p : lower) {
+					for (int i = p + 1; i < tree.length; i += i & -i) {
+						tree[i]++;
+					}
+					inserted++;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Moves the vertices of a layer towards the mean position of their neighbours. 
+	 * The positions are packed to the left and to the right without overlaps, and the mean of both is taken.
+	 */
+	private static void place(int[] nodes, double[] along, int[] alongLayer, int n, int[] offsets, int[] neighbours) {
+		int size = nodes.length;
+		if (size == 0) {
+			return;
+		}
+		double[] desired = new double[size];
+		for (int i = 0; i < size; i++) {
+			int v = nodes[i];
+			int degree = offsets[v + 1] - offsets[v];
+			if (degree == 0) {
+				desired[i] = along[v];
+			} else {
+				double sum = 0;
+				for (int k = offsets[v]; k < offsets[v + 1]; k++) {
+					sum += along[neighbours[k]];
+				}
+				desired[i] = sum / degree;
+			}
+		}
+		double[] left = new double[size];
+		double[] right = new double[size];
+		left[0] = desired[0];
+		for (int i = 1; i < size; i++) {
+			left[i] = Math.max(desired[i], left[i - 1] + separation(nodes[i - 1], nodes[i], alongLayer, n));
+		}
+		right[size - 1] = desired[size - 1];
+		for (int i = size - 2; i >= 0; i--) {
+			right[i] = Math.min(desired[i], right[i + 1] - separation(nodes[i], nodes[i + 1], alongLayer, n));
+		}
+		for (int i = 0; i < size; i++) {
+			along[nodes[i]] = (left[i] + right[i]) / 2;
+		}
+	}
+
+	private static double separation(int v, int w, int[] alongLayer, int n) {
+		return (v < n ? alongLayer[v] / 2.0 : 0) + VERTEX_SPACING + (w < n ? alongLayer[w] / 2.0 : 0);
+	}
+
+	private static void reverse(int[] points) {
+		for (int i = 0, j = points.length - 2; i < j; i += 2, j -= 2) {
+			int px = points[i];
+			int py = points[i + 1];
+			points[i] = points[j];
+			points[i + 1] = points[j + 1];
+			points[j] = px;
+			points[j + 1] = py;
+		}
+	}
+
+	/**
+	 * @return the width of the drawing including its margin
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * @return the height of the drawing including its margin
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @param vertex the id of a vertex
+	 * @return the horizontal center of the vertex
+	 */
+	public int getX(int vertex) {
+		return x[vertex];
+	}
+
+	/**
+	 * @param vertex the id of a vertex
+	 * @return the vertical center of the vertex
+	 */
+	public int getY(int vertex) {
+		return y[vertex];
+	}
+
+	/**
+	 * @return the number of edges, which are numbered by their source and their index among its successors
+	 */
+	public int getEdgeCount() {
+		return edgeSources.length;
+	}
+
+	/**
+	 * @param edge the number of an edge
+	 * @return the id of the source vertex of the edge
+	 */
+	public int getEdgeSource(int edge) {
+		return edgeSources[edge];
+	}
+
+	/**
+	 * @param edge the number of an edge
+	 * @return the id of the target vertex of the edge
+	 */
+	public int getEdgeTarget(int edge) {
+		return edgeTargets[edge];
+	}
+
+	/**
+	 * The line of an edge starts at the border of its source and ends at the border of its target
+	 * @param edge the number of an edge
+	 * @return the coordinates of the points of the line as x and y pairs
+	 */
+	public int[] getEdgePoints(int edge) {
+		return edgePoints[edge].clone();
+	}
+
+	/**
+	 * @return the number of edge crossings between adjacent layers
+	 */
+	public long getCrossingCount() {
+		return crossings;
+	}
+}
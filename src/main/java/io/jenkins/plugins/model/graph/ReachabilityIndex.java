@@ -0,0 +1,266 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, Bachmann electronics GmbH, Ole Siemers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.model.graph;
+
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A precomputed transitive closure of a {@link CompactGraph} which answers reachability queries without traversing the graph.
+ * The closure is stored per strongly connected component of the graph as a bitset over the components. 
+ * Since components are numbered in topological order, the descendants of a component only have higher
+ * and its ancestors only lower numbers, so every bitset is stored starting at the first word which contains a set bit.
+ * The index is immutable and has to be rebuilt if the graph changes.
+ * @author OLSI
+ * @param <V> the type of the vertices
+ */
+public final class ReachabilityIndex<V> {
+
+	private final CompactGraph<V> graph;
+	private final StronglyConnectedComponents components;
+	private final int[] descendantOffsets;
+	private final long[][] descendantWords;
+	private final int[] ancestorOffsets;
+	private final long[][] ancestorWords;
+
+	public ReachabilityIndex(CompactGraph<V> graph) {
+		this.graph = graph;
+		this.components = graph.getStronglyConnectedComponents();
+		int n = components.getComponentCount();
+		int words = (n + 63) >>> 6;
+		descendantOffsets = new int[n];
+		descendantWords = new long[n][];
+		ancestorOffsets = new int[n];
+		ancestorWords = new long[n][];
+		long[][] ancestors = new long[n][];
+		// descendants of a component are the union of its successors and their descendants
+		long[] bits = new long[words];
+		for (int c = n - 1; c >= 0; c--) {
+			int first = (c + 1) >>> 6;
+			for (int i = first; i < words; i++) {
+				bits[i] = 0;
+			}
+			for (int i = 0; i < components.getOutDegree(c); i++) {
+				int s = components.getSuccessor(c, i);
+				bits[s >>> 6] |= 1L << s;
+				long[] successorWords = descendantWords[s];
+				int offset = descendantOffsets[s];
+				for (int w = 0; w < successorWords.length; w++) {
+					bits[offset + w] |= successorWords[w];
+				}
+			}
+			store(bits, first, words, c, descendantOffsets, descendantWords);
+		}
+		// ancestors are propagated forward, every predecessor of a component is complete before the component itself
+		for (int c = 0; c < n; c++) {
+			long[] own = ancestors[c] != null ? ancestors[c] : new long[0];
+			for (int i = 0; i < components.getOutDegree(c); i++) {
+				int s = components.getSuccessor(c, i);
+				if (ancestors[s] == null) {
+					ancestors[s] = new long[(s + 63) >>> 6];
+				}
+				long[] successorWords = ancestors[s];
+				successorWords[c >>> 6] |= 1L << c;
+				for (int w = 0; w < own.length; w++) {
+					successorWords[w] |= own[w];
+				}
+			}
+			store(own, 0, own.length, c, ancestorOffsets, ancestorWords);
+			ancestors[c] = null;
+		}
+	}
+
+	private static void store(long[] bits, int from, int to, int component, int[] offsets, long[][] words) {
+		while (from < to && bits[from] == 0) {
+			from++;
+		}
+		while (to > from && bits[to - 1] == 0) {
+			to--;
+		}
+		long[] compressed = new long[to - from];
+		System.arraycopy(bits, from, compressed, 0, compressed.length);
+		offsets[component] = from;
+		words[component] = compressed;
+	}
+
+	private static boolean isSet(int[] offsets, long[][] words, int component, int bit) {
+		int w = (bit >>> 6) - offsets[component];
+		return w >= 0 && w < words[component].length && (words[component][w] & (1L << bit)) != 0;
+	}
+
+	/**
+	 * @return the graph this index was built for
+	 */
+	public CompactGraph<V> getGraph() {
+		return graph;
+	}
+
+	/**
+	 * Checks if there is a path of at least one edge between two vertices. 
+	 * A vertex can only reach itself if it is part of a cycle.
+	 * @param from the start vertex of the path
+	 * @param to the end vertex of the path
+	 * @return true if the end vertex can be reached from the start vertex
+	 */
+	public boolean isReachable(V from, V to) {
+		int a = graph.indexOf(from);
+		int b = graph.indexOf(to);
+		if (a < 0 || b < 0) {
+			return false;
+		}
+		int ca = components.getComponent(a);
+		int cb = components.getComponent(b);
+		if (ca == cb) {
+			return components.isCyclic(ca);
+		}
+		return isSet(descendantOffsets, descendantWords, ca, cb);
+	}
+
+	/**
+	 * Get all vertices which can be reached from the given vertex. The returned set is a view on this index, 
+	 * so checking if it contains a vertex takes constant time.
+	 * @param vertex the start vertex of all paths
+	 * @return the descendants of the vertex, which only contain the vertex itself if it is part of a cycle
+	 */
+	public Set<V> getDescendants(V vertex) {
+		int id = graph.indexOf(vertex);
+		if (id < 0) {
+			return Collections.emptySet();
+		}
+		int c = components.getComponent(id);
+		return new ComponentSet(descendantOffsets[c], descendantWords[c], components.isCyclic(c) ? c : -1);
+	}
+
+	/**
+	 * Get all vertices from which the given vertex can be reached. The returned set is a view on this index, 
+	 * so checking if it contains a vertex takes constant time.
+	 * @param vertex the end vertex of all paths
+	 * @return the ancestors of the vertex, which only contain the vertex itself if it is part of a cycle
+	 */
+	public Set<V> getAncestors(V vertex) {
+		int id = graph.indexOf(vertex);
+		if (id < 0) {
+			return Collections.emptySet();
+		}
+		int c = components.getComponent(id);
+		return new ComponentSet(ancestorOffsets[c], ancestorWords[c], components.isCyclic(c) ? c : -1);
+	}
+
+	/**
+	 * The vertices of all components in a bitset and optionally of one more component
+	 */
+	private class ComponentSet extends AbstractSet<V> {
+
+		private final int offset;
+		private final long[] words;
+		private final int ownComponent;
+		private final int size;
+
+		ComponentSet(int offset, long[] words, int ownComponent) {
+			this.offset = offset;
+			this.words = words;
+			this.ownComponent = ownComponent;
+			int count = ownComponent >= 0 ? components.getSize(ownComponent) : 0;
+			for (int c = nextComponent(0); c >= 0; c = nextComponent(c + 1)) {
+				count += components.getSize(c);
+			}
+			this.size = count;
+		}
+
+		private boolean containsComponent(int c) {
+			if (c == ownComponent) {
+				return true;
+			}
+			int w = (c >>> 6) - offset;
+			return w >= 0 && w < words.length && (words[w] & (1L << c)) != 0;
+		}
+
+		/**
+		 * @return the lowest contained component which is at least the given one, or -1
+		 */
+		private int nextComponent(int from) {
+			int w = Math.max((from >>> 6) - offset, 0);
+			if (w >= words.length) {
+				return -1;
+			}
+			long word = from >>> 6 == w + offset ? words[w] & (-1L << from) : words[w];
+			while (true) {
+				if (word != 0) {
+					return ((w + offset) << 6) + Long.numberOfTrailingZeros(word);
+				}
+				if (++w == words.length) {
+					return -1;
+				}
+				word = words[w];
+			}
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public boolean contains(Object o) {
+			int id = graph.indexOf((V)o);
+			return id >= 0 && containsComponent(components.getComponent(id));
+		}
+
+		@Override
+		public Iterator<V> iterator() {
+			return new Iterator<V>() {
+				private int component = ownComponent >= 0 ? ownComponent : nextComponent(0);
+				private boolean ownVisited = ownComponent < 0;
+				private int member = 0;
+
+				@Override
+				public boolean hasNext() {
+					return component >= 0;
+				}
+
+				@Override
+				public V next() {
+					if (component < 0) {
+						throw new NoSuchElementException();
+					}
+					V vertex = graph.getVertex(components.getMember(component, member++));
+					if (member == components.getSize(component)) {
+						member = 0;
+						int from = ownVisited ? component + 1 : 0;
+						ownVisited = true;
+						component = nextComponent(from);
+						if (component >= 0 && component == ownComponent) {
+							component = nextComponent(component + 1);
+						}
+					}
+					return vertex;
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,205 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, Bachmann electronics GmbH, Ole Siemers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.model.graph;
+
+import java.util.Arrays;
+
+/**
+ * The strongly connected components of a {@link CompactGraph} and the acyclic graph which results from 
+ * condensing every component into a single vertex.
+ * The components are computed by an iterative version of Tarjan's algorithm, so deep graphs cannot overflow the stack.
+ * Components are numbered in topological order: every edge between two components leads from a lower to a higher number.
+ * @author OLSI
+ */
+public final class StronglyConnectedComponents {
+
+	private final int[] componentOf;
+	private final int[] memberOffsets;
+	private final int[] members;
+	private final boolean[] cyclic;
+	private final int[] condensedOffsets;
+	private final int[] condensedTargets;
+
+	StronglyConnectedComponents(CompactGraph<?> graph) {
+		int n = graph.getVertexCount();
+		componentOf = new int[n];
+		int[] index = new int[n];
+		int[] lowlink = new int[n];
+		boolean[] onStack = new boolean[n];
+		int[] stack = new int[n];
+		int[] callStack = new int[n];
+		int[] nextEdge = new int[n];
+		Arrays.fill(index, -1);
+		int counter = 0;
+		int stackSize = 0;
+		int componentCount = 0;
+		for (int root = 0; root < n; root++) {
+			if (index[root] >= 0) {
+				continue;
+			}
+			int top = 0;
+			callStack[0] = root;
+			nextEdge[0] = 0;
+			index[root] = lowlink[root] = counter++;
+			stack[stackSize++] = root;
+			onStack[root] = true;
+			while (top >= 0) {
+				int v = callStack[top];
+				if (nextEdge[top] < graph.getOutDegree(v)) {
+					int w = graph.getSuccessor(v, nextEdge[top]++);
+					if (index[w] < 0) {
+						index[w] = lowlink[w] = counter++;
+						stack[stackSize++] = w;
+						onStack[w] = true;
+						callStack[++top] = w;
+						nextEdge[top] = 0;
+					} else if (onStack[w]) {
+						lowlink[v] = Math.min(lowlink[v], index[w]);
+					}
+				} else {
+					if (lowlink[v] == index[v]) {
+						int w;
+						do {
+							w = stack[--stackSize];
+							onStack[w] = false;
+							componentOf[w] = componentCount;
+						} while (w != v);
+						componentCount++;
+					}
+					top--;
+					if (top >= 0) {
+						int parent = callStack[top];
+						lowlink[parent] = Math.min(lowlink[parent], lowlink[v]);
+					}
+				}
+			}
+		}
+		
+		// Tarjan's algorithm finds the components in reverse topological order
+		memberOffsets = new int[componentCount + 1];
+		for (int v = 0; v < n; v++) {
+			componentOf[v] = componentCount - 1 - componentOf[v];
+			memberOffsets[componentOf[v] + 1]++;
+		}
+		for (int c = 0; c < componentCount; c++) {
+			memberOffsets[c + 1] += memberOffsets[c];
+		}
+		members = new int[n];
+		int[] fill = Arrays.copyOf(memberOffsets, componentCount);
+		for (int v = 0; v < n; v++) {
+			members[fill[componentOf[v]]++] = v;
+		}
+		
+		cyclic = new boolean[componentCount];
+		condensedOffsets = new int[componentCount + 1];
+		int[] targets = new int[graph.getEdgeCount()];
+		int[] lastSource = new int[componentCount];
+		Arrays.fill(lastSource, -1);
+		int edgeCount = 0;
+		for (int c = 0; c < componentCount; c++) {
+			cyclic[c] = getSize(c) > 1;
+			for (int m = memberOffsets[c]; m < memberOffsets[c + 1]; m++) {
+				int v = members[m];
+				for (int e = 0; e < graph.getOutDegree(v); e++) {
+					int target = componentOf[graph.getSuccessor(v, e)];
+					if (target == c) {
+						cyclic[c] = true;
+					} else if (lastSource[target] != c) {
+						lastSource[target] = c;
+						targets[edgeCount++] = target;
+					}
+				}
+			}
+			Arrays.sort(targets, condensedOffsets[c], edgeCount);
+			condensedOffsets[c + 1] = edgeCount;
+		}
+		condensedTargets = Arrays.copyOf(targets, edgeCount);
+	}
+
+	/**
+	 * @return the number of strongly connected components
+	 */
+	public int getComponentCount() {
+		return cyclic.length;
+	}
+
+	/**
+	 * @param vertex the id of a vertex
+	 * @return the number of the component which contains the vertex
+	 */
+	public int getComponent(int vertex) {
+		return componentOf[vertex];
+	}
+
+	/**
+	 * @param component the number of a component
+	 * @return the number of vertices in the component
+	 */
+	public int getSize(int component) {
+		return memberOffsets[component + 1] - memberOffsets[component];
+	}
+
+	/**
+	 * @param component the number of a component
+	 * @param index the index of the member between 0 and the size of the component
+	 * @return the id of the vertex
+	 */
+	public int getMember(int component, int index) {
+		return members[memberOffsets[component] + index];
+	}
+
+	/**
+	 * A component is cyclic if it contains more than one vertex or a vertex with an edge to itself
+	 * @param component the number of a component
+	 * @return true if the vertices of the component are part of a cycle
+	 */
+	public boolean isCyclic(int component) {
+		return cyclic[component];
+	}
+
+	/**
+	 * @param component the number of a component
+	 * @return the number of distinct components which are reached by edges of this component
+	 */
+	public int getOutDegree(int component) {
+		return condensedOffsets[component + 1] - condensedOffsets[component];
+	}
+
+	/**
+	 * @param component the number of a component
+	 * @param index the index of the condensed edge between 0 and the out-degree of the component
+	 * @return the number of the successor component, which is always higher than the given number
+	 */
+	public int getSuccessor(int component, int index) {
+		return condensedTargets[condensedOffsets[component] + index];
+	}
+
+	/**
+	 * Sorts all vertices so that every vertex is placed before its successors unless both are part of the same cycle
+	 * @return the ids of all vertices ordered by their components
+	 */
+	public int[] topologicalOrder() {
+		return members.clone();
+	}
+}
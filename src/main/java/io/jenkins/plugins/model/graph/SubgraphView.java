@@ -0,0 +1,168 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, Bachmann electronics GmbH, Ole Siemers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.model.graph;
+
+import java.util.AbstractSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Read-only view of a part of a graph. 
+ * The view only stores the set of its vertices, all edges are read from the underlying graph.
+ * The vertices and adjacent vertices are returned as live views, which are filtered while they are read instead of being copied.
+ * @author OLSI
+ * @param <V> the type of the vertices
+ */
+public class SubgraphView<V> implements Graph<V> {
+
+	private final Graph<V> graph;
+	private final Set<V> vertices;
+
+	/**
+	 * @param graph the underlying graph
+	 * @param vertices the vertices of the underlying graph which are visible in this view
+	 */
+	public SubgraphView(Graph<V> graph, Set<V> vertices) {
+		this.graph = graph;
+		this.vertices = vertices;
+	}
+
+	@Override
+	public Set<V> getVertices() {
+		return new FilteredSet<>(vertices, graph::containsVertex);
+	}
+
+	@Override
+	public Set<V> getPredecessors(V vertex) {
+		return containsVertex(vertex) ? new FilteredSet<>(graph.getPredecessors(vertex), vertices::contains) : null;
+	}
+
+	@Override
+	public Set<V> getSuccessors(V vertex) {
+		return containsVertex(vertex) ? new FilteredSet<>(graph.getSuccessors(vertex), vertices::contains) : null;
+	}
+
+	@Override
+	public Set<V> getEntries() {
+		Set<V> entries = new HashSet<>();
+		for (V vertex : getVertices()) {
+			if (getPredecessors(vertex).isEmpty()) {
+				entries.add(vertex);
+			}
+		}
+		return entries;
+	}
+
+	@Override
+	public Set<V> getExits() {
+		Set<V> exits = new HashSet<>();
+		for (V vertex : getVertices()) {
+			if (getSuccessors(vertex).isEmpty()) {
+				exits.add(vertex);
+			}
+		}
+		return exits;
+	}
+
+	@Override
+	public boolean containsVertex(V vertex) {
+		return vertices.contains(vertex) && graph.containsVertex(vertex);
+	}
+
+	@Override
+	public boolean containsEdge(V from, V to) {
+		return containsVertex(from) && containsVertex(to) && graph.containsEdge(from, to);
+	}
+
+	/**
+	 * Unmodifiable view of the elements of a set which match a condition. Its size is counted on every call.
+	 */
+	private static final class FilteredSet<E> extends AbstractSet<E> {
+
+		private final Set<E> elements;
+		private final Predicate<? super E> visible;
+
+		FilteredSet(Set<E> elements, Predicate<? super E> visible) {
+			this.elements = elements;
+			this.visible = visible;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public boolean contains(Object element) {
+			// an element of the set has its type
+			return elements.contains(element) && visible.test((E) element);
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return !iterator().hasNext();
+		}
+
+		@Override
+		public int size() {
+			int size = 0;
+			for (E element : elements) {
+				if (visible.test(element)) {
+					size++;
+				}
+			}
+			return size;
+		}
+
+		@Override
+		public Iterator<E> iterator() {
+			Iterator<E> all = elements.iterator();
+			return new Iterator<E>() {
+
+				private E next;
+				private boolean hasNext;
+
+				@Override
+				public boolean hasNext() {
+					while (!hasNext && all.hasNext()) {
+						E element = all.next();
+						if (visible.test(element)) {
+							next = element;
+							hasNext = true;
+						}
+					}
+					return hasNext;
+				}
+
+				@Override
+				public E next() {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					hasNext = false;
+					return next;
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,131 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, Bachmann electronics GmbH, Ole Siemers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.model.graph;
+
+import java.util.Arrays;
+
+/**
+ * The weakly connected components of a {@link CompactGraph}, which are the parts of the graph that are not connected 
+ * by any edge regardless of its direction. They are found by a union-find over all edges in almost linear time.
+ * Components are numbered in the order of their lowest vertex id, and the members of a component are ordered by their id.
+ * @author OLSI
+ */
+public final class WeaklyConnectedComponents {
+
+	private final int[] componentOf;
+	private final int[] memberOffsets;
+	private final int[] members;
+
+	WeaklyConnectedComponents(CompactGraph<?> graph) {
+		int n = graph.getVertexCount();
+		int[] parent = new int[n];
+		int[] size = new int[n];
+		for (int v = 0; v < n; v++) {
+			parent[v] = v;
+			size[v] = 1;
+		}
+		for (int v = 0; v < n; v++) {
+			for (int i = 0; i < graph.getOutDegree(v); i++) {
+				int a = find(parent, v);
+				int b = find(parent, graph.getSuccessor(v, i));
+				if (a != b) {
+					// the smaller tree is attached to the larger one, so the trees stay flat
+					if (size[a] < size[b]) {
+						int swap = a;
+						a = b;
+						b = swap;
+					}
+					parent[b] = a;
+					size[a] += size[b];
+				}
+			}
+		}
+		componentOf = new int[n];
+		// numbers are assigned when the lowest member of a component is reached
+		int[] componentOfRoot = new int[n];
+		Arrays.fill(componentOfRoot, -1);
+		int componentCount = 0;
+		int[] counts = new int[n + 1];
+		for (int v = 0; v < n; v++) {
+			int root = find(parent, v);
+			if (componentOfRoot[root] < 0) {
+				componentOfRoot[root] = componentCount++;
+			}
+			componentOf[v] = componentOfRoot[root];
+			counts[componentOf[v] + 1]++;
+		}
+		memberOffsets = new int[componentCount + 1];
+		for (int c = 0; c < componentCount; c++) {
+			memberOffsets[c + 1] = memberOffsets[c] + counts[c + 1];
+		}
+		members = new int[n];
+		int[] next = Arrays.copyOf(memberOffsets, componentCount);
+		for (int v = 0; v < n; v++) {
+			members[next[componentOf[v]]++] = v;
+		}
+	}
+
+	/**
+	 * Finds the root of the tree of a vertex and halves the path to it
+	 */
+	private static int find(int[] parent, int v) {
+		while (parent[v] != v) {
+			parent[v] = parent[parent[v]];
+			v = parent[v];
+		}
+		return v;
+	}
+
+	/**
+	 * @return the number of weakly connected components
+	 */
+	public int getComponentCount() {
+		return memberOffsets.length - 1;
+	}
+
+	/**
+	 * @param vertex the id of a vertex
+	 * @return the number of the component which contains the vertex
+	 */
+	public int getComponent(int vertex) {
+		return componentOf[vertex];
+	}
+
+	/**
+	 * @param component the number of a component
+	 * @return the number of vertices in the component
+	 */
+	public int getSize(int component) {
+		return memberOffsets[component + 1] - memberOffsets[component];
+	}
+
+	/**
+	 * @param component the number of a component
+	 * @param index the index of the member between 0 and the size of the component
+	 * @return the id of the vertex
+	 */
+	public int getMember(int component, int index) {
+		return members[memberOffsets[component] + index];
+	}
+}
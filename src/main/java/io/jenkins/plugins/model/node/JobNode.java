@@ -0,0 +1,141 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, Bachmann electronics GmbH, Ole Siemers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.model.node;
+
+import java.util.Objects;
+
+import hudson.Util;
+import io.jenkins.plugins.model.wrapper.JobWrapper;
+import jenkins.model.Jenkins;
+
+/**
+ * An immutable record of the state of a job which is needed to show it in a graph. 
+ * It does not reference the job itself, so a graph of nodes does not keep jobs and their builds in memory.
+ * Nodes are created by a {@link JobNodeTable}, which keeps one node per job. 
+ * Two nodes are equal if they have the same id, so a node can be replaced by a newer record of the same job.
+ * @author OLSI
+ */
+public final class JobNode {
+
+	private final int id;
+	private final String fullName;
+	private final String fullDisplayName;
+	private final String url;
+	private final boolean disabled;
+	// fragments of the dot language, computed on first use since a node is replaced when its job changes
+	private volatile String dotId;
+	private volatile String[] absoluteUrl;
+
+	JobNode(int id, JobWrapper job) {
+		this.id = id;
+		this.fullName = job.getFullName();
+		this.fullDisplayName = job.getJob().getFullDisplayName();
+		this.url = job.getUrl();
+		this.disabled = job.isDisabled();
+	}
+
+	/**
+	 * @return the id of the job, which is unique in the table of this node
+	 */
+	public int getId() {
+		return id;
+	}
+
+	public String getFullName() {
+		return fullName;
+	}
+
+	public String getFullDisplayName() {
+		return fullDisplayName;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public String getAbsoluteUrl() {
+		return getAbsoluteUrl(Jenkins.get().getRootUrl());
+	}
+
+	/**
+	 * @param rootUrl the root url of Jenkins or null if it is not configured
+	 * @return the absolute url of the job, which is only encoded again if the root url has changed
+	 */
+	public String getAbsoluteUrl(String rootUrl) {
+		String[] cached = absoluteUrl;
+		if (cached == null || !Objects.equals(cached[0], rootUrl)) {
+			cached = new String[] {rootUrl, rootUrl == null ? url : Util.encode(rootUrl + url)};
+			absoluteUrl = cached;
+		}
+		return cached[1];
+	}
+
+	/**
+	 * @return the full name of the job as a quoted id of the dot language
+	 */
+	public String getDotId() {
+		String id = dotId;
+		if (id == null) {
+			id = '"' + fullName.replace("\"", "\\\"") + '"';
+			dotId = id;
+		}
+		return id;
+	}
+
+	public boolean isDisabled() {
+		return disabled;
+	}
+
+	/**
+	 * @param job the current state of the job of this node
+	 * @return true if this node still describes the given job
+	 */
+	boolean isUpToDate(JobWrapper job) {
+		return fullName.equals(job.getFullName())
+				&& disabled == job.isDisabled()
+				&& url.equals(job.getUrl())
+				&& fullDisplayName.equals(job.getJob().getFullDisplayName());
+	}
+
+	@Override
+	public int hashCode() {
+		return id;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		return id == ((JobNode) obj).id;
+	}
+
+	@Override
+	public String toString() {
+		return fullName;
+	}
+}
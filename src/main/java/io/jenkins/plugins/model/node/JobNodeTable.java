@@ -0,0 +1,100 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, Bachmann electronics GmbH, Ole Siemers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.model.node;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import io.jenkins.plugins.model.wrapper.JobWrapper;
+
+/**
+ * Keeps one {@link JobNode} per job, looked up by the full name of the job. 
+ * A job keeps the id of its node when it is changed or renamed.
+ * This class is not thread safe.
+ * @author OLSI
+ */
+public class JobNodeTable {
+
+	private final Map<String, JobNode> nodes = new HashMap<>();
+	private int nextId = 0;
+
+	/**
+	 * @param fullName the full name of a job
+	 * @return the node of the job or null if the job is not part of this table
+	 */
+	public JobNode get(String fullName) {
+		return nodes.get(fullName);
+	}
+
+	/**
+	 * Get the node of a job. A new node is only created if the job is not part of this table 
+	 * or its state has changed since its node was created.
+	 * @param job the job
+	 * @return the current node of the job
+	 */
+	public JobNode intern(JobWrapper job) {
+		JobNode node = nodes.get(job.getFullName());
+		if (node == null) {
+			node = new JobNode(nextId++, job);
+			nodes.put(node.getFullName(), node);
+		} else if (!node.isUpToDate(job)) {
+			node = new JobNode(node.getId(), job);
+			nodes.put(node.getFullName(), node);
+		}
+		return node;
+	}
+
+	/**
+	 * Creates a node for a renamed or moved job with the id of its previous node
+	 * @param job the job with its new name
+	 * @param oldFullName the previous full name of the job
+	 * @return the new node of the job
+	 */
+	public JobNode rename(JobWrapper job, String oldFullName) {
+		JobNode previous = nodes.remove(oldFullName);
+		if (previous == null) {
+			return intern(job);
+		}
+		JobNode node = new JobNode(previous.getId(), job);
+		nodes.put(node.getFullName(), node);
+		return node;
+	}
+
+	/**
+	 * @param fullName the full name of a deleted job
+	 * @return the node of the job or null if the job is not part of this table
+	 */
+	public JobNode remove(String fullName) {
+		return nodes.remove(fullName);
+	}
+
+	/**
+	 * Removes all nodes which are not contained in a set of nodes
+	 * @param retained the nodes to keep
+	 */
+	public void retainAll(Set<JobNode> retained) {
+		nodes.values().retainAll(retained);
+	}
+}
@@ -26,12 +26,12 @@ package io.jenkins.plugins.model.wrapper;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Pattern;
 
 import org.jenkinsci.plugins.workflow.job.WorkflowJob;
 
 import hudson.model.AbstractProject;
 import hudson.model.BallColor;
+import hudson.model.Item;
 import hudson.model.Job;
 import hudson.triggers.Trigger;
 import hudson.triggers.TriggerDescriptor;
@@ -56,17 +56,32 @@ public abstract class JobWrapper {
 	}
 
 	public Set<JobWrapper> getPredecessor() {
-		Map<TriggerDescriptor,Trigger<?>> jobTriggers = getTriggers();
 		Set<JobWrapper> predecessors = new HashSet<>();
+		for (String jobName : getUpstreamProjectNames()) {
+			JobWrapper j = wrap(Jenkins.get().getItem(jobName, job.getParent(), Job.class));
+			if (j != null) {
+				predecessors.add(j);
+			}
+		}
+		return predecessors;
+	}
+
+	/**
+	 * Get the names of all jobs which are configured to trigger this job
+	 * @return the trimmed job names of all reverse build triggers of this job
+	 */
+	public Set<String> getUpstreamProjectNames() {
+		Map<TriggerDescriptor,Trigger<?>> jobTriggers = getTriggers();
+		Set<String> names = new HashSet<>();
 		for (Map.Entry<TriggerDescriptor, Trigger<?>> trigger : jobTriggers.entrySet()) {
 			Trigger<?> jobTrigger = trigger.getValue();
 			if (jobTrigger instanceof ReverseBuildTrigger) {
 				ReverseBuildTrigger buildTrigger = (ReverseBuildTrigger)jobTrigger;
 				String upProj = buildTrigger.getUpstreamProjects();
-				predecessors.addAll(getJobListFromString(upProj));
+				names.addAll(UpstreamJobResolver.parseNames(upProj));
 			}
 		}
-		return predecessors;
+		return names;
 	}
 	
 	@SuppressWarnings("squid:S1452")
@@ -98,29 +113,30 @@ public abstract class JobWrapper {
 		return job.getBuildStatusIconClassName();
 	}
 	
-	private Set<JobWrapper> getJobListFromString(String projects) {
-		Set<JobWrapper> jobs = new HashSet<>();
-		for (String jobName : projects.split(Pattern.quote(","))) {
-			jobName = jobName.trim();
-			if (!jobName.isEmpty()) {
-				JobWrapper j = getJobByName(jobName);
-				if (j != null) {
-					jobs.add(j);
-				}
-			}
+	/**
+	 * Wraps a supported job type
+	 * @param item the item to wrap
+	 * @return the wrapper of the given item or null if it is neither a pipeline job nor a project
+	 */
+	public static JobWrapper wrap(Item item) {
+		if (item instanceof WorkflowJob) {
+			return new WorkflowJobWrapper((WorkflowJob)item);
+		}
+		else if (item instanceof AbstractProject) {
+			return new ProjectWrapper((AbstractProject)item);
 		}
-		return jobs;
+		return null;
 	}
 	
-	private JobWrapper getJobByName(String jobName) {
+	/**
+	 * Looks up a job by its full name
+	 * @param jobName the full name of the job
+	 * @return the wrapped job or null if there is no supported job with this name
+	 */
+	public static JobWrapper getJobByName(String jobName) {
 		Job j = Jenkins.get().getItemByFullName(jobName, Job.class);
 		if (j != null && j.getFullName().equals(jobName)) {
-			if (j instanceof WorkflowJob) {
-				return new WorkflowJobWrapper((WorkflowJob)j);
-			}
-			else if (j instanceof AbstractProject) {
-				return new ProjectWrapper((AbstractProject)j);
-			}
+			return wrap(j);
 		}
 		return null;
 	}
@@ -0,0 +1,269 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, Bachmann electronics GmbH, Ole Siemers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.model.wrapper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.Items;
+import hudson.model.Job;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import hudson.triggers.Trigger;
+import jenkins.model.Jenkins;
+import jenkins.triggers.ReverseBuildTrigger;
+
+/**
+ * Resolves the upstream job names of reverse build triggers without walking the folder tree for every name.
+ * The parsed names are cached per trigger and the items are looked up in an index of all items by their full name, 
+ * which has to be kept up to date by calling {@link #itemCreated(Item)}, {@link #itemDeleted(Item)} and {@link #itemMoved(Item, String)}.
+ * Relative names are resolved like {@link Jenkins#getItem(String, ItemGroup)} does, relative to the folder of the triggered job.
+ * @author OLSI
+ */
+public class UpstreamJobResolver {
+
+	private final Map<ReverseBuildTrigger, ParsedNames> parsedNames = new WeakHashMap<>();
+	private volatile Map<String, Item> itemsByFullName;
+
+	/**
+	 * Get the names of all jobs which are configured to trigger a job
+	 * @param job the triggered job
+	 * @return the trimmed job names of all reverse build triggers of the job, as they are written in the trigger
+	 */
+	public Set<String> getUpstreamProjectNames(JobWrapper job) {
+		Set<String> names = new LinkedHashSet<>();
+		for (Trigger<?> trigger : job.getTriggers().values()) {
+			if (trigger instanceof ReverseBuildTrigger) {
+				names.addAll(getNames((ReverseBuildTrigger)trigger));
+			}
+		}
+		return names;
+	}
+
+	private List<String> getNames(ReverseBuildTrigger trigger) {
+		String upstreamProjects = trigger.getUpstreamProjects() == null ? "" : trigger.getUpstreamProjects();
+		synchronized (parsedNames) {
+			ParsedNames parsed = parsedNames.get(trigger);
+			// the trigger rewrites its names if an upstream job is renamed
+			if (parsed == null || !parsed.upstreamProjects.equals(upstreamProjects)) {
+				parsed = new ParsedNames(upstreamProjects);
+				parsedNames.put(trigger, parsed);
+			}
+			return parsed.names;
+		}
+	}
+
+	/**
+	 * Looks up the job which is meant by a name in the trigger of a job
+	 * @param name the absolute or relative name of the upstream job
+	 * @param downstream the job which contains the trigger
+	 * @return the upstream job or null if there is no job with this name
+	 */
+	public Job<?, ?> resolve(String name, JobWrapper downstream) {
+		Map<String, Item> items = getItems();
+		for (String fullName : getCandidateFullNames(name, downstream)) {
+			Item item = items.get(fullName);
+			if (item != null) {
+				return item instanceof Job ? (Job<?, ?>)item : null;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param fullName the full name of an item
+	 * @return the item or null if there is no item with this name
+	 */
+	public Item getItem(String fullName) {
+		return getItems().get(fullName);
+	}
+
+	/**
+	 * Get the full names a name in the trigger of a job can refer to, in the order they are tried
+	 * @param name the absolute or relative name of the upstream job
+	 * @param downstream the job which contains the trigger
+	 * @return the name resolved relative to the folder of the job, if possible, followed by the name as full name
+	 */
+	public List<String> getCandidateFullNames(String name, JobWrapper downstream) {
+		if (name.startsWith("/")) {
+			return Collections.singletonList(normalize(name.substring(1)));
+		}
+		List<String> candidates = new ArrayList<>(2);
+		String relative = resolveRelative(name, downstream.getJob().getParent().getFullName());
+		if (relative != null) {
+			candidates.add(relative);
+		}
+		String absolute = normalize(name);
+		if (!candidates.contains(absolute)) {
+			candidates.add(absolute);
+		}
+		return candidates;
+	}
+
+	/**
+	 * Resolves a relative name segment by segment. Every folder on the way has to exist, like in {@link Jenkins#getItem(String, ItemGroup)}.
+	 * @return the full name or null if the name leaves the root or passes a missing folder
+	 */
+	private String resolveRelative(String name, String context) {
+		Map<String, Item> items = getItems();
+		List<String> path = new ArrayList<>();
+		for (String segment : context.split("/")) {
+			if (!segment.isEmpty()) {
+				path.add(segment);
+			}
+		}
+		String[] segments = name.split("/");
+		for (int i = 0; i < segments.length; i++) {
+			String segment = segments[i];
+			if (segment.isEmpty() || ".".equals(segment)) {
+				continue;
+			}
+			if ("..".equals(segment)) {
+				if (path.isEmpty()) {
+					return null;
+				}
+				path.remove(path.size() - 1);
+				continue;
+			}
+			path.add(segment);
+			if (i < segments.length - 1 && !(items.get(String.join("/", path)) instanceof ItemGroup)) {
+				return null;
+			}
+		}
+		return String.join("/", path);
+	}
+
+	private static String normalize(String fullName) {
+		List<String> path = new ArrayList<>();
+		for (String segment : fullName.split("/")) {
+			if (!segment.isEmpty()) {
+				path.add(segment);
+			}
+		}
+		return String.join("/", path);
+	}
+
+	private Map<String, Item> getItems() {
+		Map<String, Item> items = itemsByFullName;
+		if (items == null) {
+			synchronized (this) {
+				items = itemsByFullName;
+				if (items == null) {
+					items = new ConcurrentHashMap<>();
+					// the index is also used on request threads, but has to contain the items which their user cannot see
+					try (ACLContext ctx = ACL.as(ACL.SYSTEM)) {
+						for (Item item : Jenkins.get().getAllItems()) {
+							items.put(item.getFullName(), item);
+						}
+					}
+					itemsByFullName = items;
+				}
+			}
+		}
+		return items;
+	}
+
+	/**
+	 * Adds a created item and the items it contains to the index
+	 * @param item the created item
+	 */
+	public void itemCreated(Item item) {
+		Map<String, Item> items = itemsByFullName;
+		if (items == null) {
+			return;
+		}
+		items.put(item.getFullName(), item);
+		if (item instanceof ItemGroup) {
+			for (Item child : Items.allItems((ItemGroup<?>)item, Item.class)) {
+				items.put(child.getFullName(), child);
+			}
+		}
+	}
+
+	/**
+	 * Removes a deleted item and the items it contained from the index
+	 * @param item the deleted item
+	 */
+	public void itemDeleted(Item item) {
+		removeFromIndex(item.getFullName());
+	}
+
+	/**
+	 * Moves a renamed or moved item and the items it contains to their new names in the index
+	 * @param item the item with its new name
+	 * @param oldFullName the full name of the item before it was moved
+	 */
+	public void itemMoved(Item item, String oldFullName) {
+		removeFromIndex(oldFullName);
+		itemCreated(item);
+	}
+
+	private void removeFromIndex(String fullName) {
+		Map<String, Item> items = itemsByFullName;
+		if (items == null) {
+			return;
+		}
+		String prefix = fullName + "/";
+		items.remove(fullName);
+		items.keySet().removeIf(name -> name.startsWith(prefix));
+	}
+
+	/**
+	 * Splits the comma separated job names of a trigger
+	 * @param upstreamProjects the names as written in the trigger
+	 * @return the trimmed, non-empty names
+	 */
+	public static List<String> parseNames(String upstreamProjects) {
+		Set<String> names = new LinkedHashSet<>();
+		if (upstreamProjects != null) {
+			for (String jobName : upstreamProjects.split(Pattern.quote(","))) {
+				jobName = jobName.trim();
+				if (!jobName.isEmpty()) {
+					names.add(jobName);
+				}
+			}
+		}
+		return Collections.unmodifiableList(new ArrayList<>(names));
+	}
+
+	private static class ParsedNames {
+
+		private final String upstreamProjects;
+		private final List<String> names;
+
+		ParsedNames(String upstreamProjects) {
+			this.upstreamProjects = upstreamProjects;
+			this.names = parseNames(upstreamProjects);
+		}
+	}
+}
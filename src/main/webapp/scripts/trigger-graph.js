@@ -0,0 +1,331 @@
+/*
+ * Draws a graph of graph.json in the browser, so the page does not wait for dot.
+ * Nodes are placed in layers along the edges and ordered by the mean position of their neighbours.
+ * Large graphs are explored instead: only the neighbours of the nodes which were clicked are loaded.
+ */
+var TriggerGraph = (function() {
+
+	var SVG = "http://www.w3.org/2000/svg";
+	var XLINK = "http://www.w3.org/1999/xlink";
+	var PAGE_SIZE = 500;
+	var CHARACTER_WIDTH = 7;
+	var NODE_HEIGHT = 24;
+	var NODE_GAP = 16;
+	var LAYER_GAP = 60;
+
+	function element(name, attributes, parent) {
+		var node = document.createElementNS(SVG, name);
+		for (var key in attributes) {
+			node.setAttribute(key, attributes[key]);
+		}
+		if (parent) {
+			parent.appendChild(node);
+		}
+		return node;
+	}
+
+	function load(url, offset, callback) {
+		var xhr = new XMLHttpRequest();
+		xhr.onload = function() {
+			if (xhr.status === 200) {
+				callback(JSON.parse(xhr.responseText));
+			}
+		};
+		xhr.open("GET", url + (url.indexOf("?") < 0 ? "?" : "&") + "offset=" + offset + "&limit=" + PAGE_SIZE, true);
+		xhr.send();
+	}
+
+	// longest path layering of the edges which do not close a cycle
+	function assignLayers(nodes, edges) {
+		var successors = {}, state = {}, order = [];
+		nodes.forEach(function(node) {
+			successors[node.id] = [];
+		});
+		edges.forEach(function(edge) {
+			successors[edge.source].push(edge.target);
+		});
+		function visit(id) {
+			state[id] = 1;
+			successors[id].forEach(function(target) {
+				if (!state[target]) {
+					visit(target);
+				}
+			});
+			state[id] = 2;
+			order.push(id);
+		}
+		nodes.forEach(function(node) {
+			if (!state[node.id]) {
+				visit(node.id);
+			}
+		});
+		var position = {}, layer = {};
+		order.reverse().forEach(function(id, index) {
+			position[id] = index;
+			layer[id] = 0;
+		});
+		order.forEach(function(id) {
+			successors[id].forEach(function(target) {
+				if (position[target] > position[id]) {
+					layer[target] = Math.max(layer[target], layer[id] + 1);
+				}
+			});
+		});
+		return layer;
+	}
+
+	function orderLayers(nodes, edges, layer) {
+		var layers = [], neighbours = {}, index = {};
+		nodes.forEach(function(node) {
+			(layers[layer[node.id]] = layers[layer[node.id]] || []).push(node);
+			neighbours[node.id] = [];
+		});
+		edges.forEach(function(edge) {
+			neighbours[edge.source].push(edge.target);
+			neighbours[edge.target].push(edge.source);
+		});
+		function number(nodesOfLayer) {
+			nodesOfLayer.forEach(function(node, i) {
+				index[node.id] = i;
+			});
+		}
+		layers.forEach(number);
+		for (var sweep = 0; sweep < 8; sweep++) {
+			var down = sweep % 2 === 0;
+			for (var l = down ? 1 : layers.length - 2; l >= 0 && l < layers.length; l += down ? 1 : -1) {
+				var adjacent = down ? l - 1 : l + 1;
+				var weight = {};
+				layers[l].forEach(function(node) {
+					var sum = 0, count = 0;
+					neighbours[node.id].forEach(function(id) {
+						if (layer[id] === adjacent) {
+							sum += index[id];
+							count++;
+						}
+					});
+					weight[node.id] = count > 0 ? sum / count : index[node.id];
+				});
+				layers[l].sort(function(a, b) {
+					return weight[a.id] - weight[b.id];
+				});
+				number(layers[l]);
+			}
+		}
+		return layers;
+	}
+
+	function draw(container, graph, filter, onClick) {
+		var nodes = graph.nodes.filter(function(node) {
+			return !graph.hideDisabled || !node.disabled || node.selected;
+		});
+		var shown = {};
+		nodes.forEach(function(node) {
+			shown[node.id] = node;
+			node.label = node.triggers === undefined ? node.name : node.name + " (" + node.triggers + (node.triggersCapped ? "+" : "") + (node.cycle ? ", cycle" : "") + ")";
+			if (node.hidden > 0) {
+				node.label += " +" + node.hidden;
+			}
+			node.width = node.label.length * CHARACTER_WIDTH + 2 * NODE_GAP;
+		});
+		var edges = graph.edges.filter(function(edge) {
+			return shown[edge.source] && shown[edge.target];
+		});
+		var layers = orderLayers(nodes, edges, assignLayers(nodes, edges));
+		var leftToRight = graph.leftToRight !== false, offset = 0, width = 0, height = 0;
+		layers.forEach(function(nodesOfLayer) {
+			var breadth = 0, along = 0;
+			nodesOfLayer.forEach(function(node) {
+				along = Math.max(along, leftToRight ? node.width : NODE_HEIGHT);
+			});
+			nodesOfLayer.forEach(function(node) {
+				var size = leftToRight ? NODE_HEIGHT : node.width;
+				node.x = leftToRight ? offset + along / 2 : breadth + size / 2;
+				node.y = leftToRight ? breadth + size / 2 : offset + along / 2;
+				breadth += size + NODE_GAP;
+			});
+			offset += along + LAYER_GAP;
+			width = Math.max(width, leftToRight ? offset : breadth);
+			height = Math.max(height, leftToRight ? breadth : offset);
+		});
+		container.innerHTML = "";
+		var view = {x: 0, y: 0, width: Math.max(width, 1), height: Math.max(height, 1)};
+		var svg = element("svg", {width: "100%", height: Math.min(Math.max(height, 200), 800)}, container);
+		var marker = element("marker", {id: "trigger-graph-arrow", viewBox: "0 0 10 10", refX: 10, refY: 5, markerWidth: 8, markerHeight: 8, orient: "auto"}, element("defs", {}, svg));
+		element("path", {d: "M0,0 L10,5 L0,10 z"}, marker);
+		edges.forEach(function(edge) {
+			var source = shown[edge.source], target = shown[edge.target];
+			var sx = leftToRight ? source.x + source.width / 2 : source.x, sy = leftToRight ? source.y : source.y + NODE_HEIGHT / 2;
+			var tx = leftToRight ? target.x - target.width / 2 : target.x, ty = leftToRight ? target.y : target.y - NODE_HEIGHT / 2;
+			var mx = (sx + tx) / 2, my = (sy + ty) / 2;
+			var path = leftToRight ? ["M", sx, sy, "C", mx, sy, mx, ty, tx, ty] : ["M", sx, sy, "C", sx, my, tx, my, tx, ty];
+			element("path", {d: path.join(" "), fill: "none", stroke: "black", "marker-end": "url(#trigger-graph-arrow)", "stroke-width": source.selected || target.selected ? 2 : 1}, svg);
+		});
+		nodes.forEach(function(node) {
+			var link = element("a", {}, svg);
+			link.setAttributeNS(XLINK, "href", node.url);
+			if (onClick) {
+				link.addEventListener("click", function(e) {
+					// a click with a modifier still opens the job
+					if (e.button === 0 && !e.ctrlKey && !e.metaKey && !e.shiftKey) {
+						e.preventDefault();
+						onClick(node);
+					}
+				});
+			}
+			var matches = !filter || node.name.toLowerCase().indexOf(filter) >= 0;
+			link.setAttribute("opacity", matches ? 1 : 0.3);
+			element("rect", {x: node.x - node.width / 2, y: node.y - NODE_HEIGHT / 2, width: node.width, height: NODE_HEIGHT, rx: 6,
+				fill: node.selected ? "lightgrey" : "white", stroke: node.disabled ? "grey" : "black"}, link);
+			// the status is only sent if it is shown
+			if (node.color) {
+				element("circle", {cx: node.x - node.width / 2 + NODE_GAP / 2, cy: node.y, r: 4, fill: node.color}, link);
+			}
+			var text = element("text", {x: node.color ? node.x + NODE_GAP / 4 : node.x, y: node.y + 4, "text-anchor": "middle", "font-family": "sans-serif", "font-size": 12,
+				fill: node.disabled ? "grey" : "black"}, link);
+			text.textContent = node.label;
+		});
+		function update() {
+			svg.setAttribute("viewBox", [view.x, view.y, view.width, view.height].join(" "));
+		}
+		svg.addEventListener("wheel", function(e) {
+			e.preventDefault();
+			var scale = e.deltaY > 0 ? 1.2 : 1 / 1.2, box = svg.getBoundingClientRect();
+			var px = view.x + (e.clientX - box.left) / box.width * view.width, py = view.y + (e.clientY - box.top) / box.height * view.height;
+			view.x = px - (px - view.x) * scale;
+			view.y = py - (py - view.y) * scale;
+			view.width *= scale;
+			view.height *= scale;
+			update();
+		});
+		var drag = null;
+		svg.addEventListener("mousedown", function(e) {
+			drag = {x: e.clientX, y: e.clientY};
+		});
+		window.addEventListener("mouseup", function() {
+			drag = null;
+		});
+		svg.addEventListener("mousemove", function(e) {
+			if (drag) {
+				var box = svg.getBoundingClientRect();
+				view.x -= (e.clientX - drag.x) / box.width * view.width;
+				view.y -= (e.clientY - drag.y) / box.height * view.height;
+				drag = {x: e.clientX, y: e.clientY};
+				update();
+			}
+		});
+		update();
+	}
+
+	/**
+	 * @param container the element which contains the graph
+	 * @param filterInput a text input which dims the jobs whose name does not contain its value, may be null
+	 * @param moreButton a button which loads the next page of a large graph, may be null
+	 * @param url the url of graph.json
+	 */
+	function show(container, filterInput, moreButton, url) {
+		var graph = null;
+		function redraw() {
+			draw(container, graph, filterInput ? filterInput.value.toLowerCase() : "");
+			if (moreButton) {
+				moreButton.style.display = graph.nodes.length < graph.total ? "" : "none";
+				moreButton.textContent = "Show more (" + graph.nodes.length + " of " + graph.total + ")";
+			}
+		}
+		function next(page) {
+			if (graph === null) {
+				graph = page;
+			} else {
+				graph.nodes = graph.nodes.concat(page.nodes);
+				graph.edges = graph.edges.concat(page.edges);
+			}
+			redraw();
+		}
+		if (filterInput) {
+			filterInput.addEventListener("input", redraw);
+		}
+		if (moreButton) {
+			moreButton.addEventListener("click", function(e) {
+				e.preventDefault();
+				load(url, graph.nodes.length, next);
+			});
+		}
+		load(url, 0, next);
+	}
+
+	/**
+	 * Starts with the jobs of the parameter job of the page, or with the jobs which are not triggered by other jobs,
+	 * and adds the neighbours of a job when it is clicked.
+	 * @param container the element which contains the graph
+	 * @param filterInput a text input which dims the jobs whose name does not contain its value, may be null
+	 * @param moreButton a button which loads the next page of the first jobs, may be null
+	 * @param url the url of neighbourhood.json
+	 */
+	function explore(container, filterInput, moreButton, url) {
+		var graph = null, known = {}, knownEdges = {}, loaded = 0;
+		var start = url + (window.location.search || "?depth=0");
+		function merge(page) {
+			page.nodes.forEach(function(node) {
+				if (!known[node.id]) {
+					known[node.id] = node;
+					graph.nodes.push(node);
+				}
+			});
+			page.edges.forEach(function(edge) {
+				var key = edge.source + "\n" + edge.target;
+				if (!knownEdges[key]) {
+					knownEdges[key] = true;
+					graph.edges.push(edge);
+				}
+			});
+			var degree = {};
+			graph.edges.forEach(function(edge) {
+				if (known[edge.source] && known[edge.target]) {
+					degree[edge.source] = (degree[edge.source] || 0) + 1;
+					degree[edge.target] = (degree[edge.target] || 0) + 1;
+				}
+			});
+			graph.nodes.forEach(function(node) {
+				node.hidden = node.upstream + node.downstream - (degree[node.id] || 0);
+			});
+		}
+		function redraw() {
+			draw(container, graph, filterInput ? filterInput.value.toLowerCase() : "", expand);
+			if (moreButton) {
+				moreButton.style.display = loaded < graph.total ? "" : "none";
+				moreButton.textContent = "Show more (" + loaded + " of " + graph.total + ")";
+			}
+		}
+		function first(page) {
+			if (graph === null) {
+				graph = {total: page.total, hideDisabled: page.hideDisabled, leftToRight: page.leftToRight, nodes: [], edges: []};
+			}
+			loaded += page.nodes.length;
+			merge(page);
+			redraw();
+		}
+		function expand(node) {
+			if (node.hidden > 0) {
+				load(url + "?job=" + encodeURIComponent(node.id), 0, function(page) {
+					page.nodes.forEach(function(neighbour) {
+						neighbour.selected = false;
+					});
+					merge(page);
+					redraw();
+				});
+			}
+		}
+		if (filterInput) {
+			filterInput.addEventListener("input", redraw);
+		}
+		if (moreButton) {
+			moreButton.addEventListener("click", function(e) {
+				e.preventDefault();
+				load(start, loaded, first);
+			});
+		}
+		load(start, 0, first);
+	}
+
+	show.explore = explore;
+	return show;
+})();
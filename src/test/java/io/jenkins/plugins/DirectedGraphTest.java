@@ -6,17 +6,24 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 import org.jenkinsci.plugins.workflow.job.WorkflowJob;
 import org.junit.Before;
-import org.junit.Ignore;
 import org.junit.Test;
 
+import io.jenkins.plugins.model.graph.CompactGraph;
 import io.jenkins.plugins.model.graph.DirectedGraph;
+import io.jenkins.plugins.model.graph.LayeredLayout;
+import io.jenkins.plugins.model.graph.ReachabilityIndex;
+import io.jenkins.plugins.model.graph.StronglyConnectedComponents;
+import io.jenkins.plugins.model.graph.SubgraphView;
+import io.jenkins.plugins.model.graph.WeaklyConnectedComponents;
 
 public class DirectedGraphTest {
 	
@@ -123,8 +130,282 @@ public class DirectedGraphTest {
 	}
 	
 	@Test
-	@Ignore("Not ready yet")
+	public void testRemoveVertexWithSelfLoop() {
+		dg.addEdge(6, 6);
+		dg.removeVertex(6);
+		assertEquals(new HashSet<>(Arrays.asList(1, 2, 3, 4, 5)), dg.getVertices());
+		assertEquals(Collections.emptySet(), dg.getSuccessors(3));
+		assertEquals(Collections.emptySet(), dg.getSuccessors(5));
+	}
+	
+	@Test
+	public void testReplaceVertex() {
+		dg.addEdge(4, 4);
+		dg.replaceVertex(4, 7);
+		assertFalse(dg.containsVertex(4));
+		assertEquals(new HashSet<>(Arrays.asList(1, 2, 7)), dg.getPredecessors(7));
+		assertEquals(new HashSet<>(Arrays.asList(6, 7)), dg.getSuccessors(7));
+		assertTrue(dg.containsEdge(2, 7));
+		assertTrue(dg.getPredecessors(6).contains(7));
+	}
+	
+	@Test
+	public void testConnectedSubgraph() {
+		dg.removeEdge(3, 6);
+		SubgraphView<Integer> view = dg.getConnectedSubgraph(4, false);
+		assertEquals(new HashSet<>(Arrays.asList(1, 2, 4, 5, 6)), view.getVertices());
+		assertEquals(new HashSet<>(Arrays.asList(1, 2, 5)), view.getEntries());
+		assertEquals(Collections.singleton(4), view.getSuccessors(1));
+		assertFalse(view.containsVertex(3));
+		assertFalse(view.containsEdge(1, 3));
+		assertTrue(view.containsEdge(1, 4));
+		assertEquals(new HashSet<>(Arrays.asList(1, 2, 3, 4, 5, 6)), dg.getVertices());
+		// the view is not a copy, it follows the underlying graph
+		dg.removeVertex(5);
+		assertEquals(new HashSet<>(Arrays.asList(1, 2, 4, 6)), view.getVertices());
+		assertEquals(4, view.getVertices().size());
+		assertTrue(view.getPredecessors(1).isEmpty());
+		assertFalse(view.getSuccessors(4).contains(3));
+	}
+	
+	@Test
+	public void testConnectedSubgraphOfFrozenGraph() {
+		dg.removeEdge(3, 6);
+		CompactGraph<Integer> frozen = dg.freeze();
+		for (int vertex = 1; vertex <= 6; vertex++) {
+			assertEquals(dg.getConnectedSubgraph(vertex, false).getVertices(), frozen.getConnectedSubgraph(vertex, false).getVertices());
+			assertEquals(dg.getConnectedSubgraph(vertex, true).getVertices(), frozen.getConnectedSubgraph(vertex, true).getVertices());
+		}
+		assertTrue(frozen.getConnectedSubgraph(7, true).getVertices().isEmpty());
+	}
+	
+	@Test
+	public void testAncestorsAndDescendants() {
+		assertEquals(new HashSet<>(Arrays.asList(1, 2, 3, 4, 5)), dg.getAncestors(6));
+		assertEquals(new HashSet<>(Arrays.asList(3, 4, 6)), dg.getDescendants(1));
+		assertEquals(Collections.emptySet(), dg.getAncestors(1));
+		assertEquals(Collections.emptySet(), dg.getDescendants(6));
+	}
+	
+	@Test
+	public void testAncestorsWithCycle() {
+		dg.setClosureCaching(true);
+		assertEquals(Collections.emptySet(), dg.getAncestors(1));
+		dg.addEdge(6, 1);
+		assertEquals(new HashSet<>(Arrays.asList(1, 2, 3, 4, 5, 6)), dg.getAncestors(1));
+		assertEquals(new HashSet<>(Arrays.asList(1, 3, 4, 6)), dg.getDescendants(6));
+		dg.removeDisconnectedComponents(4, false);
+		assertEquals(new HashSet<>(Arrays.asList(1, 2, 3, 4, 5, 6)), dg.getVertices());
+	}
+	
+	@Test
+	public void testFreeze() {
+		CompactGraph<Integer> compact = dg.freeze();
+		assertEquals(dg.getVertices(), compact.getVertices());
+		assertEquals(dg.getEntries(), compact.getEntries());
+		assertEquals(dg.getExits(), compact.getExits());
+		for (Integer v : dg.getVertices()) {
+			assertEquals(dg.getPredecessors(v), compact.getPredecessors(v));
+			assertEquals(dg.getSuccessors(v), compact.getSuccessors(v));
+		}
+		assertTrue(compact.containsEdge(1, 3));
+		assertFalse(compact.containsEdge(3, 1));
+		assertEquals(6, compact.getEdgeCount());
+		int[] reachable = compact.breadthFirstSearch(compact.indexOf(1), true, false);
+		assertEquals(4, reachable.length);
+	}
+	
+	@Test
 	public void testTopologicalOrder() {
-		fail("not implemented yet");
+		List<Integer> sorted = new LinkedList<>(dg.getTopologicalOrder());
+		assertEquals(dg.getVertices().size(), sorted.size());
+		for (Integer v : dg.getVertices()) {
+			for (Integer w : dg.getSuccessors(v)) {
+				assertTrue(sorted.indexOf(v) < sorted.indexOf(w));
+			}
+		}
+	}
+	
+	@Test
+	public void testTopologicalOrderOfLongChain() {
+		DirectedGraph<Integer> chain = new DirectedGraph<>();
+		for (int i = 0; i < 100000; i++) {
+			chain.addEdge(i, i + 1);
+		}
+		Deque<Integer> sorted = chain.getTopologicalOrder();
+		assertEquals(100001, sorted.size());
+		assertEquals(0, sorted.getFirst().intValue());
+		assertEquals(100000, sorted.getLast().intValue());
+	}
+	
+	@Test
+	public void testStronglyConnectedComponents() {
+		dg.addEdge(6, 1);
+		dg.addEdge(5, 5);
+		CompactGraph<Integer> compact = dg.freeze();
+		StronglyConnectedComponents components = compact.getStronglyConnectedComponents();
+		assertEquals(3, components.getComponentCount());
+		int cycle = components.getComponent(compact.indexOf(1));
+		assertEquals(4, components.getSize(cycle));
+		assertTrue(components.isCyclic(cycle));
+		assertEquals(cycle, components.getComponent(compact.indexOf(6)));
+		assertTrue(components.isCyclic(components.getComponent(compact.indexOf(5))));
+		assertFalse(components.isCyclic(components.getComponent(compact.indexOf(2))));
+		assertTrue(components.getComponent(compact.indexOf(2)) < cycle);
+		assertEquals(6, dg.getTopologicalOrder().size());
+	}
+	
+	@Test
+	public void testWeaklyConnectedComponents() {
+		dg.addEdge(8, 7);
+		dg.addEdge(9, 9);
+		dg.addVertex(10);
+		CompactGraph<Integer> compact = dg.freeze();
+		WeaklyConnectedComponents components = compact.getWeaklyConnectedComponents();
+		assertEquals(4, components.getComponentCount());
+		int component = components.getComponent(compact.indexOf(1));
+		assertEquals(6, components.getSize(component));
+		for (int vertex = 2; vertex <= 6; vertex++) {
+			assertEquals(component, components.getComponent(compact.indexOf(vertex)));
+		}
+		assertEquals(components.getComponent(compact.indexOf(7)), components.getComponent(compact.indexOf(8)));
+		assertNotEquals(component, components.getComponent(compact.indexOf(7)));
+		assertEquals(1, components.getSize(components.getComponent(compact.indexOf(9))));
+		assertEquals(1, components.getSize(components.getComponent(compact.indexOf(10))));
+		// components are numbered by their lowest member and list their members in order
+		assertEquals(0, components.getComponent(0));
+		for (int c = 0; c < components.getComponentCount(); c++) {
+			for (int i = 1; i < components.getSize(c); i++) {
+				assertTrue(components.getMember(c, i - 1) < components.getMember(c, i));
+			}
+			assertEquals(c, components.getComponent(components.getMember(c, 0)));
+		}
+	}
+	
+	@Test
+	public void testLayeredLayout() {
+		dg.addEdge(1, 6);
+		CompactGraph<Integer> compact = dg.freeze();
+		int[] widths = new int[compact.getVertexCount()];
+		int[] heights = new int[compact.getVertexCount()];
+		Arrays.fill(widths, 60);
+		Arrays.fill(heights, 30);
+		LayeredLayout layout = new LayeredLayout(compact, widths, heights, false);
+		assertEquals(7, layout.getEdgeCount());
+		assertEquals(0, layout.getCrossingCount());
+		for (int e = 0; e < layout.getEdgeCount(); e++) {
+			int source = layout.getEdgeSource(e);
+			int target = layout.getEdgeTarget(e);
+			int[] points = layout.getEdgePoints(e);
+			// edges lead downwards from the bottom of the source to the top of the target
+			assertTrue(layout.getY(source) < layout.getY(target));
+			assertEquals(layout.getX(source), points[0]);
+			assertEquals(layout.getY(source) + 15, points[1]);
+			assertEquals(layout.getX(target), points[points.length - 2]);
+			assertEquals(layout.getY(target) - 15, points[points.length - 1]);
+		}
+		// the long edge passes the layer of 3 and 4 beside them
+		assertEquals(6, layout.getEdgePoints(indexOfEdge(compact, layout, 1, 6)).length);
+		for (int v = 0; v < compact.getVertexCount(); v++) {
+			for (int w = v + 1; w < compact.getVertexCount(); w++) {
+				assertTrue(layout.getY(v) != layout.getY(w) || Math.abs(layout.getX(v) - layout.getX(w)) >= 60);
+			}
+		}
+	}
+	
+	@Test
+	public void testLayeredLayoutOfCycle() {
+		dg.addEdge(6, 1);
+		dg.addEdge(5, 5);
+		CompactGraph<Integer> compact = dg.freeze();
+		int[] widths = new int[compact.getVertexCount()];
+		int[] heights = new int[compact.getVertexCount()];
+		Arrays.fill(widths, 60);
+		Arrays.fill(heights, 30);
+		LayeredLayout layout = new LayeredLayout(compact, widths, heights, true);
+		int againstLayers = 0;
+		for (int e = 0; e < layout.getEdgeCount(); e++) {
+			int source = layout.getEdgeSource(e);
+			int target = layout.getEdgeTarget(e);
+			int[] points = layout.getEdgePoints(e);
+			if (source == target) {
+				assertEquals(8, points.length);
+				continue;
+			}
+			// an edge leaves one side of its source and enters the opposite side of its target
+			int leaving = points[0] - layout.getX(source);
+			int entering = points[points.length - 2] - layout.getX(target);
+			assertEquals(30, Math.abs(leaving));
+			assertEquals(-leaving, entering);
+			if (leaving < 0) {
+				againstLayers++;
+			}
+		}
+		// the cycle is broken by drawing an edge against the layers
+		assertTrue(againstLayers > 0);
+		assertTrue(layout.getWidth() > layout.getHeight());
+	}
+	
+	private static int indexOfEdge(CompactGraph<Integer> compact, LayeredLayout layout, int source, int target) {
+		for (int e = 0; e < layout.getEdgeCount(); e++) {
+			if (layout.getEdgeSource(e) == compact.indexOf(source) && layout.getEdgeTarget(e) == compact.indexOf(target)) {
+				return e;
+			}
+		}
+		throw new AssertionError("no edge " + source + " -> " + target);
+	}
+	
+	@Test
+	public void testReachabilityIndex() {
+		dg.addEdge(6, 7);
+		dg.addEdge(7, 6);
+		ReachabilityIndex<Integer> index = new ReachabilityIndex<>(dg.freeze());
+		assertTrue(index.isReachable(1, 6));
+		assertTrue(index.isReachable(2, 7));
+		assertTrue(index.isReachable(6, 6));
+		assertFalse(index.isReachable(1, 1));
+		assertFalse(index.isReachable(3, 4));
+		assertFalse(index.isReachable(6, 1));
+		assertFalse(index.isReachable(1, 9));
+		assertEquals(new HashSet<>(Arrays.asList(3, 4, 6, 7)), index.getDescendants(1));
+		assertEquals(new HashSet<>(Arrays.asList(1, 2, 3, 4, 5, 6, 7)), index.getAncestors(7));
+		assertEquals(Collections.emptySet(), index.getAncestors(5));
+		for (int vertex : dg.getVertices()) {
+			assertEquals(dg.getDescendants(vertex), index.getDescendants(vertex));
+			assertEquals(dg.getAncestors(vertex), index.getAncestors(vertex));
+		}
+	}
+
+	@Test
+	public void testReachabilityIndexOfManyComponents() {
+		// edges mostly span a short distance, so the closures start and end in different words of the bitsets
+		Random random = new Random(42);
+		DirectedGraph<Integer> graph = new DirectedGraph<>();
+		int n = 600;
+		for (int v = 0; v < n; v++) {
+			graph.addVertex(v);
+			if (v > 0 && random.nextInt(4) > 0) {
+				graph.addEdge(random.nextInt(v), v);
+			}
+			if (v > 100 && random.nextInt(3) == 0) {
+				graph.addEdge(v - 1 - random.nextInt(100), v);
+			}
+			// a few short cycles
+			if (v > 5 && random.nextInt(20) == 0) {
+				graph.addEdge(v, v - 1 - random.nextInt(5));
+			}
+		}
+		graph.addEdge(n - 1, n - 1);
+		CompactGraph<Integer> compact = graph.freeze();
+		assertTrue(compact.getStronglyConnectedComponents().getComponentCount() > 128);
+		ReachabilityIndex<Integer> index = new ReachabilityIndex<>(compact);
+		for (int v = 0; v < n; v++) {
+			Set<Integer> descendants = graph.getDescendants(v);
+			assertEquals(descendants, index.getDescendants(v));
+			assertEquals(graph.getAncestors(v), index.getAncestors(v));
+			for (int w = 0; w < n; w++) {
+				assertEquals(descendants.contains(w), index.isReachable(v, w));
+			}
+		}
 	}
 }
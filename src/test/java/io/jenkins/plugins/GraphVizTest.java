@@ -0,0 +1,121 @@
+package io.jenkins.plugins;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hamcrest.CoreMatchers;
+import org.junit.Test;
+
+public class GraphVizTest {
+
+	@Test
+	public void testETagMatches() {
+		String etag = "\"" + RenderCache.getKey("digraph {}", "png") + "\"";
+		assertFalse(GraphViz.matches(null, etag));
+		assertTrue(GraphViz.matches(etag, etag));
+		assertTrue(GraphViz.matches("\"other\", " + etag, etag));
+		assertTrue(GraphViz.matches("W/" + etag, etag));
+		assertTrue(GraphViz.matches("*", etag));
+		assertFalse(GraphViz.matches("\"other\"", etag));
+	}
+
+	@Test
+	public void testKeyDependsOnInputAndType() {
+		String key = RenderCache.getKey("digraph {}", "png");
+		assertEquals(64, key.length());
+		assertEquals(key, RenderCache.getKey("digraph {}", "png"));
+		assertNotEquals(key, RenderCache.getKey("digraph {}", "svg"));
+		assertNotEquals(key, RenderCache.getKey("digraph { a }", "png"));
+	}
+
+	@Test
+	public void testKeyOfStreamedInput() throws IOException {
+		DotSource streamed = out -> {
+			out.write("digraph { \"\u00e4\" ");
+			out.write("}");
+		};
+		assertEquals(RenderCache.getKey("digraph { \"\u00e4\" }", "png"), RenderCache.getKey(streamed, "png"));
+	}
+
+	@Test
+	public void testImageAndMapAreRenderedTogether() {
+		assertEquals(Arrays.asList("png", "cmapx"), GraphViz.getTypesRenderedWith("png"));
+		assertEquals(Arrays.asList("png", "cmapx"), GraphViz.getTypesRenderedWith("cmapx"));
+		assertEquals(Collections.singletonList("svg"), GraphViz.getTypesRenderedWith("svg"));
+	}
+
+	@Test
+	public void testTilesDoNotOverlap() {
+		double[] widths = { 100, 50, 50, 300 };
+		double[] heights = { 40, 80, 20, 40 };
+		double[] positions = TiledGraph.place(widths, heights);
+		int n = widths.length;
+		for (int i = 0; i < n; i++) {
+			assertTrue(positions[2 * i] + widths[i] <= positions[2 * n]);
+			assertTrue(positions[2 * i + 1] + heights[i] <= positions[2 * n + 1]);
+			for (int j = 0; j < i; j++) {
+				boolean apart = positions[2 * i] + widths[i] <= positions[2 * j] || positions[2 * j] + widths[j] <= positions[2 * i]
+						|| positions[2 * i + 1] + heights[i] <= positions[2 * j + 1] || positions[2 * j + 1] + heights[j] <= positions[2 * i + 1];
+				assertTrue(apart);
+			}
+		}
+		// the highest tile starts the first row
+		assertEquals(0, positions[2], 0);
+		assertEquals(0, positions[3], 0);
+	}
+
+	@Test
+	public void testLargeTilesAreNotComposedInMemory() throws IOException {
+		assertTrue(TiledGraph.fitsInPng(TiledGraph.place(new double[] { 100, 50 }, new double[] { 40, 80 })));
+		double[] positions = TiledGraph.place(new double[] { 4000, 4000 }, new double[] { 3000, 3000 });
+		assertFalse(TiledGraph.fitsInPng(positions));
+		List<Map<String, byte[]>> outputs = new ArrayList<>();
+		for (int i = 0; i < 2; i++) {
+			byte[] png = new byte[24];
+			// the size in the IHDR chunk of a PNG
+			png[18] = 4000 >> 8;
+			png[19] = (byte) 4000;
+			png[22] = 3000 >> 8;
+			png[23] = (byte) 3000;
+			outputs.add(Collections.singletonMap("png", png));
+		}
+		assertArrayEquals(positions, TiledGraph.getPositions(outputs, "png"), 0);
+		try {
+			TiledGraph.tile(outputs, "png", "png");
+			fail("the image is too large");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testImageMapIsTiledWithItsImage() throws IOException {
+		List<Map<String, byte[]>> outputs = new ArrayList<>();
+		for (int i = 0; i < 2; i++) {
+			Map<String, byte[]> output = new HashMap<>();
+			output.put("svg", ("<?xml version=\"1.0\"?>\n<!DOCTYPE svg>\n<svg width=\"75pt\" height=\"30pt\" viewBox=\"0 0 75 30\" xmlns=\"http://www.w3.org/2000/svg\">\n<g id=\"graph0\"/>\n</svg>\n").getBytes(StandardCharsets.UTF_8));
+			output.put("cmapx", ("<map id=\"G\" name=\"G\">\n<area shape=\"rect\" href=\"job" + i + "\" coords=\"1,2,30,20\"/>\n</map>\n").getBytes(StandardCharsets.UTF_8));
+			outputs.add(output);
+		}
+		assertArrayEquals(new double[] { 100, 40 }, TiledGraph.getSize(outputs.get(0).get("svg"), "svg"), 0);
+		double[] positions = TiledGraph.place(new double[] { 100, 100 }, new double[] { 40, 40 });
+		String map = new String(TiledGraph.tile(outputs, "svg", "cmapx"), StandardCharsets.UTF_8);
+		for (int i = 0; i < 2; i++) {
+			long x = Math.round(positions[2 * i]);
+			long y = Math.round(positions[2 * i + 1]);
+			assertThat(map, CoreMatchers.containsString("href=\"job" + i + "\" coords=\"" + (1 + x) + "," + (2 + y) + "," + (30 + x) + "," + (20 + y) + "\""));
+		}
+		String svg = new String(TiledGraph.tile(outputs, "svg", "svg"), StandardCharsets.UTF_8);
+		assertFalse(svg.contains("DOCTYPE"));
+		assertThat(svg, CoreMatchers.containsString("<svg x=\"" + Math.round(positions[2]) + "\" y=\"" + Math.round(positions[3]) + "\" width=\"100\" height=\"40\""));
+		assertEquals(3, svg.split("</svg>", -1).length - 1);
+	}
+}
@@ -0,0 +1,183 @@
+package io.jenkins.plugins;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.MockFolder;
+
+import io.jenkins.plugins.model.graph.Graph;
+import io.jenkins.plugins.model.node.JobNode;
+import jenkins.triggers.ReverseBuildTrigger;
+
+/**
+ * Benchmarks the construction of a {@link JobGraph} and its DOT output on a synthetic folder tree.
+ * Only runs with -Dbenchmark=true, the size of the tree can be set with -Dbenchmark.folders and -Dbenchmark.jobsPerFolder.
+ */
+public class JobGraphBenchmarkTest {
+
+	@Rule public JenkinsRule jenkins = new JenkinsRule();
+
+	private static final Logger logger = Logger.getLogger(JobGraphBenchmarkTest.class.getName());
+	private static final int ROUNDS = 10;
+
+	private int folders;
+	private int jobsPerFolder;
+
+	@Before
+	public void createFolderTree() throws Exception {
+		Assume.assumeTrue(Boolean.getBoolean("benchmark"));
+		folders = Integer.getInteger("benchmark.folders", 100);
+		jobsPerFolder = Integer.getInteger("benchmark.jobsPerFolder", 20);
+		for (int f = 0; f < folders; f++) {
+			MockFolder folder = jenkins.createFolder("folder" + f);
+			for (int j = 0; j < jobsPerFolder; j++) {
+				WorkflowJob job = folder.createProject(WorkflowJob.class, "job" + j);
+				// every job is triggered by its predecessor in the folder and by the same job in the previous folder
+				String upstream = j > 0 ? "job" + (j - 1) : "";
+				if (f > 0) {
+					upstream += (upstream.isEmpty() ? "" : ", ") + "../folder" + (f - 1) + "/job" + j;
+				}
+				if (!upstream.isEmpty()) {
+					job.addTrigger(new ReverseBuildTrigger(upstream));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compares the single-threaded and the parallel construction of the graph
+	 */
+	@Test
+	public void benchmarkParallelBuild() {
+		JobGraph graph = new JobGraph();
+		graph.update(1);
+		Set<String> sequentialEdges = getEdges(graph);
+		graph.update(JobGraphBuilder.DEFAULT_PARALLELISM);
+		assertEquals(sequentialEdges, getEdges(graph));
+		assertEquals(folders * jobsPerFolder, graph.getJobs().size());
+
+		long sequential = measure(() -> graph.update(1))[0];
+		long parallel = measure(() -> graph.update(JobGraphBuilder.DEFAULT_PARALLELISM))[0];
+		logger.info(String.format("built a graph of %d jobs in %d folders: single-threaded %d ms, %d threads %d ms",
+				folders * jobsPerFolder, folders, sequential, JobGraphBuilder.DEFAULT_PARALLELISM, parallel));
+	}
+
+	/**
+	 * Compares the DOT output of {@link JobGraphDotWriter} with the formatted output it replaced
+	 */
+	@Test
+	public void benchmarkDotOutput() {
+		JobGraph graph = new JobGraph();
+		graph.update(JobGraphBuilder.DEFAULT_PARALLELISM);
+		JobGraphSnapshot snapshot = graph.snapshot();
+		JobNode current = snapshot.getNode("folder" + folders / 2 + "/job" + jobsPerFolder / 2);
+		RenderSettings settings = RenderSettings.current();
+		assertEquals(format(snapshot, current, settings), snapshot.getDotString(snapshot.getGraph(), current, settings));
+
+		long[] formatted = measure(() -> format(snapshot, current, settings));
+		long[] written = measure(() -> snapshot.getDotString(snapshot.getGraph(), current, settings));
+		logger.info(String.format("wrote the DOT output of %d jobs: formatted %d ms and %d KB, written %d ms and %d KB",
+				snapshot.getJobs().size(), formatted[0], formatted[1] / 1024, written[0], written[1] / 1024));
+	}
+
+	/**
+	 * @return the median duration in milliseconds and the median number of allocated bytes of running the task,
+	 * the allocated bytes are 0 if the JVM does not measure them
+	 */
+	private static long[] measure(Runnable task) {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		long[] durations = new long[ROUNDS];
+		long[] allocations = new long[ROUNDS];
+		for (int i = 0; i < ROUNDS; i++) {
+			long allocated = getAllocatedBytes(threads);
+			long start = System.nanoTime();
+			task.run();
+			durations[i] = (System.nanoTime() - start) / 1000000;
+			allocations[i] = getAllocatedBytes(threads) - allocated;
+		}
+		return new long[] {median(durations), median(allocations)};
+	}
+
+	private static long median(long[] values) {
+		Arrays.sort(values);
+		return values[values.length / 2];
+	}
+
+	private static long getAllocatedBytes(ThreadMXBean threads) {
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+
+	private static Set<String> getEdges(JobGraph graph) {
+		Set<String> edges = new HashSet<>();
+		for (JobNode job : graph.getJobs()) {
+			for (JobNode upstream : graph.getUpstreamOfJob(job)) {
+				edges.add(upstream.getFullName() + " -> " + job.getFullName());
+			}
+		}
+		return edges;
+	}
+
+	/**
+	 * The DOT output as it was generated before nodes and edges were written fragment by fragment
+	 */
+	private static String format(JobGraphSnapshot snapshot, JobNode current, RenderSettings settings) {
+		Graph<JobNode> graph = snapshot.getGraph();
+		String rankdir = settings.isLeftToRightLayout() ? "LR" : "TB";
+		StringBuilder dot = new StringBuilder();
+		dot.append(String.format("digraph { %n\tnode [shape=box, style=rounded, fontname=sans ];%n\tgraph [rankdir=%s]; %n", rankdir));
+		for (JobNode j : graph.getVertices()) {
+			if (isJobVisible(j, settings)) {
+				dot.append(formatNode(snapshot, j, current, settings));
+			}
+		}
+		for (JobNode targetJob : graph.getVertices()) {
+			Set<JobNode> sourceJobs = graph.getPredecessors(targetJob);
+			for (JobNode sourceJob : sourceJobs) {
+				if (isJobVisible(sourceJob, settings) && isJobVisible(targetJob, settings)) {
+					String edgeColor = (sourceJob.isDisabled() || targetJob.isDisabled()) ? "gray" : "black";
+					String edgeWidth = sourceJob.equals(current) || targetJob.equals(current) ? String.valueOf(settings.getSelectedEdgeWidth()) : "1";
+					String edgeProperties = String.format("[color=\"%s\", penwidth=\"%s\"]", edgeColor, edgeWidth);
+					dot.append(String.format("\t\"%s\" -> \"%s\" %s; %n", sourceJob.getFullName(), targetJob.getFullName(), edgeProperties));
+				}
+			}
+		}
+		dot.append("}");
+		return dot.toString();
+	}
+
+	private static String formatNode(JobGraphSnapshot snapshot, JobNode node, JobNode current, RenderSettings settings) {
+		String nodeStyle = node.equals(current) ?  "rounded,filled" : "rounded";
+		String nodeImage = settings.isDrawBalls() ? String.format("<td><img src=\"%s%s\" /></td>", settings.getImagePath(), JobGraphService.get().getIconColor(node).getImage()) : "";
+		String nodeTriggerCount = "";
+		if (settings.isCountTriggersTransitively()) {
+			String cappedMarker = snapshot.isTriggerCountCapped(node) ? "+" : "";
+			String cycleMarker = snapshot.getJobsInTriggerCycles().contains(node) ? ", cycle" : "";
+			nodeTriggerCount = String.format("<td>(%d%s%s)</td>", snapshot.getTotalTriggerCount().get(node), cappedMarker, cycleMarker);
+		}
+		String nodeLabel = String.format("<table border=\"0\"><tr>%s<td>%s</td>%s</tr></table>", nodeImage, node.getFullName(), nodeTriggerCount);
+		String nodeHref = node.getAbsoluteUrl()+"triggers/";
+		String nodeColor = node.isDisabled()  || node.equals(current) ? "gray" : "black";
+		String nodeFontcolor = node.isDisabled() && !node.equals(current) ? "gray" : "black";
+		return String.format("\t\"%s\" [style=\"%s\", label=<%s>, href=\"%s\", color=\"%s\", fontcolor=\"%s\"]; %n", node.getFullName(), nodeStyle, nodeLabel, nodeHref, nodeColor, nodeFontcolor);
+	}
+
+	private static boolean isJobVisible(JobNode j, RenderSettings settings) {
+		return !j.isDisabled() || !settings.isHideDisabled();
+	}
+}
@@ -2,27 +2,48 @@ package io.jenkins.plugins;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import org.hamcrest.CoreMatchers;
 import org.jenkinsci.plugins.workflow.job.*;
+import org.junit.Assume;
 import org.junit.ClassRule;
 import org.junit.Ignore;
 import org.junit.Rule;
 import org.junit.Test;
 import org.jvnet.hudson.test.BuildWatcher;
 import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.MockFolder;
 
+import hudson.Functions;
+import hudson.model.BallColor;
 import hudson.model.FreeStyleProject;
 import io.jenkins.plugins.DependenciesProperty.DescriptorImpl;
-import io.jenkins.plugins.model.wrapper.ProjectWrapper;
-import io.jenkins.plugins.model.wrapper.JobWrapper;
+import io.jenkins.plugins.JobGraphStore.StoredJob;
+import io.jenkins.plugins.model.node.JobNode;
 import io.jenkins.plugins.model.wrapper.WorkflowJobWrapper;
 import jenkins.model.Jenkins;
 import jenkins.triggers.ReverseBuildTrigger;
+import net.sf.json.JSONObject;
 
 public class JobGraphTest {
 	
@@ -51,7 +72,7 @@ public class JobGraphTest {
 		job2.addTrigger(new ReverseBuildTrigger("1"));
 		JobGraph jobGraph = new JobGraph();
 		assertEquals(2, jobGraph.getJobs().size());
-		assertEquals(Collections.singleton(new WorkflowJobWrapper(job1)), jobGraph.getUpstreamOfJob(new WorkflowJobWrapper(job2)));
+		assertEquals(Collections.singleton(jobGraph.getNode(job1)), jobGraph.getUpstreamOfJob(jobGraph.getNode(job2)));
 	}
 	
 	@Test
@@ -61,7 +82,7 @@ public class JobGraphTest {
 		job2.addTrigger(new ReverseBuildTrigger("1"));
 		JobGraph jobGraph = new JobGraph();
 		assertEquals(2, jobGraph.getJobs().size());
-		assertEquals(Collections.singleton(new WorkflowJobWrapper(job2)), jobGraph.getDownstreamOfJob(new WorkflowJobWrapper(job1)));
+		assertEquals(Collections.singleton(jobGraph.getNode(job2)), jobGraph.getDownstreamOfJob(jobGraph.getNode(job1)));
 	}
 	
 	@Test
@@ -70,7 +91,7 @@ public class JobGraphTest {
 		WorkflowJob job2 = jenkins.createProject(WorkflowJob.class, "2");
 		job2.addTrigger(new ReverseBuildTrigger("1"));
 		JobGraph jobGraph = new JobGraph();
-		assertEquals(Collections.singleton(new WorkflowJobWrapper(job1)), jobGraph.getEntries());
+		assertEquals(Collections.singleton(jobGraph.getNode(job1)), jobGraph.getEntries());
 	}
 	
 	@Test
@@ -91,7 +112,7 @@ public class JobGraphTest {
 		WorkflowJob job2 = jenkins.createProject(WorkflowJob.class, "2");
 		job2.addTrigger(new ReverseBuildTrigger("1"));
 		JobGraph jobGraph = new JobGraph();
-		assertEquals(Collections.singleton(new WorkflowJobWrapper(job2)), jobGraph.getExits());
+		assertEquals(Collections.singleton(jobGraph.getNode(job2)), jobGraph.getExits());
 	}
 	
 	@Test
@@ -118,8 +139,8 @@ public class JobGraphTest {
 		job3.addTrigger(new ReverseBuildTrigger("2"));
 		job2.setTriggers(Collections.emptyList());
 		jobGraph.update();
-		assertEquals(Collections.singleton(new WorkflowJobWrapper(job2)), jobGraph.getUpstreamOfJob(new WorkflowJobWrapper(job3)));
-		assertEquals(Collections.emptySet(), jobGraph.getUpstreamOfJob(new WorkflowJobWrapper(job2)));
+		assertEquals(Collections.singleton(jobGraph.getNode(job2)), jobGraph.getUpstreamOfJob(jobGraph.getNode(job3)));
+		assertEquals(Collections.emptySet(), jobGraph.getUpstreamOfJob(jobGraph.getNode(job2)));
 		assertEquals(2, jobGraph.getEntries().size());
 		assertEquals(2, jobGraph.getExits().size());
 	}
@@ -132,9 +153,9 @@ public class JobGraphTest {
 		WorkflowJob job3 = jenkins.createProject(WorkflowJob.class, "3");
 		job2.addTrigger(new ReverseBuildTrigger("1"));
 		JobGraph jobGraph = new JobGraph();
-		jobGraph.removeUnconnectedNodes(new WorkflowJobWrapper(job3));
+		jobGraph.removeUnconnectedNodes(jobGraph.getNode(job3));
 		assertEquals(1, jobGraph.getEntries().size());	
-		assertEquals(Collections.singleton(new WorkflowJobWrapper(job3)), jobGraph.getJobs());
+		assertEquals(Collections.singleton(jobGraph.getNode(job3)), jobGraph.getJobs());
 		
 		job3.addTrigger(new ReverseBuildTrigger("1"));
 		jobGraph.update();
@@ -142,7 +163,7 @@ public class JobGraphTest {
 		assertEquals(2, jobGraph.getExits().size());
 		
 		logger.info("entries before remove: "+jobGraph.getEntries());
-		jobGraph.removeUnconnectedNodes(new WorkflowJobWrapper(job3));
+		jobGraph.removeUnconnectedNodes(jobGraph.getNode(job3));
 		assertEquals(3, jobGraph.getJobs().size());	
 		logger.info("entries after remove: "+jobGraph.getEntries());
 	}
@@ -170,13 +191,13 @@ public class JobGraphTest {
 		job4.addTrigger(new ReverseBuildTrigger("1, 2"));
 		job6.addTrigger(new ReverseBuildTrigger("3, 4, 5"));
 		JobGraph graph = new JobGraph();
-		Map<JobWrapper, Integer> triggerCounts = graph.getTotalTriggerCount();
-		assertEquals(1, triggerCounts.get(new WorkflowJobWrapper(job1)).intValue());
-		assertEquals(1, triggerCounts.get(new WorkflowJobWrapper(job2)).intValue());
-		assertEquals(1, triggerCounts.get(new WorkflowJobWrapper(job3)).intValue());
-		assertEquals(2, triggerCounts.get(new WorkflowJobWrapper(job4)).intValue());
-		assertEquals(1, triggerCounts.get(new WorkflowJobWrapper(job5)).intValue());
-		assertEquals(4, triggerCounts.get(new WorkflowJobWrapper(job6)).intValue());
+		Map<JobNode, Long> triggerCounts = graph.getTotalTriggerCount();
+		assertEquals(1, triggerCounts.get(graph.getNode(job1)).intValue());
+		assertEquals(1, triggerCounts.get(graph.getNode(job2)).intValue());
+		assertEquals(1, triggerCounts.get(graph.getNode(job3)).intValue());
+		assertEquals(2, triggerCounts.get(graph.getNode(job4)).intValue());
+		assertEquals(1, triggerCounts.get(graph.getNode(job5)).intValue());
+		assertEquals(4, triggerCounts.get(graph.getNode(job6)).intValue());
 	}
 	
 	@Test
@@ -205,14 +226,14 @@ public class JobGraphTest {
 		job6.addTrigger(new ReverseBuildTrigger("4"));
 		job7.addTrigger(new ReverseBuildTrigger("1, 5, 6"));
 		JobGraph graph = new JobGraph();
-		Map<JobWrapper, Integer> triggerCounts = graph.getTotalTriggerCount();
-		assertEquals(1, triggerCounts.get(new WorkflowJobWrapper(job1)).intValue());
-		assertEquals(1, triggerCounts.get(new WorkflowJobWrapper(job2)).intValue());
-		assertEquals(1, triggerCounts.get(new WorkflowJobWrapper(job3)).intValue());
-		assertEquals(1, triggerCounts.get(new WorkflowJobWrapper(job4)).intValue());
-		assertEquals(1, triggerCounts.get(new WorkflowJobWrapper(job5)).intValue());
-		assertEquals(1, triggerCounts.get(new WorkflowJobWrapper(job6)).intValue());
-		assertEquals(3, triggerCounts.get(new WorkflowJobWrapper(job7)).intValue());
+		Map<JobNode, Long> triggerCounts = graph.getTotalTriggerCount();
+		assertEquals(1, triggerCounts.get(graph.getNode(job1)).intValue());
+		assertEquals(1, triggerCounts.get(graph.getNode(job2)).intValue());
+		assertEquals(1, triggerCounts.get(graph.getNode(job3)).intValue());
+		assertEquals(1, triggerCounts.get(graph.getNode(job4)).intValue());
+		assertEquals(1, triggerCounts.get(graph.getNode(job5)).intValue());
+		assertEquals(1, triggerCounts.get(graph.getNode(job6)).intValue());
+		assertEquals(3, triggerCounts.get(graph.getNode(job7)).intValue());
 	}
 	
 	@Test 
@@ -233,11 +254,11 @@ public class JobGraphTest {
 		job3.addTrigger(new ReverseBuildTrigger("2"));
 		job4.addTrigger(new ReverseBuildTrigger("3, 1"));
 		JobGraph graph = new JobGraph();
-		Map<JobWrapper, Integer> triggerCounts = graph.getTotalTriggerCount();
-		assertEquals(1, triggerCounts.get(new WorkflowJobWrapper(job1)).intValue());
-		assertEquals(1, triggerCounts.get(new WorkflowJobWrapper(job2)).intValue());
-		assertEquals(1, triggerCounts.get(new WorkflowJobWrapper(job3)).intValue());
-		assertEquals(2, triggerCounts.get(new WorkflowJobWrapper(job4)).intValue());
+		Map<JobNode, Long> triggerCounts = graph.getTotalTriggerCount();
+		assertEquals(1, triggerCounts.get(graph.getNode(job1)).intValue());
+		assertEquals(1, triggerCounts.get(graph.getNode(job2)).intValue());
+		assertEquals(1, triggerCounts.get(graph.getNode(job3)).intValue());
+		assertEquals(2, triggerCounts.get(graph.getNode(job4)).intValue());
 	}
 	
 	@Test 
@@ -258,14 +279,14 @@ public class JobGraphTest {
 		WorkflowJob job4 = jenkins.createProject(WorkflowJob.class, "4");
 		WorkflowJob job5 = jenkins.createProject(WorkflowJob.class, "5");
 		job4.addTrigger(new ReverseBuildTrigger("2, 3"));
-		job5.addTrigger(new ReverseBuildTrigger("4, 5"));
+		job5.addTrigger(new ReverseBuildTrigger("4, 1"));
 		JobGraph graph = new JobGraph();
-		Map<JobWrapper, Integer> triggerCounts = graph.getTotalTriggerCount();
-		assertEquals(1, triggerCounts.get(new WorkflowJobWrapper(job1)).intValue());
-		assertEquals(1, triggerCounts.get(new WorkflowJobWrapper(job2)).intValue());
-		assertEquals(1, triggerCounts.get(new WorkflowJobWrapper(job3)).intValue());
-		assertEquals(2, triggerCounts.get(new WorkflowJobWrapper(job4)).intValue());
-		assertEquals(3, triggerCounts.get(new WorkflowJobWrapper(job5)).intValue());
+		Map<JobNode, Long> triggerCounts = graph.getTotalTriggerCount();
+		assertEquals(1, triggerCounts.get(graph.getNode(job1)).intValue());
+		assertEquals(1, triggerCounts.get(graph.getNode(job2)).intValue());
+		assertEquals(1, triggerCounts.get(graph.getNode(job3)).intValue());
+		assertEquals(2, triggerCounts.get(graph.getNode(job4)).intValue());
+		assertEquals(3, triggerCounts.get(graph.getNode(job5)).intValue());
 	}
 	
 	@Test
@@ -279,10 +300,10 @@ public class JobGraphTest {
 		job2.addTrigger(new ReverseBuildTrigger("1"));
 		job3.addTrigger(new ReverseBuildTrigger("2"));
 		JobGraph graph = new JobGraph();
-		Map<JobWrapper, Integer> triggerCounts = graph.getTotalTriggerCount();
-		assertEquals(1, triggerCounts.get(new WorkflowJobWrapper(job1)).intValue());
-		assertEquals(1, triggerCounts.get(new WorkflowJobWrapper(job2)).intValue());
-		assertEquals(1, triggerCounts.get(new WorkflowJobWrapper(job3)).intValue());
+		Map<JobNode, Long> triggerCounts = graph.getTotalTriggerCount();
+		assertEquals(1, triggerCounts.get(graph.getNode(job1)).intValue());
+		assertEquals(1, triggerCounts.get(graph.getNode(job2)).intValue());
+		assertEquals(1, triggerCounts.get(graph.getNode(job3)).intValue());
 	}
 	
 	@Test
@@ -297,11 +318,125 @@ public class JobGraphTest {
 		job3.addTrigger(new ReverseBuildTrigger("2"));
 		job4.addTrigger(new ReverseBuildTrigger("3"));
 		JobGraph graph = new JobGraph();
-		Map<JobWrapper, Integer> triggerCounts = graph.getTotalTriggerCount();
-		assertEquals(1, triggerCounts.get(new WorkflowJobWrapper(job1)).intValue());
-		assertEquals(2, triggerCounts.get(new WorkflowJobWrapper(job2)).intValue());
-		assertEquals(2, triggerCounts.get(new WorkflowJobWrapper(job3)).intValue());
-		assertEquals(2, triggerCounts.get(new WorkflowJobWrapper(job4)).intValue());
+		Map<JobNode, Long> triggerCounts = graph.getTotalTriggerCount();
+		assertEquals(1, triggerCounts.get(graph.getNode(job1)).intValue());
+		assertEquals(1, triggerCounts.get(graph.getNode(job2)).intValue());
+		assertEquals(1, triggerCounts.get(graph.getNode(job3)).intValue());
+		assertEquals(1, triggerCounts.get(graph.getNode(job4)).intValue());
+		assertEquals(new HashSet<>(Arrays.asList(graph.getNode(job2), graph.getNode(job3), graph.getNode(job4))), graph.getJobsInTriggerCycles());
+	}
+	
+	@Test
+	public void testTriggerCountBehindCircle() throws IOException {
+		DescriptorImpl settings = Jenkins.get().getDescriptorByType(DependenciesProperty.DescriptorImpl.class);
+		settings.setCountTriggersTransitively(true);
+		WorkflowJob job1 = jenkins.createProject(WorkflowJob.class, "1");
+		WorkflowJob job2 = jenkins.createProject(WorkflowJob.class, "2");
+		WorkflowJob job3 = jenkins.createProject(WorkflowJob.class, "3");
+		WorkflowJob job4 = jenkins.createProject(WorkflowJob.class, "4");
+		job2.addTrigger(new ReverseBuildTrigger("1, 3"));
+		job3.addTrigger(new ReverseBuildTrigger("2"));
+		job4.addTrigger(new ReverseBuildTrigger("1, 2, 3"));
+		JobGraph graph = new JobGraph();
+		Map<JobNode, Long> triggerCounts = graph.getTotalTriggerCount();
+		assertEquals(1, triggerCounts.get(graph.getNode(job2)).intValue());
+		assertEquals(3, triggerCounts.get(graph.getNode(job4)).intValue());
+		assertFalse(graph.getJobsInTriggerCycles().contains(graph.getNode(job4)));
+	}
+	
+	@Test
+	public void testTriggerCountIsCappedOnOverflow() throws IOException {
+		DescriptorImpl settings = Jenkins.get().getDescriptorByType(DependenciesProperty.DescriptorImpl.class);
+		settings.setCountTriggersTransitively(true);
+		// every layer is triggered by both jobs of the layer above, so the count doubles with each layer
+		WorkflowJob[][] layers = new WorkflowJob[64][2];
+		for (int layer = 0; layer < layers.length; layer++) {
+			for (int i = 0; i < 2; i++) {
+				layers[layer][i] = jenkins.createProject(WorkflowJob.class, layer + "-" + i);
+				if (layer > 0) {
+					layers[layer][i].addTrigger(new ReverseBuildTrigger(layers[layer - 1][0].getName() + ", " + layers[layer - 1][1].getName()));
+				}
+			}
+		}
+		JobGraph graph = new JobGraph();
+		JobNode lastExact = graph.getNode(layers[62][0]);
+		JobNode firstCapped = graph.getNode(layers[63][0]);
+		assertEquals(1L << 62, graph.getTotalTriggerCount().get(lastExact).longValue());
+		assertFalse(graph.isTriggerCountCapped(lastExact));
+		assertEquals(Long.MAX_VALUE, graph.getTotalTriggerCount().get(firstCapped).longValue());
+		assertTrue(graph.isTriggerCountCapped(firstCapped));
+	}
+	
+	@Test
+	public void testTriggerCountIsUpdatedIncrementally() throws IOException {
+		DescriptorImpl settings = Jenkins.get().getDescriptorByType(DependenciesProperty.DescriptorImpl.class);
+		settings.setCountTriggersTransitively(true);
+		WorkflowJob job1 = jenkins.createProject(WorkflowJob.class, "1");
+		WorkflowJob job2 = jenkins.createProject(WorkflowJob.class, "2");
+		WorkflowJob job3 = jenkins.createProject(WorkflowJob.class, "3");
+		WorkflowJob job4 = jenkins.createProject(WorkflowJob.class, "4");
+		job3.addTrigger(new ReverseBuildTrigger("1"));
+		job4.addTrigger(new ReverseBuildTrigger("2, 3"));
+		JobGraph graph = new JobGraph();
+		assertEquals(2, graph.getTotalTriggerCount().get(graph.getNode(job4)).intValue());
+		job3.addTrigger(new ReverseBuildTrigger("1, 2"));
+		graph.updateJob(new WorkflowJobWrapper(job3));
+		Map<JobNode, Long> triggerCounts = graph.getTotalTriggerCount();
+		assertEquals(2, triggerCounts.get(graph.getNode(job3)).intValue());
+		assertEquals(3, triggerCounts.get(graph.getNode(job4)).intValue());
+		JobNode node2 = graph.getNode(job2);
+		graph.removeJob(new WorkflowJobWrapper(job2));
+		triggerCounts = graph.getTotalTriggerCount();
+		assertEquals(1, triggerCounts.get(graph.getNode(job3)).intValue());
+		assertEquals(1, triggerCounts.get(graph.getNode(job4)).intValue());
+		assertFalse(triggerCounts.containsKey(node2));
+	}
+	
+	@Test
+	public void testTriggerCountIsUpdatedWhenDownstreamJobIsAppliedFirst() throws IOException {
+		DescriptorImpl settings = Jenkins.get().getDescriptorByType(DependenciesProperty.DescriptorImpl.class);
+		settings.setCountTriggersTransitively(true);
+		WorkflowJob job1 = jenkins.createProject(WorkflowJob.class, "1");
+		JobGraph graph = new JobGraph();
+		assertEquals(1, graph.getTotalTriggerCount().get(graph.getNode(job1)).intValue());
+		// both jobs are created in one batch, the change of the downstream job is applied first
+		WorkflowJob job2 = jenkins.createProject(WorkflowJob.class, "2");
+		WorkflowJob job3 = jenkins.createProject(WorkflowJob.class, "3");
+		job2.addTrigger(new ReverseBuildTrigger("1"));
+		job3.addTrigger(new ReverseBuildTrigger("2"));
+		graph.updateJob(new WorkflowJobWrapper(job3));
+		Map<JobNode, Long> triggerCounts = graph.getTotalTriggerCount();
+		assertEquals(1, triggerCounts.get(graph.getNode(job2)).intValue());
+		assertEquals(1, triggerCounts.get(graph.getNode(job3)).intValue());
+		graph.updateJob(new WorkflowJobWrapper(job2));
+		triggerCounts = graph.getTotalTriggerCount();
+		assertEquals(1, triggerCounts.get(graph.getNode(job2)).intValue());
+		assertEquals(1, triggerCounts.get(graph.getNode(job3)).intValue());
+		job3.addTrigger(new ReverseBuildTrigger("1, 2"));
+		graph.updateJob(new WorkflowJobWrapper(job3));
+		assertEquals(2, graph.getTotalTriggerCount().get(graph.getNode(job3)).intValue());
+	}
+	
+	@Test
+	public void testSnapshotCountsTriggersOnlyIfShown() throws IOException {
+		DescriptorImpl settings = Jenkins.get().getDescriptorByType(DependenciesProperty.DescriptorImpl.class);
+		settings.setCountTriggersTransitively(false);
+		jenkins.createProject(WorkflowJob.class, "1");
+		WorkflowJob job2 = jenkins.createProject(WorkflowJob.class, "2");
+		job2.addTrigger(new ReverseBuildTrigger("1"));
+		job2.save();
+		JobGraphService service = JobGraphService.get();
+		service.flush();
+		JobGraphSnapshot snapshot = service.getSnapshot();
+		assertTrue(snapshot.getTotalTriggerCount().isEmpty());
+		assertFalse(snapshot.isMissingTriggerCounts());
+		assertSame(snapshot, service.getSnapshot());
+		// the counts are added when they are turned on
+		settings.setCountTriggersTransitively(true);
+		assertTrue(snapshot.isMissingTriggerCounts());
+		snapshot = service.getSnapshot();
+		assertFalse(snapshot.isMissingTriggerCounts());
+		assertEquals(1, snapshot.getTotalTriggerCount().get(snapshot.getNode(job2)).intValue());
 	}
 	
 	@Test
@@ -344,7 +479,7 @@ public class JobGraphTest {
 		job2.addTrigger(new ReverseBuildTrigger("1"));
 		JobGraph jobGraph = new JobGraph();
 		assertEquals(2, jobGraph.getJobs().size());
-		assertEquals(Collections.singleton(new WorkflowJobWrapper(job1)), jobGraph.getUpstreamOfJob(new ProjectWrapper(job2)));
+		assertEquals(Collections.singleton(jobGraph.getNode(job1)), jobGraph.getUpstreamOfJob(jobGraph.getNode(job2)));
 	}
 
 	@Test
@@ -354,18 +489,565 @@ public class JobGraphTest {
 		job2.addTrigger(new ReverseBuildTrigger("1"));
 		JobGraph jobGraph = new JobGraph();
 		assertEquals(2, jobGraph.getJobs().size());
-		assertEquals(Collections.singleton(new ProjectWrapper(job1)), jobGraph.getUpstreamOfJob(new WorkflowJobWrapper(job2)));
+		assertEquals(Collections.singleton(jobGraph.getNode(job1)), jobGraph.getUpstreamOfJob(jobGraph.getNode(job2)));
 	}
 	
-	/*
 	@Test
 	public void testAutomaticUpdateOfGraph() throws IOException {
 		jenkins.createProject(WorkflowJob.class, "1");
 		WorkflowJob job2 = jenkins.createProject(WorkflowJob.class, "2");
 		job2.addTrigger(new ReverseBuildTrigger("1"));
-		JobGraph jobGraph = new JobGraph();
+		JobGraph jobGraph = JobGraphService.get().getGraph();
 		WorkflowJob job3 = jenkins.createProject(WorkflowJob.class, "3");
 		job3.addTrigger(new ReverseBuildTrigger("2"));
-		assertEquals(Collections.singleton(job2), jobGraph.getUpstreamOfJob(job3));
-	} */
+		JobGraphService.get().flush();
+		assertEquals(Collections.singleton(jobGraph.getNode(job2)), jobGraph.getUpstreamOfJob(jobGraph.getNode(job3)));
+	}
+
+	@Test
+	public void testAutomaticUpdateOfGraphOnDeletionAndCreation() throws Exception {
+		WorkflowJob job1 = jenkins.createProject(WorkflowJob.class, "1");
+		WorkflowJob job2 = jenkins.createProject(WorkflowJob.class, "2");
+		job2.addTrigger(new ReverseBuildTrigger("1"));
+		job2.save();
+		JobGraphService.get().flush();
+		JobGraph jobGraph = JobGraphService.get().getGraph();
+		assertEquals(2, jobGraph.getJobs().size());
+
+		job1.delete();
+		JobGraphService.get().flush();
+		assertEquals(Collections.singleton(jobGraph.getNode(job2)), jobGraph.getJobs());
+		assertEquals(Collections.emptySet(), jobGraph.getUpstreamOfJob(jobGraph.getNode(job2)));
+
+		WorkflowJob newJob1 = jenkins.createProject(WorkflowJob.class, "1");
+		JobGraphService.get().flush();
+		assertEquals(Collections.singleton(jobGraph.getNode(newJob1)), jobGraph.getUpstreamOfJob(jobGraph.getNode(job2)));
+	}
+
+	@Test
+	public void testRelativeUpstreamNames() throws Exception {
+		WorkflowJob topUp = jenkins.createProject(WorkflowJob.class, "up");
+		MockFolder folder = jenkins.createFolder("f");
+		WorkflowJob down = folder.createProject(WorkflowJob.class, "down");
+		WorkflowJob parentDown = folder.createProject(WorkflowJob.class, "parentDown");
+		WorkflowJob absoluteDown = folder.createProject(WorkflowJob.class, "absoluteDown");
+		down.addTrigger(new ReverseBuildTrigger("up"));
+		parentDown.addTrigger(new ReverseBuildTrigger("../up"));
+		absoluteDown.addTrigger(new ReverseBuildTrigger("/f/down"));
+		down.save();
+		parentDown.save();
+		absoluteDown.save();
+		JobGraphService.get().flush();
+		JobGraph graph = JobGraphService.get().getGraph();
+		assertEquals(Collections.singleton(graph.getNode(topUp)), graph.getUpstreamOfJob(graph.getNode(down)));
+		assertEquals(Collections.singleton(graph.getNode(topUp)), graph.getUpstreamOfJob(graph.getNode(parentDown)));
+		assertEquals(Collections.singleton(graph.getNode(down)), graph.getUpstreamOfJob(graph.getNode(absoluteDown)));
+
+		// a job in the same folder takes precedence over a job with the same full name
+		WorkflowJob folderUp = folder.createProject(WorkflowJob.class, "up");
+		JobGraphService.get().flush();
+		assertEquals(Collections.singleton(graph.getNode(folderUp)), graph.getUpstreamOfJob(graph.getNode(down)));
+		assertEquals(Collections.singleton(graph.getNode(topUp)), graph.getUpstreamOfJob(graph.getNode(parentDown)));
+	}
+
+	@Test
+	public void testNodeIsReplacedWhenJobChanges() throws Exception {
+		WorkflowJob job1 = jenkins.createProject(WorkflowJob.class, "1");
+		WorkflowJob job2 = jenkins.createProject(WorkflowJob.class, "2");
+		job2.addTrigger(new ReverseBuildTrigger("1"));
+		JobGraph graph = new JobGraph();
+		JobNode node1 = graph.getNode(job1);
+		assertFalse(node1.isDisabled());
+
+		job1.setDisabled(true);
+		graph.updateJob(new WorkflowJobWrapper(job1));
+		JobNode disabledNode1 = graph.getNode(job1);
+		assertTrue(disabledNode1.isDisabled());
+		assertEquals(node1.getId(), disabledNode1.getId());
+		assertTrue(graph.getUpstreamOfJob(graph.getNode(job2)).iterator().next().isDisabled());
+	}
+
+	@Test
+	public void testParallelUpdateOfFolders() throws Exception {
+		WorkflowJob job1 = jenkins.createProject(WorkflowJob.class, "1");
+		MockFolder folder = jenkins.createFolder("f");
+		MockFolder subfolder = folder.createProject(MockFolder.class, "g");
+		WorkflowJob job2 = folder.createProject(WorkflowJob.class, "2");
+		WorkflowJob job3 = subfolder.createProject(WorkflowJob.class, "3");
+		job2.addTrigger(new ReverseBuildTrigger("/1"));
+		job3.addTrigger(new ReverseBuildTrigger("../2"));
+		JobGraph graph = new JobGraph();
+		graph.update(1);
+		assertEquals(3, graph.getJobs().size());
+		graph.update(4);
+		assertEquals(3, graph.getJobs().size());
+		assertEquals(Collections.singleton(graph.getNode(job1)), graph.getUpstreamOfJob(graph.getNode(job2)));
+		assertEquals(Collections.singleton(graph.getNode(job2)), graph.getUpstreamOfJob(graph.getNode(job3)));
+	}
+
+	@Test
+	public void testJobPageDoesNotBuildGraphs() throws Exception {
+		jenkins.createFreeStyleProject("1");
+		FreeStyleProject job2 = jenkins.createFreeStyleProject("2");
+		job2.addTrigger(new ReverseBuildTrigger("1"));
+		jenkins.buildAndAssertSuccess(job2);
+		jenkins.buildAndAssertSuccess(job2);
+		int jobGraphs = JobGraph.getConstructionCount();
+		int runGraphs = RunTriggerGraph.getConstructionCount();
+
+		jenkins.createWebClient().getPage(job2);
+		assertEquals(jobGraphs, JobGraph.getConstructionCount());
+		assertEquals(runGraphs, RunTriggerGraph.getConstructionCount());
+
+		JobTriggersAction action = job2.getAction(JobTriggersAction.class);
+		assertNotNull(action);
+		JobGraphService.get().flush();
+		assertEquals(1, action.getUpstreamJobs().size());
+		// the shared graph has already been built at startup
+		assertEquals(jobGraphs, JobGraph.getConstructionCount());
+	}
+
+	@Test
+	public void testGraphIsBuiltAtStartup() throws Exception {
+		JobGraphService service = JobGraphService.get();
+		int jobGraphs = JobGraph.getConstructionCount();
+		WorkflowJob job1 = jenkins.createProject(WorkflowJob.class, "1");
+		service.flush();
+		JobGraph graph = service.getGraph();
+		assertEquals(jobGraphs, JobGraph.getConstructionCount());
+		assertTrue(service.getStartupToReadyMillis() >= 0);
+		assertNotNull(graph.getNode(job1));
+	}
+
+	@Test
+	public void testGraphIsRestoredFromSnapshot() throws Exception {
+		WorkflowJob job1 = jenkins.createProject(WorkflowJob.class, "1");
+		WorkflowJob job2 = jenkins.createProject(WorkflowJob.class, "2");
+		WorkflowJob job3 = jenkins.createProject(WorkflowJob.class, "3");
+		job2.addTrigger(new ReverseBuildTrigger("1"));
+		job2.save();
+		JobGraphService service = JobGraphService.get();
+		service.flush();
+		JobGraphStore store = service.getStore();
+		store.write(service.getGraph().getStoredJobs());
+		Map<String, StoredJob> snapshot = new HashMap<>(store.read());
+		assertEquals(3, snapshot.size());
+		assertEquals(Collections.singletonList("1"), snapshot.get("2").getUpstreamNames());
+
+		// the triggers of an unchanged job are taken from the snapshot instead of the job
+		StoredJob stored3 = snapshot.get("3");
+		snapshot.put("3", new StoredJob("3", stored3.getConfigModified(), stored3.getConfigLength(), Collections.singletonList("2")));
+		JobGraph graph = new JobGraph(service.getUpstreamJobResolver(), snapshot);
+		assertEquals(Collections.singleton(graph.getNode(job1)), graph.getUpstreamOfJob(graph.getNode(job2)));
+		assertEquals(Collections.singleton(graph.getNode(job2)), graph.getUpstreamOfJob(graph.getNode(job3)));
+
+		// a changed job is loaded again
+		snapshot.put("3", new StoredJob("3", -1, -1, Collections.singletonList("2")));
+		graph = new JobGraph(service.getUpstreamJobResolver(), snapshot);
+		assertEquals(Collections.emptySet(), graph.getUpstreamOfJob(graph.getNode(job3)));
+	}
+
+	@Test
+	public void testChangesAreCoalesced() throws Exception {
+		JobGraphService service = JobGraphService.get();
+		JobGraph graph = service.getGraph();
+		int jobGraphs = JobGraph.getConstructionCount();
+		WorkflowJob job1 = jenkins.createProject(WorkflowJob.class, "1");
+		job1.save();
+		service.flush();
+		assertEquals(jobGraphs, JobGraph.getConstructionCount());
+		assertSame(graph, service.getGraph());
+		assertNotNull(graph.getNode(job1));
+
+		// concurrent rebuild requests result in a single build, the previous graph is served until it is complete
+		jenkins.createProject(WorkflowJob.class, "2");
+		service.rebuild();
+		service.rebuild();
+		service.rebuild();
+		service.flush();
+		assertEquals(jobGraphs + 1, JobGraph.getConstructionCount());
+		assertNotSame(graph, service.getGraph());
+		assertEquals(2, service.getGraph().getJobs().size());
+	}
+
+	@Test
+	public void testSnapshotIsNotChangedByUpdates() throws Exception {
+		JobGraphService service = JobGraphService.get();
+		WorkflowJob job1 = jenkins.createProject(WorkflowJob.class, "1");
+		service.flush();
+		JobGraphSnapshot before = service.getSnapshot();
+
+		WorkflowJob job2 = jenkins.createProject(WorkflowJob.class, "2");
+		job2.addTrigger(new ReverseBuildTrigger("1"));
+		job2.save();
+		service.flush();
+		JobGraphSnapshot after = service.getSnapshot();
+		assertTrue(after.getVersion() > before.getVersion());
+		assertEquals(Collections.singleton(before.getNode(job1)), before.getJobs());
+		assertNull(before.getNode(job2));
+		assertEquals(Collections.singleton(after.getNode(job1)), after.getUpstreamOfJob(after.getNode(job2)));
+		assertEquals(Collections.singleton(after.getNode(job1)), after.getEntries());
+		assertEquals(Long.valueOf(1), after.getTotalTriggerCount().get(after.getNode(job2)));
+	}
+
+	@Test
+	public void testDotIsCachedByVersionAndSettings() throws Exception {
+		JobGraphService service = JobGraphService.get();
+		WorkflowJob job1 = jenkins.createProject(WorkflowJob.class, "1");
+		service.flush();
+		DotCache cache = service.getDotCache();
+		JobGraphSnapshot snapshot = service.getSnapshot();
+		long hits = cache.getHitCount();
+		long misses = cache.getMissCount();
+		String dot = cache.getDot(snapshot, snapshot.getNode(job1));
+		assertSame(dot, cache.getDot(snapshot, snapshot.getNode(job1)));
+		assertEquals(hits + 1, cache.getHitCount());
+		assertEquals(misses + 1, cache.getMissCount());
+
+		DescriptorImpl settings = Jenkins.get().getDescriptorByType(DependenciesProperty.DescriptorImpl.class);
+		settings.setLeftToRightLayout(!settings.isLeftToRightLayout());
+		assertNotEquals(dot, cache.getDot(snapshot, snapshot.getNode(job1)));
+		assertEquals(misses + 2, cache.getMissCount());
+
+		WorkflowJob job2 = jenkins.createProject(WorkflowJob.class, "2");
+		job2.addTrigger(new ReverseBuildTrigger("1"));
+		job2.save();
+		service.flush();
+		JobGraphSnapshot next = service.getSnapshot();
+		assertThat(cache.getDot(next, next.getNode(job1)), CoreMatchers.containsString("\"2\""));
+		assertEquals(misses + 3, cache.getMissCount());
+		// the entries of the previous snapshot are dropped
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void testConcurrentRendersAreShared() throws Exception {
+		RenderScheduler scheduler = RenderScheduler.get();
+		AtomicInteger runs = new AtomicInteger();
+		CountDownLatch release = new CountDownLatch(1);
+		Callable<Map<String, byte[]>> render = () -> {
+			runs.incrementAndGet();
+			release.await();
+			return Collections.singletonMap("png", new byte[] {1});
+		};
+		ExecutorService requests = Executors.newFixedThreadPool(2);
+		try {
+			Future<Map<String, byte[]>> first = requests.submit(() -> scheduler.render("key", render));
+			Future<Map<String, byte[]>> second = requests.submit(() -> scheduler.render("key", render));
+			Thread.sleep(500);
+			release.countDown();
+			assertSame(first.get(), second.get());
+			assertEquals(1, runs.get());
+			assertEquals(0, scheduler.getQueueDepth());
+		} finally {
+			requests.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testDotQuotesJobNames() throws IOException {
+		WorkflowJob job1 = jenkins.createProject(WorkflowJob.class, "say \"hello\"");
+		WorkflowJob job2 = jenkins.createProject(WorkflowJob.class, "2");
+		job2.addTrigger(new ReverseBuildTrigger("say \"hello\""));
+		job2.save();
+		JobGraphService.get().flush();
+		JobGraphSnapshot snapshot = JobGraphService.get().getSnapshot();
+		String dot = snapshot.getDotString(snapshot.getNode(job1));
+		assertThat(dot, CoreMatchers.containsString("\t\"say \\\"hello\\\"\" [style="));
+		assertThat(dot, CoreMatchers.containsString("\t\"say \\\"hello\\\"\" -> \"2\""));
+	}
+
+	@Test
+	public void testLayeredLayoutDrawsSvgAndImageMap() throws Exception {
+		WorkflowJob job1 = jenkins.createProject(WorkflowJob.class, "1");
+		WorkflowJob job2 = jenkins.createProject(WorkflowJob.class, "say \"2\"");
+		job2.addTrigger(new ReverseBuildTrigger("1"));
+		job2.save();
+		DescriptorImpl settings = Jenkins.get().getDescriptorByType(DependenciesProperty.DescriptorImpl.class);
+		settings.setRenderBackend(DescriptorImpl.LAYERED_BACKEND);
+		JobGraphService service = JobGraphService.get();
+		service.flush();
+		JobGraphSnapshot snapshot = service.getSnapshot();
+		DotSource source = service.getDotCache().getSource(snapshot, snapshot.getNode(job1));
+		assertTrue(GraphViz.isLaidOutInProcess(source, "svg"));
+		assertFalse(GraphViz.isLaidOutInProcess(source, "png"));
+		// the drawing has another key than the output of dot
+		assertNotEquals(RenderCache.getKey(source, "svg"), RenderCache.getKey(service.getDotCache().getDot(snapshot, snapshot.getNode(job1)), "svg"));
+
+		Map<String, byte[]> outputs = GraphViz.render(source, GraphViz.getTypesRenderedWith(source, "cmapx"));
+		String svg = new String(outputs.get("svg"), StandardCharsets.UTF_8);
+		String map = new String(outputs.get("cmapx"), StandardCharsets.UTF_8);
+		assertThat(svg, CoreMatchers.startsWith("<?xml"));
+		assertThat(svg, CoreMatchers.containsString(">say &quot;2&quot;</text>"));
+		assertThat(svg, CoreMatchers.containsString("<polyline "));
+		assertThat(map, CoreMatchers.containsString("title=\"1\""));
+		assertThat(map, CoreMatchers.containsString("href=\"" + job1.getAbsoluteUrl() + "triggers/\""));
+		assertEquals("svg", new JobTriggersAction(job1).getImageType());
+	}
+
+	@Test
+	public void testBuildStatusIsResolvedOnceForAnImage() throws Exception {
+		FreeStyleProject job1 = jenkins.createFreeStyleProject("1");
+		jenkins.buildAndAssertSuccess(job1);
+		DescriptorImpl settings = Jenkins.get().getDescriptorByType(DependenciesProperty.DescriptorImpl.class);
+		settings.setDrawBalls(true);
+		settings.setRenderBackend(DescriptorImpl.LAYERED_BACKEND);
+		JobGraphService service = JobGraphService.get();
+		service.flush();
+		JobGraphSnapshot snapshot = service.getSnapshot();
+		DotSource source = service.getDotCache().getSource(snapshot, snapshot.getNode(job1));
+		String key = RenderCache.getKey(source, "svg");
+		// the image is drawn later with the status its key was computed from
+		job1.disable();
+		assertEquals(key, RenderCache.getKey(source, "svg"));
+		StringWriter dot = new StringWriter();
+		source.writeTo(dot);
+		assertThat(dot.toString(), CoreMatchers.containsString(BallColor.BLUE.getImage()));
+		String svg = new String(((LayoutSource) source).layout(JobGraphSvgWriter.TYPES).get("svg"), StandardCharsets.UTF_8);
+		assertThat(svg, CoreMatchers.containsString("fill=\"" + BallColor.BLUE.getHtmlBaseColor() + "\""));
+	}
+
+	@Test
+	public void testImpactIsAnsweredFromTheReachabilityIndex() throws Exception {
+		FreeStyleProject job1 = jenkins.createFreeStyleProject("1");
+		FreeStyleProject job2 = jenkins.createFreeStyleProject("2");
+		job2.addTrigger(new ReverseBuildTrigger("1"));
+		job2.save();
+		FreeStyleProject job3 = jenkins.createFreeStyleProject("3");
+		job3.addTrigger(new ReverseBuildTrigger("2"));
+		job3.save();
+		jenkins.createFreeStyleProject("4");
+		JobGraphService service = JobGraphService.get();
+		service.flush();
+		JobGraphSnapshot snapshot = service.getSnapshot();
+		assertEquals(new HashSet<>(Arrays.asList(snapshot.getNode(job2), snapshot.getNode(job3))), new JobTriggersAction(job1).getAllDownstreamJobs());
+		assertEquals(new HashSet<>(Arrays.asList(snapshot.getNode(job1), snapshot.getNode(job2))), new JobTriggersAction(job3).getAllUpstreamJobs());
+		assertEquals(Collections.emptySet(), new JobTriggersAction(job1).getAllUpstreamJobs());
+		assertTrue(service.getReachabilityIndex().isReachable(snapshot.getNode(job1), snapshot.getNode(job3)));
+	}
+
+	@Test
+	public void testImageIsServedFromTheSnapshotOfItsPage() throws Exception {
+		FreeStyleProject job1 = jenkins.createFreeStyleProject("1");
+		JobGraphService service = JobGraphService.get();
+		service.flush();
+		JobTriggersAction page = new JobTriggersAction(job1);
+		long version = page.getVersion();
+
+		// the graph changes after the page was rendered, before its image is requested
+		FreeStyleProject job2 = jenkins.createFreeStyleProject("2");
+		service.flush();
+		assertNotEquals(version, service.getSnapshot().getVersion());
+		JobGraphSnapshot snapshot = service.getSnapshot(version);
+		assertEquals(version, snapshot.getVersion());
+		assertNull(snapshot.getNode(job2.getFullName()));
+		// a version which is not kept anymore is served from the latest snapshot
+		assertSame(service.getSnapshot(), service.getSnapshot(version - 1000));
+	}
+
+	@Test
+	public void testIconColorIsLookedUpInTheIndex() throws Exception {
+		MockFolder folder = jenkins.createFolder("f");
+		FreeStyleProject job1 = folder.createProject(FreeStyleProject.class, "1");
+		jenkins.buildAndAssertSuccess(job1);
+		JobGraphService service = JobGraphService.get();
+		service.flush();
+		assertEquals(BallColor.BLUE, service.getIconColor(service.getSnapshot().getNode(job1)));
+
+		// the index follows the job when its folder is renamed
+		folder.renameTo("g");
+		service.flush();
+		JobNode node = service.getSnapshot().getNode(job1);
+		assertEquals("g/1", node.getFullName());
+		assertEquals(BallColor.BLUE, service.getIconColor(node));
+
+		job1.delete();
+		assertEquals(BallColor.NOTBUILT, service.getIconColor(node));
+	}
+
+	@Test
+	public void testDotIsKilledIfItStopsReadingTheGraph() throws Exception {
+		Assume.assumeFalse(Functions.isWindows());
+		// a dot which never reads its input, so writing a large graph blocks
+		File script = new File(jenkins.jenkins.getRootDir(), "dot.sh");
+		Files.write(script.toPath(), "#!/bin/sh\nexec sleep 60\n".getBytes(StandardCharsets.UTF_8));
+		assertTrue(script.setExecutable(true));
+		DescriptorImpl settings = Jenkins.get().getDescriptorByType(DependenciesProperty.DescriptorImpl.class);
+		settings.setDotExe(script.getAbsolutePath());
+		settings.setRenderTimeout(1);
+		StringBuilder dot = new StringBuilder("digraph {\n");
+		for (int i = 0; i < 100000; i++) {
+			dot.append("\tjob").append(i).append(";\n");
+		}
+		dot.append("}\n");
+		long started = System.nanoTime();
+		try {
+			GraphViz.render(DotSource.of(dot.toString()), "png");
+			fail("dot did not time out");
+		} catch (IOException e) {
+			assertThat(e.getMessage(), CoreMatchers.containsString("timed out"));
+		}
+		assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(30));
+	}
+
+	@Test
+	public void testDotIsHashedOncePerRender() throws Exception {
+		AtomicInteger writes = new AtomicInteger();
+		LayoutSource source = new LayoutSource() {
+
+			@Override
+			public void writeTo(Writer out) throws IOException {
+				writes.incrementAndGet();
+				out.write("digraph { counted }");
+			}
+
+			@Override
+			public Map<String, byte[]> layout(List<String> types) {
+				Map<String, byte[]> outputs = new HashMap<>();
+				for (String type : types) {
+					outputs.put(type, type.getBytes(StandardCharsets.UTF_8));
+				}
+				return outputs;
+			}
+		};
+		String hash = RenderCache.getHash(source);
+		assertArrayEquals("svg".getBytes(StandardCharsets.UTF_8), RenderCache.get().getOutput(hash, source, "svg"));
+		// the image map was drawn and cached with the image
+		assertArrayEquals("cmapx".getBytes(StandardCharsets.UTF_8), RenderCache.get().getOutput(hash, source, "cmapx"));
+		assertEquals(1, writes.get());
+		assertEquals(RenderCache.getKey(source, "svg"), RenderCache.getKey(hash, source, "svg"));
+		assertNotEquals(RenderCache.getKey(hash, source, "svg"), RenderCache.getKey(hash, source, "cmapx"));
+	}
+
+	@Test
+	public void testGraphJsonIsSelectedByQuery() throws Exception {
+		jenkins.createProject(WorkflowJob.class, "1");
+		WorkflowJob job2 = jenkins.createProject(WorkflowJob.class, "2");
+		job2.addTrigger(new ReverseBuildTrigger("1"));
+		job2.save();
+		WorkflowJob job3 = jenkins.createProject(WorkflowJob.class, "3");
+		job3.addTrigger(new ReverseBuildTrigger("2"));
+		job3.save();
+		WorkflowJob job4 = jenkins.createProject(WorkflowJob.class, "say \"4\"");
+		job4.addTrigger(new ReverseBuildTrigger("3"));
+		job4.save();
+		JobGraphService service = JobGraphService.get();
+		service.flush();
+		JobGraphSnapshot snapshot = service.getSnapshot();
+		JobNode node2 = snapshot.getNode(job2);
+
+		JSONObject all = getJson(snapshot, node2, new GraphQuery(GraphQuery.UNLIMITED, GraphQuery.Direction.BOTH, 0, GraphQuery.UNLIMITED));
+		assertEquals(snapshot.getVersion(), all.getLong("version"));
+		assertEquals(4, all.getInt("total"));
+		assertEquals(4, all.getJSONArray("nodes").size());
+		assertEquals(3, all.getJSONArray("edges").size());
+
+		JSONObject downstream = getJson(snapshot, node2, new GraphQuery(1, GraphQuery.Direction.DOWNSTREAM, 0, GraphQuery.UNLIMITED));
+		assertEquals(2, downstream.getInt("total"));
+		JSONObject selected = downstream.getJSONArray("nodes").getJSONObject(0);
+		assertEquals("2", selected.getString("id"));
+		assertTrue(selected.getBoolean("selected"));
+		assertEquals(0, selected.getInt("distance"));
+		// the build status is not shown
+		assertFalse(selected.has("color"));
+		assertEquals(1, downstream.getJSONArray("nodes").getJSONObject(1).getInt("distance"));
+		JSONObject edge = downstream.getJSONArray("edges").getJSONObject(0);
+		assertEquals("2", edge.getString("source"));
+		assertEquals("3", edge.getString("target"));
+
+		// the overview starts at the jobs which are not triggered, edges are listed with their target
+		JSONObject page = getJson(snapshot, null, new GraphQuery(GraphQuery.UNLIMITED, GraphQuery.Direction.BOTH, 3, 2));
+		assertEquals(4, page.getInt("total"));
+		assertEquals(1, page.getJSONArray("nodes").size());
+		assertEquals("say \"4\"", page.getJSONArray("nodes").getJSONObject(0).getString("name"));
+		assertEquals(3, page.getJSONArray("nodes").getJSONObject(0).getInt("distance"));
+		assertEquals("3", page.getJSONArray("edges").getJSONObject(0).getString("source"));
+	}
+
+	@Test
+	public void testNeighbourhoodHasCountsOfNeighbours() throws Exception {
+		jenkins.createProject(WorkflowJob.class, "1");
+		WorkflowJob job2 = jenkins.createProject(WorkflowJob.class, "2");
+		job2.addTrigger(new ReverseBuildTrigger("1"));
+		job2.save();
+		WorkflowJob job3 = jenkins.createProject(WorkflowJob.class, "3");
+		job3.addTrigger(new ReverseBuildTrigger("2"));
+		job3.save();
+		WorkflowJob job4 = jenkins.createProject(WorkflowJob.class, "4");
+		job4.addTrigger(new ReverseBuildTrigger("3"));
+		job4.save();
+		JobGraphService service = JobGraphService.get();
+		service.flush();
+		JobGraphSnapshot snapshot = service.getSnapshot();
+		assertEquals(Collections.singletonList(snapshot.getNode("1")), snapshot.getRoots(true));
+		assertSame(snapshot.getRoots(true), snapshot.getRoots(true));
+
+		StringWriter out = new StringWriter();
+		snapshot.writeJson(new JsonWriter(out), Collections.singleton(snapshot.getNode(job3)), new GraphQuery(1, GraphQuery.Direction.BOTH, 0, GraphQuery.UNLIMITED), RenderSettings.current());
+		JSONObject neighbourhood = JSONObject.fromObject(out.toString());
+		assertEquals(3, neighbourhood.getInt("total"));
+		assertEquals(2, neighbourhood.getJSONArray("edges").size());
+		for (Object node : neighbourhood.getJSONArray("nodes")) {
+			JSONObject json = (JSONObject) node;
+			assertEquals(json.getString("id").equals("4") ? 0 : 1, json.getInt("downstream"));
+			assertEquals(1, json.getInt("upstream"));
+		}
+
+		// the roots are the start of the overview
+		out = new StringWriter();
+		snapshot.writeJson(new JsonWriter(out), Collections.<JobNode>emptySet(), new GraphQuery(0, GraphQuery.Direction.BOTH, 0, GraphQuery.UNLIMITED), RenderSettings.current());
+		JSONObject roots = JSONObject.fromObject(out.toString());
+		assertEquals(1, roots.getInt("total"));
+		assertEquals(0, roots.getJSONArray("nodes").getJSONObject(0).getInt("upstream"));
+		assertEquals(1, roots.getJSONArray("nodes").getJSONObject(0).getInt("downstream"));
+	}
+
+	@Test
+	public void testOverviewIsLaidOutByComponent() throws Exception {
+		WorkflowJob job1 = jenkins.createProject(WorkflowJob.class, "1");
+		WorkflowJob job2 = jenkins.createProject(WorkflowJob.class, "2");
+		job2.addTrigger(new ReverseBuildTrigger("1"));
+		job2.save();
+		WorkflowJob job3 = jenkins.createProject(WorkflowJob.class, "3");
+		DescriptorImpl settings = Jenkins.get().getDescriptorByType(DependenciesProperty.DescriptorImpl.class);
+		settings.setRenderBackend(DescriptorImpl.LAYERED_BACKEND);
+		JobGraphService service = JobGraphService.get();
+		service.flush();
+		JobGraphSnapshot snapshot = service.getSnapshot();
+		assertEquals(2, snapshot.getComponents().size());
+		assertSame(snapshot.getComponents(), snapshot.getComponents());
+		DotCache.Components components = service.getDotCache().getComponents(snapshot);
+		assertSame(components, service.getDotCache().getComponents(snapshot));
+		assertEquals(3, components.getJobCount());
+		List<DotSource> sources = components.getSources();
+		assertEquals(2, sources.size());
+		assertEquals(RenderCache.getHash(sources.get(1)), components.getHashes().get(1));
+		String key = RenderCache.getKey(sources.get(0), "svg");
+
+		List<Map<String, byte[]>> outputs = RenderCache.get().getOutputs(sources, "svg");
+		String svg = new String(TiledGraph.tile(outputs, "svg", "svg"), StandardCharsets.UTF_8);
+		String map = new String(TiledGraph.tile(outputs, "svg", "cmapx"), StandardCharsets.UTF_8);
+		assertThat(svg, CoreMatchers.startsWith("<?xml"));
+		assertThat(map, CoreMatchers.containsString("href=\"" + job1.getAbsoluteUrl() + "triggers/\""));
+		assertThat(map, CoreMatchers.containsString("href=\"" + job3.getAbsoluteUrl() + "triggers/\""));
+
+		// a change in one component leaves the layout of the other one as it is
+		WorkflowJob job4 = jenkins.createProject(WorkflowJob.class, "4");
+		job4.addTrigger(new ReverseBuildTrigger("3"));
+		job4.save();
+		service.flush();
+		snapshot = service.getSnapshot();
+		components = service.getDotCache().getComponents(snapshot);
+		assertEquals(4, components.getJobCount());
+		sources = components.getSources();
+		assertEquals(2, sources.size());
+		assertEquals(key, RenderCache.getKey(sources.get(0), "svg"));
+		assertNotEquals(RenderCache.getKey(sources.get(1), "svg"), key);
+	}
+
+	private static JSONObject getJson(JobGraphSnapshot snapshot, JobNode current, GraphQuery query) throws IOException {
+		StringWriter out = new StringWriter();
+		snapshot.writeJson(new JsonWriter(out), current, query, RenderSettings.current());
+		return JSONObject.fromObject(out.toString());
+	}
 }